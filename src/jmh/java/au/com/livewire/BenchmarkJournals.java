@@ -0,0 +1,110 @@
+package au.com.livewire;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+/**
+ * Prepares journals of a given size and implementation for the benchmarks to run against.
+ */
+final class BenchmarkJournals {
+  private final static long FIRST_TRADE_MS = 1023439393000L;
+
+  private static final ExchangeCode[] EXCHANGE_CODES = ExchangeCode.values();
+  private static final CompanyCode[] COMPANY_CODES = CompanyCode.values();
+
+  private BenchmarkJournals() {
+  }
+
+  /**
+   * The trade at a given position of a generated journal. Trades cycle through
+   * each exchange and company in turn, and every fourth trade for a given
+   * exchange and company is a large sell, so the journal never goes negative.
+   * @param index position (counting from zero) of the trade within the journal.
+   * @return the trade.
+   */
+  static Trade tradeAt(final long index) {
+    final int key = (int) (index % (EXCHANGE_CODES.length * COMPANY_CODES.length));
+    final long round = index / (EXCHANGE_CODES.length * COMPANY_CODES.length);
+    final boolean sell = round % 4 == 0;
+    return new Trade(
+        EXCHANGE_CODES[key % EXCHANGE_CODES.length],
+        sell ? Trade.TransactionType.SELL : Trade.TransactionType.BUY,
+        new Date(FIRST_TRADE_MS + index),
+        COMPANY_CODES[key / EXCHANGE_CODES.length],
+        sell ? 1000 : 1,
+        5
+    );
+  }
+
+  /**
+   * Write a csv journal of generated trades.
+   * @param file where to write the journal.
+   * @param tradeCount how many trades the journal should hold.
+   */
+  static void writeCsv(final File file, final long tradeCount) throws IOException {
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+      for (long i = 0; i < tradeCount; i++) {
+        writer.append(tradeAt(i).toCsv()).append('\n');
+      }
+    }
+  }
+
+  /**
+   * Create a journal of the given implementation, already holding generated trades.
+   * @param journalType which implementation to use.
+   * @param directory where to keep the journal (and its lock file).
+   * @param tradeCount how many trades the journal should hold.
+   * @return the journal.
+   */
+  static TradingJournal open(
+      final JournalType journalType,
+      final File directory,
+      final long tradeCount
+  ) throws IOException {
+    final File csvFile = new File(directory, "journal.csv");
+    final File lockFile = new File(directory, "journal.lock");
+    final TradingJournal result;
+    writeCsv(csvFile, tradeCount);
+    switch (journalType) {
+      case APPEND_ONLY:
+        result = new AppendOnlyFileTradingJournal(csvFile, lockFile, SyncPolicy.NEVER, 0);
+        break;
+      case GROUP_COMMIT:
+        result = new GroupCommitTradingJournal(csvFile, lockFile, SyncPolicy.NEVER, 0);
+        break;
+      case BINARY:
+        result = new BinaryFileTradingJournal(new File(directory, "journal.bin"), lockFile);
+        JournalConverter.convert(new SimpleFileBasedTradingJournal(csvFile), result);
+        csvFile.delete();
+        break;
+      case CSV:
+      default:
+        result = new FileBasedTradingJournal(csvFile, lockFile);
+        break;
+    }
+    return result;
+  }
+
+  /**
+   * Close the journal (if need be) and remove the directory holding it.
+   */
+  static void dispose(
+      final TradingJournal journal,
+      final Path directory
+  ) throws IOException {
+    if (journal instanceof Closeable) {
+      ((Closeable) journal).close();
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+}
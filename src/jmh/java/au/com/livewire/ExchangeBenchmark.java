@@ -0,0 +1,76 @@
+package au.com.livewire;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of trading upon, and reporting from, an exchange as its journal grows.
+ * All threads (see jmh's -t option) share the one exchange.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExchangeBenchmark {
+  @Param({"1000", "100000", "1000000", "10000000"})
+  long journalSize;
+
+  @Param({"CSV", "APPEND_ONLY", "GROUP_COMMIT", "BINARY"})
+  JournalType journalType;
+
+  Path directory;
+  TradingJournal journal;
+  JournalBackedStockExchange exchange;
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("exchange-benchmark");
+    journal = BenchmarkJournals.open(journalType, directory.toFile(), journalSize);
+    exchange = new JournalBackedStockExchange(ExchangeCode.ASX, journal, 5);
+    // plenty to buy, however long we run for.
+    exchange.sell(CompanyCode.CBA.name(), 1000000000);
+  }
+
+  @TearDown
+  public void teardown() throws IOException {
+    BenchmarkJournals.dispose(journal, directory);
+  }
+
+  @Benchmark
+  public void buy() throws IOException {
+    exchange.buy(CompanyCode.CBA.name(), 1);
+  }
+
+  @Benchmark
+  public void sell() {
+    exchange.sell(CompanyCode.QAN.name(), 1);
+  }
+
+  @Benchmark
+  public Map<String, Integer> getOrderBookTotalVolume() throws IOException {
+    return exchange.getOrderBookTotalVolume();
+  }
+
+  @Benchmark
+  public BigDecimal getTradingCosts() throws IOException {
+    return exchange.getTradingCosts();
+  }
+}
@@ -0,0 +1,84 @@
+package au.com.livewire;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of appending to, and reading back, each journal implementation as it grows.
+ * All threads (see jmh's -t option) share the one journal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+  @Param({"1000", "100000", "1000000", "10000000"})
+  long journalSize;
+
+  @Param({"CSV", "APPEND_ONLY", "GROUP_COMMIT", "BINARY"})
+  JournalType journalType;
+
+  Path directory;
+  TradingJournal journal;
+  final AtomicLong nextTrade = new AtomicLong();
+
+  @Setup
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("journal-benchmark");
+    journal = BenchmarkJournals.open(journalType, directory.toFile(), journalSize);
+    nextTrade.set(journalSize);
+  }
+
+  @TearDown
+  public void teardown() throws IOException {
+    BenchmarkJournals.dispose(journal, directory);
+  }
+
+  @Benchmark
+  public void add() throws IOException {
+    journal.add(BenchmarkJournals.tradeAt(nextTrade.getAndIncrement()));
+  }
+
+  /**
+   * What it costs an exchange to start up.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public PositionBook replay() throws IOException {
+    return PositionBook.fromJournal(journal);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public int list() throws IOException {
+    return journal.list().size();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public long streamOneCompany() throws IOException {
+    final long[] units = new long[1];
+    journal.forEach(ExchangeCode.ASX, CompanyCode.NAB, trade -> units[0] += trade.getQuantity());
+    return units[0];
+  }
+}
@@ -0,0 +1,43 @@
+package au.com.livewire;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of converting a single trade to and from csv.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeCsvBenchmark {
+  final String line = "ASX,BUY,1023439393000,NAB,23,7";
+  final Trade trade = Trade.fromCsv(line);
+  final TradeCsvParser parser = new TradeCsvParser();
+  final MutableTrade holder = new MutableTrade();
+
+  @Benchmark
+  public Trade fromCsv() {
+    return Trade.fromCsv(line);
+  }
+
+  @Benchmark
+  public String toCsv() {
+    return trade.toCsv();
+  }
+
+  @Benchmark
+  public MutableTrade parse() {
+    return parser.parse(line, holder);
+  }
+}
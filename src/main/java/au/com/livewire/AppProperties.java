@@ -2,6 +2,8 @@ package au.com.livewire;
 
 import com.google.inject.Inject;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import org.apache.commons.lang3.StringUtils;
 
@@ -16,15 +18,40 @@ public class AppProperties {
   final static private String ASX_BROKERAGE_KEY = "asx.brokerage";
   final static private String CXA_JOURNAL_PATH_KEY = "cxa.journal";
   final static private String CXA_JOURNAL_LOCK_PATH_KEY = "cxa.journal.lock";
-  final static private String ASX_JOURNAL_PATH_KEY = "asx.jopurnal";
+  final static private String ASX_JOURNAL_PATH_KEY = "asx.journal";
   final static private String ASX_JOURNAL_LOCK_PATH_KEY = "asx.journal.lock";
+  final static private String LEGACY_JOURNAL_PATH_KEY = "legacy.journal";
+  final static private String JOURNAL_TYPE_KEY = "journal.type";
+  final static private String JOURNAL_SYNC_POLICY_KEY = "journal.sync.policy";
+  final static private String JOURNAL_SYNC_INTERVAL_KEY = "journal.sync.interval";
+  final static private String JOURNAL_LOCK_MODE_KEY = "journal.lock.mode";
+  final static private String EXCHANGE_MODE_KEY = "exchange.mode";
+  final static private String EXCHANGE_RING_SIZE_KEY = "exchange.ring.size";
+  final static private String CLIENT_THREADS_KEY = "client.threads";
+  final static private String JOURNAL_CHECKPOINT_INTERVAL_KEY = "journal.checkpoint.interval";
+  final static private String JOURNAL_SEGMENT_BYTES_KEY = "journal.segment.bytes";
+  final static private String JOURNAL_SEGMENT_AGE_MS_KEY = "journal.segment.age.ms";
+  final static private String JOURNAL_SHARD_BY_COMPANY_KEY = "journal.shard.by.company";
+  final static private String INSTRUMENTS_KEY = "instruments";
 
   final static private int DEFAULT_CXA_BROKERAGE = 5;
   final static private int DEFAULT_ASX_BROKERAGE = 5;
-  final static private String DEFAULT_CXA_JOURNAL_PATH = "journal.csv";
-  final static private String DEFAULT_ASX_JOURNAL_PATH = "journal.csv";
-  final static private String DEFAULT_CXA_JOURNAL_LOCK_PATH = "journal.lock";
-  final static private String DEFAULT_ASX_JOURNAL_LOCK_PATH = "journal.lock";
+  final static private String DEFAULT_CXA_JOURNAL_PATH = "cxa-journal.csv";
+  final static private String DEFAULT_ASX_JOURNAL_PATH = "asx-journal.csv";
+  final static private String DEFAULT_CXA_JOURNAL_LOCK_PATH = "cxa-journal.lock";
+  final static private String DEFAULT_ASX_JOURNAL_LOCK_PATH = "asx-journal.lock";
+  final static private String DEFAULT_LEGACY_JOURNAL_PATH = "journal.csv";
+  final static private JournalType DEFAULT_JOURNAL_TYPE = JournalType.CSV;
+  final static private SyncPolicy DEFAULT_JOURNAL_SYNC_POLICY = SyncPolicy.NEVER;
+  final static private int DEFAULT_JOURNAL_SYNC_INTERVAL = 100;
+  final static private LockMode DEFAULT_JOURNAL_LOCK_MODE = LockMode.FILE;
+  final static private ExchangeMode DEFAULT_EXCHANGE_MODE = ExchangeMode.JOURNAL;
+  final static private int DEFAULT_EXCHANGE_RING_SIZE = 1024;
+  final static private int DEFAULT_CLIENT_THREADS = 0;
+  final static private int DEFAULT_JOURNAL_CHECKPOINT_INTERVAL = 10000;
+  final static private long DEFAULT_JOURNAL_SEGMENT_BYTES = 64L * 1024L * 1024L;
+  final static private long DEFAULT_JOURNAL_SEGMENT_AGE_MS = 24L * 60L * 60L * 1000L;
+  final static private boolean DEFAULT_JOURNAL_SHARD_BY_COMPANY = false;
 
   @Inject
   public AppProperties(Properties properties) {
@@ -80,4 +107,159 @@ public class AppProperties {
     result = new File(rawText);
     return result;
   }
+
+  /**
+   * The csv journal both exchanges shared before each was given its own,
+   * which an exchange's trades are copied out of when its journal is new.
+   */
+  File getLegacyJournalFile() {
+    final String rawText;
+    final File result;
+    rawText = properties.getProperty(LEGACY_JOURNAL_PATH_KEY, DEFAULT_LEGACY_JOURNAL_PATH);
+    result = new File(rawText);
+    return result;
+  }
+
+  JournalType getJournalType() {
+    final String rawText;
+    JournalType result;
+    rawText = properties.getProperty(JOURNAL_TYPE_KEY);
+    try {
+      result = StringUtils.isNotBlank(rawText)
+          ? JournalType.valueOf(rawText.trim().toUpperCase().replace('-', '_')) : DEFAULT_JOURNAL_TYPE;
+    } catch (IllegalArgumentException e) {
+      System.err.println("WARN - unrecognised journal type \"" + rawText + "\", using " + DEFAULT_JOURNAL_TYPE);
+      System.err.flush();
+      result = DEFAULT_JOURNAL_TYPE;
+    }
+    return result;
+  }
+
+  SyncPolicy getJournalSyncPolicy() {
+    final String rawText;
+    SyncPolicy result;
+    rawText = properties.getProperty(JOURNAL_SYNC_POLICY_KEY);
+    try {
+      result = StringUtils.isNotBlank(rawText)
+          ? SyncPolicy.valueOf(rawText.trim().toUpperCase().replace('-', '_')) : DEFAULT_JOURNAL_SYNC_POLICY;
+    } catch (IllegalArgumentException e) {
+      System.err.println("WARN - unrecognised journal sync policy \"" + rawText + "\", using " + DEFAULT_JOURNAL_SYNC_POLICY);
+      System.err.flush();
+      result = DEFAULT_JOURNAL_SYNC_POLICY;
+    }
+    return result;
+  }
+
+  int getJournalSyncInterval() {
+    final String rawText;
+    final int result;
+    rawText = properties.getProperty(JOURNAL_SYNC_INTERVAL_KEY, Integer.toString(DEFAULT_JOURNAL_SYNC_INTERVAL));
+    result = StringUtils.isNotBlank(rawText) && StringUtils.isNumeric(rawText)
+        ? Integer.parseInt(rawText) : DEFAULT_JOURNAL_SYNC_INTERVAL;
+    return result;
+  }
+
+  LockMode getJournalLockMode() {
+    final String rawText;
+    LockMode result;
+    rawText = properties.getProperty(JOURNAL_LOCK_MODE_KEY);
+    try {
+      result = StringUtils.isNotBlank(rawText)
+          ? LockMode.valueOf(rawText.trim().toUpperCase().replace('-', '_')) : DEFAULT_JOURNAL_LOCK_MODE;
+    } catch (IllegalArgumentException e) {
+      System.err.println("WARN - unrecognised journal lock mode \"" + rawText + "\", using " + DEFAULT_JOURNAL_LOCK_MODE);
+      System.err.flush();
+      result = DEFAULT_JOURNAL_LOCK_MODE;
+    }
+    return result;
+  }
+
+  ExchangeMode getExchangeMode() {
+    final String rawText;
+    ExchangeMode result;
+    rawText = properties.getProperty(EXCHANGE_MODE_KEY);
+    try {
+      result = StringUtils.isNotBlank(rawText)
+          ? ExchangeMode.valueOf(rawText.trim().toUpperCase().replace('-', '_')) : DEFAULT_EXCHANGE_MODE;
+    } catch (IllegalArgumentException e) {
+      System.err.println("WARN - unrecognised exchange mode \"" + rawText + "\", using " + DEFAULT_EXCHANGE_MODE);
+      System.err.flush();
+      result = DEFAULT_EXCHANGE_MODE;
+    }
+    return result;
+  }
+
+  int getExchangeRingSize() {
+    final String rawText;
+    final int result;
+    rawText = properties.getProperty(EXCHANGE_RING_SIZE_KEY, Integer.toString(DEFAULT_EXCHANGE_RING_SIZE));
+    result = StringUtils.isNotBlank(rawText) && StringUtils.isNumeric(rawText)
+        ? Integer.parseInt(rawText) : DEFAULT_EXCHANGE_RING_SIZE;
+    return result;
+  }
+
+  int getClientThreads() {
+    final String rawText;
+    final int result;
+    rawText = properties.getProperty(CLIENT_THREADS_KEY, Integer.toString(DEFAULT_CLIENT_THREADS));
+    result = StringUtils.isNotBlank(rawText) && StringUtils.isNumeric(rawText)
+        ? Integer.parseInt(rawText) : DEFAULT_CLIENT_THREADS;
+    return result;
+  }
+
+  int getJournalCheckpointInterval() {
+    final String rawText;
+    final int result;
+    rawText = properties.getProperty(
+        JOURNAL_CHECKPOINT_INTERVAL_KEY, Integer.toString(DEFAULT_JOURNAL_CHECKPOINT_INTERVAL));
+    result = StringUtils.isNotBlank(rawText) && StringUtils.isNumeric(rawText)
+        ? Integer.parseInt(rawText) : DEFAULT_JOURNAL_CHECKPOINT_INTERVAL;
+    return result;
+  }
+
+  long getJournalSegmentBytes() {
+    final String rawText;
+    final long result;
+    rawText = properties.getProperty(JOURNAL_SEGMENT_BYTES_KEY, Long.toString(DEFAULT_JOURNAL_SEGMENT_BYTES));
+    result = StringUtils.isNotBlank(rawText) && StringUtils.isNumeric(rawText) && Long.parseLong(rawText) > 0
+        ? Long.parseLong(rawText) : DEFAULT_JOURNAL_SEGMENT_BYTES;
+    return result;
+  }
+
+  long getJournalSegmentAgeMs() {
+    final String rawText;
+    final long result;
+    rawText = properties.getProperty(JOURNAL_SEGMENT_AGE_MS_KEY, Long.toString(DEFAULT_JOURNAL_SEGMENT_AGE_MS));
+    result = StringUtils.isNotBlank(rawText) && StringUtils.isNumeric(rawText)
+        ? Long.parseLong(rawText) : DEFAULT_JOURNAL_SEGMENT_AGE_MS;
+    return result;
+  }
+
+  boolean isJournalShardedByCompany() {
+    final String rawText;
+    final boolean result;
+    rawText = properties.getProperty(JOURNAL_SHARD_BY_COMPANY_KEY);
+    result = StringUtils.isNotBlank(rawText)
+        ? Boolean.parseBoolean(rawText.trim()) : DEFAULT_JOURNAL_SHARD_BY_COMPANY;
+    return result;
+  }
+
+  /**
+   * Companies which may be traded besides QAN, CBA and NAB, as a comma separated list of symbols.
+   * @return symbols in the order listed, empty if there are none.
+   */
+  List<String> getInstruments() {
+    final String rawText;
+    final List<String> result;
+    rawText = properties.getProperty(INSTRUMENTS_KEY);
+    result = new ArrayList<>();
+    if (StringUtils.isNotBlank(rawText)) {
+      for (String symbol : rawText.split(",")) {
+        if (StringUtils.isNotBlank(symbol)) {
+          result.add(symbol.trim());
+        }
+      }
+    }
+    return result;
+  }
 }
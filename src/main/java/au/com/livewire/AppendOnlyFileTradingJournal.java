@@ -0,0 +1,204 @@
+package au.com.livewire;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * ASCII file trading journal which keeps the journal file open for its
+ * entire lifetime, rather than opening and closing it for every trade.
+ * Each trade is encoded into a re-used direct buffer and appended to the
+ * end of the file via a single channel. How often the appended trades are
+ * forced onto the storage device is governed by a {@link SyncPolicy}.
+ */
+public class AppendOnlyFileTradingJournal extends FileBasedTradingJournal implements Closeable {
+  private final static int INITIAL_BUFFER_SIZE = 256;
+
+  /**
+   * How eagerly to force appended trades onto the device.
+   */
+  private final SyncPolicy syncPolicy;
+
+  /**
+   * When syncing every N trades, the value of N.
+   */
+  private final int syncInterval;
+
+  /**
+   * Channel used to append to the journal, opened upon the first append.
+   */
+  private FileChannel channel;
+
+  /**
+   * Re-used for encoding each trade prior to writing it.
+   */
+  private ByteBuffer encodeBuffer;
+
+  /**
+   * How many trades have been appended since the journal was last forced to the device.
+   */
+  private int unsyncedCount;
+
+  public AppendOnlyFileTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final SyncPolicy syncPolicy,
+      final int syncInterval
+  ) {
+    this(journalFile, journalLockFile, syncPolicy, syncInterval, LockMode.FILE);
+  }
+
+  public AppendOnlyFileTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final SyncPolicy syncPolicy,
+      final int syncInterval,
+      final LockMode lockMode
+  ) {
+    this(journalFile, journalLockFile, syncPolicy, syncInterval, lockMode, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param instruments the companies which trades may be in.
+   */
+  public AppendOnlyFileTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final SyncPolicy syncPolicy,
+      final int syncInterval,
+      final LockMode lockMode,
+      final InstrumentRegistry instruments
+  ) {
+    super(journalFile, journalLockFile, lockMode, instruments);
+    if (syncPolicy == SyncPolicy.EVERY_N_TRADES && syncInterval < 1) {
+      throw new IllegalArgumentException(
+          String.format("Sync interval must be a positive number of trades, value provided was %d", syncInterval)
+      );
+    }
+    this.syncPolicy = syncPolicy == null ? SyncPolicy.NEVER : syncPolicy;
+    this.syncInterval = syncInterval;
+    this.encodeBuffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+  }
+
+  @Override
+  public synchronized void add(Trade trade) throws IOException {
+    if (file == null) {
+      throw new IllegalStateException("Unable to add to journal without file reference");
+    }
+    encodeBuffer.clear();
+    encodeBuffer = encode(trade.toCsv(), encodeBuffer);
+    encodeBuffer.flip();
+    write(encodeBuffer, 1);
+  }
+
+  /**
+   * Encodes every trade before writing any, then appends them with a single write.
+   * @param trades the trades to be added to the journal.
+   */
+  @Override
+  public synchronized void addAll(final List<Trade> trades) throws IOException {
+    if (file == null) {
+      throw new IllegalStateException("Unable to add to journal without file reference");
+    }
+    encodeBuffer.clear();
+    for (Trade trade : trades) {
+      encodeBuffer = encode(trade.toCsv(), encodeBuffer);
+    }
+    encodeBuffer.flip();
+    write(encodeBuffer, trades.size());
+  }
+
+  /**
+   * Append the contents of a buffer to the journal, then force the journal
+   * to the device should the sync policy require it.
+   * @param buffer encoded trades, ready to be read from.
+   * @param tradeCount how many trades the buffer contains.
+   */
+  protected synchronized void write(
+      final ByteBuffer buffer,
+      final int tradeCount
+  ) throws IOException {
+    final FileChannel out = openChannel();
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+    unsyncedCount += tradeCount;
+    switch (syncPolicy) {
+      case EVERY_TRADE:
+        sync();
+        break;
+      case EVERY_N_TRADES:
+        if (unsyncedCount >= syncInterval) {
+          sync();
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Force any trades appended so far onto the storage device.
+   */
+  public synchronized void sync() throws IOException {
+    if (channel != null && unsyncedCount > 0) {
+      channel.force(false);
+      unsyncedCount = 0;
+    }
+  }
+
+  /**
+   * Syncs any outstanding trades (unless the policy is never to sync) and closes the journal file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      if (syncPolicy != SyncPolicy.NEVER) {
+        sync();
+      }
+      channel.close();
+      channel = null;
+    }
+  }
+
+  private FileChannel openChannel() throws IOException {
+    if (channel == null || !channel.isOpen()) {
+      channel = FileChannel.open(
+          file.toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND
+      );
+    }
+    return channel;
+  }
+
+  /**
+   * Encode a line of (ASCII) csv, followed by a newline, into a buffer after
+   * whatever it already holds. Should the buffer be too small, its contents
+   * are carried over into a larger one.
+   * @param line the csv text of a trade.
+   * @param buffer buffer, in write mode, to re-use if it has room.
+   * @return the buffer (still in write mode) actually holding the encoded line.
+   */
+  protected static ByteBuffer encode(
+      final CharSequence line,
+      final ByteBuffer buffer
+  ) {
+    ByteBuffer result = buffer;
+    if (result.remaining() < line.length() + 1) {
+      result = ByteBuffer.allocateDirect(Math.max(buffer.position() + line.length() + 1, buffer.capacity() * 2));
+      buffer.flip();
+      result.put(buffer);
+    }
+    for (int i = 0; i < line.length(); i++) {
+      result.put((byte) line.charAt(i));
+    }
+    result.put((byte) '\n');
+    return result;
+  }
+}
@@ -4,15 +4,25 @@ import au.com.livewire.Trade.TransactionType;
 import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
 import com.google.inject.name.Named;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import org.apache.commons.lang3.StringUtils;
 
 import static au.com.livewire.Trade.TransactionType.BUY;
@@ -20,17 +30,26 @@ import static au.com.livewire.Trade.TransactionType.SELL;
 
 public class Assignment {
   private StockExchange stockExchange;
+  private TradingJournal tradingJournal;
   private ExchangeCode exchangeCode;
+  private int clientThreads;
 
-  private static final CompanyCode[] COMPANY_CODES = CompanyCode.values();
+  /**
+   * Stands in for an exchange code, to have every exchange trade within the one process.
+   */
+  private static final String ALL_EXCHANGES = "ALL";
 
   public static void main(String...args) {
     boolean lastParamExchange = false;
     boolean askedForHelp = false;
     boolean firstArg = true;
     boolean lastParamProperties = false;
+    boolean lastParamClients = false;
+    boolean compact = false;
+    boolean audit = false;
     String propertiesPath = "src/main/resources/some.properties";
     String exchangeId = null;
+    String clientsText = null;
     String invokedClassName = null;
     for(String arg : args) {
       if (firstArg) {
@@ -42,6 +61,9 @@ public class Assignment {
       if (lastParamProperties) {
         propertiesPath = arg;
       }
+      if (lastParamClients) {
+        clientsText = arg;
+      }
       if ("-exchange".equals(arg) || "--exchange".equals(arg)) {
         lastParamExchange = true;
       } else {
@@ -52,9 +74,20 @@ public class Assignment {
       } else {
         lastParamProperties = false;
       }
+      if ("-clients".equals(arg) || "--clients".equals(arg)) {
+        lastParamClients = true;
+      } else {
+        lastParamClients = false;
+      }
       if ("-help".equals(arg) || "--help".equals(arg)) {
         askedForHelp = true;
       }
+      if ("-compact".equals(arg) || "--compact".equals(arg)) {
+        compact = true;
+      }
+      if ("-audit".equals(arg) || "--audit".equals(arg)) {
+        audit = true;
+      }
       firstArg = false;
     }
 
@@ -64,21 +97,32 @@ public class Assignment {
     }
     if (askedForHelp || StringUtils.isBlank(exchangeId)) {
       System.err.println(
-          String.format("Usage: java %s -exchange CXA|ASX", invokedClassName)
+          String.format("Usage: java %s -exchange CXA|ASX|ALL [-clients N] [-compact] [-audit]", invokedClassName)
       );
       System.err.flush();
       System.exit(StringUtils.isBlank(exchangeId) ? 1 : 0);
     }
 
+    final boolean allExchanges = ALL_EXCHANGES.equals(exchangeId);
     ExchangeCode exchangeCode = null;
     try {
-      exchangeCode = ExchangeCode.valueOf(exchangeId);
+      exchangeCode = allExchanges ? null : ExchangeCode.valueOf(exchangeId);
     } catch (IllegalArgumentException e) {
       System.err.println("Invalid exchange code \"" + exchangeId + "\" provided.");
       System.err.flush();
       System.exit(1);
     }
 
+    int clients = 1;
+    if (clientsText != null) {
+      if (!StringUtils.isNumeric(clientsText) || Integer.parseInt(clientsText) < 1) {
+        System.err.println("Invalid number of clients \"" + clientsText + "\" provided.");
+        System.err.flush();
+        System.exit(1);
+      }
+      clients = Integer.parseInt(clientsText);
+    }
+
     Properties props = new Properties();
     InputStream is;
     try {
@@ -94,44 +138,185 @@ public class Assignment {
       System.exit(1);
     }
 
+    if (allExchanges) {
+      int exitStatus = 1;
+      try {
+        exitStatus = tradeAll(props, clients, compact, audit);
+      } catch (Throwable e) {
+        reportStopped(e);
+      }
+      System.exit(exitStatus);
+    }
+
     ExchangeModule module = new ExchangeModule(exchangeCode, props);
     Injector injector;
     injector =  Guice.createInjector(module);
     Assignment assignment = injector.getInstance(Assignment.class);
+    // however we exit, the journal's last trades are forced to disk.
+    Runtime.getRuntime().addShutdownHook(new Thread(assignment::close, "close-" + exchangeCode));
 
     // need to create appProprties instance with the properties that we've just loaded...
 
     int exitStatus = 0;
     try {
-      assignment.trade();
+      if (clients > 1) {
+        assignment.trade(clients);
+      } else {
+        assignment.trade();
+      }
+      if (compact) {
+        assignment.compact();
+      }
       assignment.report();
+      if (audit) {
+        assignment.audit();
+      }
       System.out.flush();
     } catch (Throwable e) {
+      reportStopped(e);
+      exitStatus = 1;
+    }
+    System.exit(exitStatus);
+  }
+
+  /**
+   * Have every exchange trade at once, within this process, then report upon each in turn.
+   * @param props application properties, which must give each exchange a journal of its own.
+   * @param clients how many clients trade upon each exchange.
+   * @param compact whether to compact each exchange's journal once it has finished trading.
+   * @param audit whether to print every trade of each exchange after its report.
+   * @return exit status, non-zero should trading upon any exchange have stopped.
+   */
+  static int tradeAll(
+      final Properties props,
+      final int clients,
+      final boolean compact,
+      final boolean audit
+  ) throws InterruptedException {
+    final Injector injector;
+    final Map<ExchangeCode, Assignment> assignments;
+    final List<Thread> traders;
+    final AtomicInteger stopped = new AtomicInteger();
+    injector = Guice.createInjector(new MultiExchangeModule(props));
+    assignments = injector.getInstance(Key.get(new TypeLiteral<Map<ExchangeCode, Assignment>>() { }));
+    traders = new ArrayList<>();
+    for (Map.Entry<ExchangeCode, Assignment> entry : assignments.entrySet()) {
+      final Assignment assignment = entry.getValue();
+      Runtime.getRuntime().addShutdownHook(new Thread(assignment::close, "close-" + entry.getKey()));
+      final Thread trader = new Thread(() -> {
+        try {
+          if (clients > 1) {
+            assignment.trade(clients);
+          } else {
+            assignment.trade();
+          }
+          if (compact) {
+            assignment.compact();
+          }
+        } catch (Throwable e) {
+          reportStopped(e);
+          stopped.incrementAndGet();
+        }
+      }, "trader-" + entry.getKey());
+      traders.add(trader);
+      trader.start();
+    }
+    for (Thread trader : traders) {
+      trader.join();
+    }
+    for (Assignment assignment : assignments.values()) {
+      assignment.report();
+      if (audit) {
+        try {
+          assignment.audit();
+        } catch (IOException e) {
+          reportStopped(e);
+          stopped.incrementAndGet();
+        }
+      }
+    }
+    System.out.flush();
+    return stopped.get() > 0 ? 1 : 0;
+  }
+
+  private static void reportStopped(final Throwable e) {
+    synchronized (System.err) {
       System.err.println("-------< TRADING STOPPED >-------");
       System.err.println(e.getClass().getName() + " - " + e.getMessage());
       e.printStackTrace(System.err);
       System.err.flush();
       System.err.println("-------< TRADING STOPPED >-------");
       System.err.flush();
-      exitStatus = 1;
     }
-    System.exit(exitStatus);
   }
 
   @Inject
   public Assignment(
       @Named("exchangeCode") ExchangeCode exchangeCode,
       StockExchange stockExchange,
-      @Named("currentBrokerage") int currentBrokerage
+      @Named("tradingJournal") TradingJournal tradingJournal,
+      @Named("currentBrokerage") int currentBrokerage,
+      @Named("clientThreads") int clientThreads
   ) {
     this.exchangeCode = exchangeCode;
     this.stockExchange = stockExchange;
+    this.tradingJournal = tradingJournal;
+    this.clientThreads = clientThreads;
   }
 
   public void trade() {
+    play(conjureUpRandomPlaybook());
+  }
+
+  /**
+   * Have many simulated clients trade upon the exchange at once, each working
+   * through a random playbook of its own. Clients are run upon virtual threads
+   * where the JVM offers them, otherwise upon a pool of platform threads.
+   * @param clients how many clients to run.
+   * @throws IllegalStateException if any client was stopped by a system failure.
+   */
+  public void trade(final int clients) throws InterruptedException {
+    final ExecutorService executor;
+    final List<Future<?>> futures;
+    final long startedAt;
+    int failures = 0;
+    executor = ClientExecutors.newClientExecutor(clientThreads);
+    futures = new ArrayList<>(clients);
+    startedAt = System.nanoTime();
+    try {
+      for (int i = 0; i < clients; i++) {
+        final List<Trade> playbook = conjureUpRandomPlaybook();
+        futures.add(executor.submit(() -> play(playbook)));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          failures++;
+          System.err.println("ERROR - client stopped trading");
+          System.err.println(e.getCause().getClass() + " - " + e.getCause().getMessage());
+          System.err.flush();
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    System.out.println(String.format(
+        "%d clients traded in %d ms", clients, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)
+    ));
+    System.out.flush();
+    if (failures > 0) {
+      throw new IllegalStateException(String.format("%d of %d clients stopped trading", failures, clients));
+    }
+  }
+
+  private List<Trade> conjureUpRandomPlaybook() {
     int numberBuys = (int)Math.ceil(Math.random() * 40.0D);
     int numberSells = (int)Math.ceil(Math.random() * 40.0D);
-    List<Trade> playbook = conjureUpRandomPlaybook(this.exchangeCode, numberBuys, numberSells);
+    return conjureUpRandomPlaybook(this.exchangeCode, tradingJournal.instruments().values(), numberBuys, numberSells);
+  }
+
+  private void play(final List<Trade> playbook) {
     for (Trade trade : playbook) {
       switch(trade.getTransactionType()) {
         case BUY:
@@ -157,6 +342,62 @@ public class Assignment {
     }
   }
 
+  /**
+   * Compact the exchange's journal, should it be segmented, so that its
+   * sealed segments are replaced by a summary and archived.
+   */
+  public void compact() throws IOException, JournalLockedException {
+    if (!(tradingJournal instanceof SegmentedTradingJournal)) {
+      System.err.println("WARN - journal of " + exchangeCode + " is not segmented, so is left as is");
+      System.err.flush();
+      return;
+    }
+    final int compacted = ((SegmentedTradingJournal) tradingJournal).compact();
+    System.out.println(String.format("%s: compacted %d segments", exchangeCode, compacted));
+    System.out.flush();
+  }
+
+  /**
+   * Print every trade ever made upon the exchange, which for a segmented
+   * journal includes those archived by compaction.
+   */
+  public void audit() throws IOException {
+    final Stream<Trade> trades;
+    if (tradingJournal instanceof SegmentedTradingJournal) {
+      trades = ((SegmentedTradingJournal) tradingJournal).auditTrail(exchangeCode, null);
+    } else {
+      trades = tradingJournal.stream(exchangeCode, null);
+    }
+    System.out.println("--------< "+ exchangeCode + ": Audit Trail START >--------------");
+    try (Stream<Trade> auditTrail = trades) {
+      auditTrail.forEach(trade -> System.out.println(trade.toCsv()));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    System.out.println("--------< "+ exchangeCode + ": Audit Trail END >--------------");
+    System.out.flush();
+  }
+
+  /**
+   * Stop the exchange, should it run threads of its own, then close its
+   * journal, forcing any trades not yet synced onto the device. Failures are
+   * reported rather than thrown, as this is run upon shutdown.
+   */
+  public void close() {
+    try {
+      if (stockExchange instanceof Closeable) {
+        ((Closeable) stockExchange).close();
+      }
+      if (tradingJournal instanceof Closeable) {
+        ((Closeable) tradingJournal).close();
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("ERROR - FAILED to close journal of " + exchangeCode + ", its last trades may be lost");
+      System.err.println(e.getClass() + " - " + e.getMessage());
+      System.err.flush();
+    }
+  }
+
   public void report() {
     BigDecimal tradingCosts;
     try {
@@ -191,12 +432,14 @@ public class Assignment {
    * quantities. There is absolutely NO guarantee that there shall be a sufficient
    * quantity of SELL transactions to faciliate subsequent BUY transactions.
    * @param exchangeCode the exchange that the transactions belong to.
+   * @param companyCodes the companies which may be traded.
    * @param numberBuys how many buy transactions to create.
    * @param numberSells how many sell transactions to create.
    * @return order is important, so return a list.
    */
   protected static List<Trade> conjureUpRandomPlaybook(
       final ExchangeCode exchangeCode,
+      final CompanyCode[] companyCodes,
       final int numberBuys,
       final int numberSells
   ) {
@@ -219,9 +462,9 @@ public class Assignment {
         remainingBuys--;
       }
       // get one of our companies.
-      int companyCodeIndex = (int)Math.floor(Math.random() * (COMPANY_CODES.length - 0.0001D));
+      int companyCodeIndex = (int)Math.floor(Math.random() * (companyCodes.length - 0.0001D));
       int qty = (int)Math.ceil(Math.random() * 100.0D);
-      CompanyCode companyCode = COMPANY_CODES[companyCodeIndex];
+      CompanyCode companyCode = companyCodes[companyCodeIndex];
       /* the brokerage is worked out later, we simply use a Trade object
        * out of convenience, its only the company code, transaction type and qty
        * that we're interested in. we don't actually even use the timestamp either.
@@ -10,4 +10,12 @@ public class AsxJournalBackedStockExchange extends JournalBackedStockExchange {
   ) {
     super(ExchangeCode.ASX, tradingJournal, currentBrokerage);
   }
+
+  public AsxJournalBackedStockExchange(
+      TradingJournal tradingJournal,
+      int currentBrokerage,
+      PositionCheckpoint checkpoint
+  ) {
+    super(ExchangeCode.ASX, tradingJournal, currentBrokerage, null, checkpoint);
+  }
 }
@@ -0,0 +1,34 @@
+package au.com.livewire;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A stock exchange which accepts orders without making the caller wait for
+ * them to be recorded. Where the synchronous methods would throw, the
+ * futures are completed exceptionally with the same exception instead.
+ */
+public interface AsyncStockExchange extends StockExchange {
+  /**
+   * Buy stock.
+   * @param code company to purchase for
+   * @param units number of units to purchase.
+   * @return completes once the purchase has been recorded.
+   */
+  CompletableFuture<Void> buyAsync(String code, Integer units);
+
+  /**
+   * Sell stock.
+   * @param code company to purchase for
+   * @param units number of units to dispense of.
+   * @return completes once the sale has been recorded.
+   */
+  CompletableFuture<Void> sellAsync(String code, Integer units);
+
+  /**
+   * Report aggregate volume available for each stock.
+   * @return completes with a map, keyed by company code, containing the
+   *     number of units available upon the exchange for that company.
+   */
+  CompletableFuture<Map<String, Integer>> getOrderBookTotalVolumeAsync();
+}
@@ -0,0 +1,608 @@
+package au.com.livewire;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Trading journal which stores each trade as a fixed size binary record,
+ * sparing us from parsing text when reading it back. The file starts with
+ * a header identifying the format and its version, followed by records of
+ * the form:
+ * <pre>
+ *   byte  exchange code ordinal
+ *   byte  transaction type ordinal
+ *   long  timestamp (milliseconds since epoch)
+ *   int   company id, see {@link InstrumentRegistry}
+ *   int   quantity
+ *   int   brokerage (cents)
+ * </pre>
+ * Ordinals are those of the enums as at version 1 of the format, so the
+ * order of the enum constants must not change without bumping the version.
+ * Likewise companies must keep their ids, so are only ever appended to the
+ * configured list of instruments. The symbol of each id is listed, one per
+ * line in id order, alongside the journal (journal.bin.instruments) before
+ * any record uses it, and the journal refuses to be read or appended to by
+ * a registry which gives any of those ids to another company.
+ */
+public class BinaryFileTradingJournal extends FileBasedTradingJournal implements Closeable {
+  /**
+   * "GTJB" - identifies a guicy trader binary journal.
+   */
+  final static int MAGIC = 0x47544A42;
+  final static short FORMAT_VERSION = 1;
+  final static int HEADER_SIZE = 8;
+  final static int RECORD_SIZE = 22;
+
+  /**
+   * Stands in for a missing quantity or brokerage.
+   */
+  private final static int ABSENT = Integer.MIN_VALUE;
+
+  private final static int RECORDS_PER_READ = 4096;
+
+  /**
+   * Appended to the journal's path to give the file listing its companies by id.
+   */
+  final static String INSTRUMENTS_SUFFIX = ".instruments";
+
+  private static final ExchangeCode[] EXCHANGE_CODES = ExchangeCode.values();
+  private static final Trade.TransactionType[] TRANSACTION_TYPES = Trade.TransactionType.values();
+
+  /**
+   * Channel used to append to the journal, opened upon the first append.
+   */
+  private FileChannel channel;
+
+  /**
+   * Re-used for encoding each trade prior to writing it.
+   */
+  private final ByteBuffer recordBuffer;
+
+  /**
+   * Whether every company of the registry is known to be listed alongside the journal, by the same id.
+   */
+  private boolean instrumentsListed;
+
+  public BinaryFileTradingJournal(
+      final File journalFile,
+      final File journalLockFile
+  ) {
+    this(journalFile, journalLockFile, LockMode.FILE);
+  }
+
+  public BinaryFileTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final LockMode lockMode
+  ) {
+    this(journalFile, journalLockFile, lockMode, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param instruments the companies which trades may be in.
+   */
+  public BinaryFileTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final LockMode lockMode,
+      final InstrumentRegistry instruments
+  ) {
+    super(journalFile, journalLockFile, lockMode, instruments);
+    this.recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+  }
+
+  @Override
+  public synchronized void add(Trade trade) throws IOException {
+    if (file == null) {
+      throw new IllegalStateException("Unable to add to journal without file reference");
+    }
+    if (trade.getExchangeCode() == null || trade.getTransactionType() == null
+        || trade.getTimestamp() == null || trade.getCompanyCode() == null) {
+      throw new IllegalStateException(
+          String.format("Unable to persist trade \"%s\", some fields are missing.", trade)
+      );
+    }
+    final FileChannel out = openChannel();
+    listInstruments();
+    recordBuffer.clear();
+    encode(trade, recordBuffer);
+    recordBuffer.flip();
+    while (recordBuffer.hasRemaining()) {
+      out.write(recordBuffer);
+    }
+  }
+
+  /**
+   * Encodes every trade before writing any, then appends them with a single write.
+   * @param trades the trades to be added to the journal.
+   */
+  @Override
+  public synchronized void addAll(final List<Trade> trades) throws IOException {
+    if (file == null) {
+      throw new IllegalStateException("Unable to add to journal without file reference");
+    }
+    final ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * trades.size());
+    for (Trade trade : trades) {
+      if (trade.getExchangeCode() == null || trade.getTransactionType() == null
+          || trade.getTimestamp() == null || trade.getCompanyCode() == null) {
+        throw new IllegalStateException(
+            String.format("Unable to persist trade \"%s\", some fields are missing.", trade)
+        );
+      }
+      encode(trade, records);
+    }
+    records.flip();
+    final FileChannel out = openChannel();
+    listInstruments();
+    while (records.hasRemaining()) {
+      out.write(records);
+    }
+  }
+
+  @Override
+  public synchronized List<Trade> list() throws IOException {
+    final List<Trade> result;
+    result = new ArrayList<>();
+    readRecords(0L, (buffer, recordNumber) -> result.add(decode(buffer, recordNumber)));
+    return result;
+  }
+
+  /**
+   * Binary records are replayed as they are, rather than tallied as csv chunks.
+   * @param exchangeCode exchange of interest, although the book reflects every exchange.
+   */
+  @Override
+  public PositionBook positions(
+      final ExchangeCode exchangeCode
+  ) throws IOException, IllegalStateException {
+    return PositionBook.fromJournal(this);
+  }
+
+  /**
+   * Feeds the fields of each record straight to the handler, without building a trade for each.
+   * @param handler receives the fields of each trade.
+   */
+  @Override
+  public synchronized void replay(TradeRecordHandler handler) throws IOException {
+    readRecords(0L, (buffer, recordNumber) -> decode(buffer, recordNumber, handler));
+  }
+
+  /**
+   * @return length of the journal file, zero if there isn't one yet.
+   */
+  @Override
+  public synchronized long position() throws IOException {
+    return file.exists() ? file.length() : 0L;
+  }
+
+  /**
+   * The journal file's key (its inode, say) along with a checksum of the record just before the position.
+   */
+  @Override
+  public synchronized String identity(final long position) throws IOException {
+    if (!file.exists() || position <= HEADER_SIZE) {
+      return null;
+    }
+    return identity(file, Math.max(HEADER_SIZE, position - RECORD_SIZE), position);
+  }
+
+  /**
+   * Feeds the fields of each record from a given record onwards straight to the handler.
+   * @param fromPosition byte offset of a record, or zero for the very start.
+   * @param handler receives the fields of each trade.
+   */
+  @Override
+  public synchronized void replay(
+      final long fromPosition,
+      final TradeRecordHandler handler
+  ) throws IOException, IllegalArgumentException {
+    readRecords(fromPosition, (buffer, recordNumber) -> decode(buffer, recordNumber, handler));
+  }
+
+  /**
+   * Reads the journal as the stream is consumed, only decoding those
+   * records which are for the exchange and company of interest.
+   */
+  @Override
+  public Stream<Trade> stream(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) throws IOException {
+    // if no journal file yet exists ... there is nothing to stream.
+    if (!file.exists() || !file.canRead()) {
+      System.err.println("WARN - journal file \"" + file.getCanonicalPath() + "\" does not yet exist");
+      System.err.flush();
+      return Stream.empty();
+    }
+    checkInstruments();
+    final FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * RECORDS_PER_READ);
+    try {
+      if (in.size() > 0) {
+        readHeader(in, buffer);
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      in.close();
+      throw e;
+    }
+    buffer.clear();
+    buffer.flip();
+    final Spliterator<Trade> spliterator = new Spliterators.AbstractSpliterator<Trade>(
+        Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+      int count = 0;
+      boolean exhausted = false;
+
+      @Override
+      public boolean tryAdvance(final Consumer<? super Trade> action) {
+        try {
+          while (true) {
+            if (buffer.remaining() < RECORD_SIZE) {
+              if (exhausted) {
+                if (buffer.hasRemaining()) {
+                  throw new IllegalArgumentException(
+                      String.format("Truncated record in journal \"%s\" - at record %d", file, count + 1)
+                  );
+                }
+                return false;
+              }
+              buffer.compact();
+              exhausted = in.read(buffer) < 0;
+              buffer.flip();
+              continue;
+            }
+            count++;
+            final int start = buffer.position();
+            if ((exchangeCode != null && buffer.get(start) != exchangeCode.ordinal())
+                || (companyCode != null && buffer.getInt(start + 10) != companyCode.ordinal())) {
+              buffer.position(start + RECORD_SIZE);
+              continue;
+            }
+            action.accept(decode(buffer, count));
+            return true;
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+    return StreamSupport.stream(spliterator, false).onClose(() -> {
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Consumes a single record of the journal.
+   */
+  @FunctionalInterface
+  private interface RecordReader {
+    /**
+     * @param buffer buffer positioned at the start of the record.
+     * @param recordNumber which record (counting from one) this is.
+     */
+    void read(ByteBuffer buffer, int recordNumber);
+  }
+
+  /**
+   * Pass each record of the journal, in order, to a reader.
+   * @param fromPosition byte offset of the first record to read, zero for the very start.
+   * @throws IllegalArgumentException if the position is not that of a record within the journal.
+   */
+  private void readRecords(
+      final long fromPosition,
+      final RecordReader reader
+  ) throws IOException, IllegalArgumentException {
+    do {
+      // if no journal file yet exists ... there are no records.
+      if (!file.exists() || !file.canRead()) {
+        System.err.println("WARN - journal file \"" + file.getCanonicalPath() + "\" does not yet exist");
+        System.err.flush();
+        break;
+      }
+
+      checkInstruments();
+      try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * RECORDS_PER_READ);
+        if (in.size() == 0) {
+          break;
+        }
+        readHeader(in, buffer);
+        int count = 0;
+        if (fromPosition > 0) {
+          if (fromPosition < HEADER_SIZE || (fromPosition - HEADER_SIZE) % RECORD_SIZE != 0
+              || fromPosition > in.size()) {
+            throw new IllegalArgumentException(
+                String.format("Position %d is not that of a record within journal \"%s\"", fromPosition, file)
+            );
+          }
+          count = (int) ((fromPosition - HEADER_SIZE) / RECORD_SIZE);
+          in.position(fromPosition);
+        }
+        int read;
+        buffer.clear();
+        do {
+          read = in.read(buffer);
+          buffer.flip();
+          while (buffer.remaining() >= RECORD_SIZE) {
+            reader.read(buffer, ++count);
+          }
+          if (read < 0 && buffer.hasRemaining()) {
+            throw new IllegalArgumentException(
+                String.format("Truncated record in journal \"%s\" - at record %d", file, count + 1)
+            );
+          }
+          buffer.compact();
+        } while (read >= 0);
+      }
+    } while (false);
+  }
+
+  /**
+   * Closes the journal file, should it have been opened for appending.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+
+  /**
+   * Open the journal for appending, first verifying the header of an existing
+   * journal, and dropping any partial record left at its end by a crash, so
+   * that our records line up with those already there.
+   * @throws IllegalArgumentException if the file isn't a journal we understand.
+   */
+  private FileChannel openChannel() throws IOException, IllegalArgumentException {
+    if (channel == null || !channel.isOpen()) {
+      if (file.length() > 0) {
+        try (FileChannel existing = FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        )) {
+          readHeader(existing, ByteBuffer.allocate(HEADER_SIZE));
+          final long torn = (existing.size() - HEADER_SIZE) % RECORD_SIZE;
+          if (torn > 0) {
+            System.err.println(
+                String.format("WARN - dropping partial record of %d bytes from the end of journal \"%s\"", torn, file)
+            );
+            System.err.flush();
+            existing.truncate(existing.size() - torn);
+            existing.force(true);
+          }
+        }
+      }
+      channel = FileChannel.open(
+          file.toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND
+      );
+      if (channel.size() == 0) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) RECORD_SIZE);
+        header.flip();
+        while (header.hasRemaining()) {
+          channel.write(header);
+        }
+      }
+    }
+    return channel;
+  }
+
+  /**
+   * The companies listed alongside a binary journal, in id order.
+   * @param journalFile the journal of interest.
+   * @return symbol of each company, empty should none be listed (yet).
+   */
+  static List<String> listedInstruments(final File journalFile) throws IOException {
+    final File instrumentsFile = new File(journalFile.getPath() + INSTRUMENTS_SUFFIX);
+    if (!instrumentsFile.exists()) {
+      return Collections.emptyList();
+    }
+    return Files.readAllLines(instrumentsFile.toPath(), StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Verify that the companies listed alongside the journal have the same ids within our registry.
+   * @return how many companies are listed.
+   * @throws IllegalStateException should any listed id belong to another company, or none at all.
+   */
+  private int checkInstruments() throws IOException, IllegalStateException {
+    final List<String> listed = listedInstruments(file);
+    for (int id = 0; id < listed.size(); id++) {
+      final CompanyCode companyCode = instruments().get(id);
+      if (companyCode == null || !companyCode.name().equals(listed.get(id))) {
+        throw new IllegalStateException(
+            String.format("Binary trading journal \"%s\" holds company %d as \"%s\" whereas it is now %s, "
+                + "companies may only be appended to the configured instruments",
+                file, id, listed.get(id), companyCode == null ? "unknown" : "\"" + companyCode + "\"")
+        );
+      }
+    }
+    return listed.size();
+  }
+
+  /**
+   * List any companies of our registry missing from those listed alongside
+   * the journal, before a record may use their ids.
+   * @throws IllegalStateException should any listed id belong to another company.
+   */
+  private void listInstruments() throws IOException, IllegalStateException {
+    if (instrumentsListed) {
+      return;
+    }
+    final int listed = checkInstruments();
+    final StringBuilder missing = new StringBuilder();
+    if (listed == 0 && file.length() > HEADER_SIZE) {
+      System.err.println("WARN - binary trading journal \"" + file + "\" predates listing its companies, "
+          + "taking them to be as configured");
+      System.err.flush();
+    }
+    for (int id = listed; id < instruments().size(); id++) {
+      missing.append(instruments().get(id).name()).append('\n');
+    }
+    if (missing.length() > 0) {
+      try (FileChannel out = FileChannel.open(
+          new File(file.getPath() + INSTRUMENTS_SUFFIX).toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND
+      )) {
+        final ByteBuffer symbols = ByteBuffer.wrap(missing.toString().getBytes(StandardCharsets.US_ASCII));
+        while (symbols.hasRemaining()) {
+          out.write(symbols);
+        }
+        // the ids must be on the device before any record using them.
+        out.force(true);
+      }
+    }
+    instrumentsListed = true;
+  }
+
+  /**
+   * Read and verify the header at the start of the journal.
+   * @param in channel positioned at the start of the journal.
+   * @param buffer scratch space to read into.
+   * @throws IllegalArgumentException if this isn't a journal we understand.
+   */
+  private void readHeader(
+      final FileChannel in,
+      final ByteBuffer buffer
+  ) throws IOException, IllegalArgumentException {
+    buffer.clear();
+    buffer.limit(HEADER_SIZE);
+    while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+      // keep reading until we have the whole header.
+    }
+    buffer.flip();
+    if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+      throw new IllegalArgumentException(
+          String.format("File \"%s\" is not a binary trading journal", file)
+      );
+    }
+    final short version = buffer.getShort();
+    final short recordSize = buffer.getShort();
+    if (version != FORMAT_VERSION || recordSize != RECORD_SIZE) {
+      throw new IllegalArgumentException(
+          String.format("Binary trading journal \"%s\" is version %d with %d byte records, "
+              + "only version %d with %d byte records is supported",
+              file, version, recordSize, FORMAT_VERSION, RECORD_SIZE)
+      );
+    }
+  }
+
+  /**
+   * Write a trade into a buffer as a binary record.
+   * @param trade the trade to encode.
+   * @param buffer buffer with at least {@link #RECORD_SIZE} bytes remaining.
+   */
+  static void encode(
+      final Trade trade,
+      final ByteBuffer buffer
+  ) {
+    buffer.put((byte) trade.getExchangeCode().ordinal())
+        .put((byte) trade.getTransactionType().ordinal())
+        .putLong(trade.getTimestamp().getTime())
+        .putInt(trade.getCompanyCode().ordinal())
+        .putInt(trade.getQuantity() == null ? ABSENT : trade.getQuantity())
+        .putInt(trade.getBrokerage() == null ? ABSENT : trade.getBrokerage());
+  }
+
+  /**
+   * Read a trade from a binary record.
+   * @param buffer buffer with at least {@link #RECORD_SIZE} bytes remaining.
+   * @param recordNumber which record (counting from one) this is, for reporting purposes.
+   * @return the trade the record represents.
+   * @throws IllegalArgumentException if the record holds an unrecognised code.
+   */
+  Trade decode(
+      final ByteBuffer buffer,
+      final int recordNumber
+  ) throws IllegalArgumentException {
+    final int exchangeOrdinal = buffer.get();
+    final int typeOrdinal = buffer.get();
+    final long when = buffer.getLong();
+    final int companyOrdinal = buffer.getInt();
+    final int quantity = buffer.getInt();
+    final int brokerage = buffer.getInt();
+    checkOrdinals(exchangeOrdinal, typeOrdinal, companyOrdinal, recordNumber);
+    return new Trade(
+        EXCHANGE_CODES[exchangeOrdinal],
+        TRANSACTION_TYPES[typeOrdinal],
+        new Date(when),
+        instruments().get(companyOrdinal),
+        quantity == ABSENT ? null : quantity,
+        brokerage == ABSENT ? null : brokerage
+    );
+  }
+
+  /**
+   * Read the fields of a binary record and hand them to a handler. An absent
+   * quantity or brokerage is passed on as zero.
+   * @param buffer buffer with at least {@link #RECORD_SIZE} bytes remaining.
+   * @param recordNumber which record (counting from one) this is, for reporting purposes.
+   * @param handler receives the fields of the trade.
+   * @throws IllegalArgumentException if the record holds an unrecognised code.
+   */
+  void decode(
+      final ByteBuffer buffer,
+      final int recordNumber,
+      final TradeRecordHandler handler
+  ) throws IllegalArgumentException {
+    final int exchangeOrdinal = buffer.get();
+    final int typeOrdinal = buffer.get();
+    final long when = buffer.getLong();
+    final int companyOrdinal = buffer.getInt();
+    final int quantity = buffer.getInt();
+    final int brokerage = buffer.getInt();
+    checkOrdinals(exchangeOrdinal, typeOrdinal, companyOrdinal, recordNumber);
+    handler.onTrade(
+        EXCHANGE_CODES[exchangeOrdinal],
+        TRANSACTION_TYPES[typeOrdinal],
+        when,
+        instruments().get(companyOrdinal),
+        quantity == ABSENT ? 0 : quantity,
+        brokerage == ABSENT ? 0 : brokerage
+    );
+  }
+
+  private void checkOrdinals(
+      final int exchangeOrdinal,
+      final int typeOrdinal,
+      final int companyOrdinal,
+      final int recordNumber
+  ) throws IllegalArgumentException {
+    if (exchangeOrdinal < 0 || exchangeOrdinal >= EXCHANGE_CODES.length
+        || typeOrdinal < 0 || typeOrdinal >= TRANSACTION_TYPES.length
+        || companyOrdinal < 0 || companyOrdinal >= instruments().size()
+    ) {
+      throw new IllegalArgumentException(
+          String.format("Record holds unrecognised exchange (%d), transaction type (%d) "
+              + "or company (%d) - at record %d",
+              exchangeOrdinal, typeOrdinal, companyOrdinal, recordNumber)
+      );
+    }
+  }
+}
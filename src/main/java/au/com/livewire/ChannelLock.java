@@ -0,0 +1,133 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cross process lock taken by the operating system upon a lock file, via
+ * {@link FileChannel#tryLock()}. Unlike a lease, the lock is dropped by the
+ * operating system should its holder die, so neither expires nor needs
+ * renewing, and the lock file itself is never removed. Waiting is done
+ * with a short, growing back off, bounded by the lease asked for. Readers
+ * take the lock shared, so as not to exclude readers of other processes.
+ */
+public class ChannelLock implements CrossProcessLock {
+  private final static long MAX_LOCK_WAIT_MS = 10000L;
+
+  private final static long MIN_BACK_OFF_MS = 1L;
+  private final static long MAX_BACK_OFF_MS = 50L;
+
+  private final File lockFile;
+
+  /**
+   * Open for as long as we hold the lock, as closing it releases the lock.
+   */
+  private FileChannel channel;
+
+  private FileLock fileLock;
+
+  public ChannelLock(final File lockFile) {
+    this.lockFile = lockFile;
+  }
+
+  @Override
+  public void acquire(
+      final long leaseMs
+  ) throws JournalLockedException, IOException {
+    acquire(leaseMs, false);
+  }
+
+  /**
+   * Takes a shared lock, which other processes may also take shared.
+   */
+  @Override
+  public void acquireShared(
+      final long leaseMs
+  ) throws JournalLockedException, IOException {
+    acquire(leaseMs, true);
+  }
+
+  private synchronized void acquire(
+      final long leaseMs,
+      final boolean shared
+  ) throws JournalLockedException, IOException {
+    final long deadline = System.currentTimeMillis() + Math.min(leaseMs, MAX_LOCK_WAIT_MS);
+    final FileChannel candidate;
+    FileLock acquired;
+    long backOff = MIN_BACK_OFF_MS;
+
+    candidate = FileChannel.open(
+        lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      while ((acquired = candidate.tryLock(0L, Long.MAX_VALUE, shared)) == null) {
+        if (System.currentTimeMillis() + backOff > deadline) {
+          throw new JournalLockedException("Unable to acquire lock");
+        }
+        try {
+          Thread.sleep(backOff);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new JournalLockedException("Interrupted whilst waiting to acquire lock", e);
+        }
+        backOff = Math.min(backOff * 2, MAX_BACK_OFF_MS);
+      }
+    } catch (JournalLockedException | IOException | RuntimeException e) {
+      candidate.close();
+      throw e;
+    }
+    channel = candidate;
+    fileLock = acquired;
+  }
+
+  /**
+   * Nothing to do, the lock is held until released.
+   */
+  @Override
+  public synchronized void renew(final long leaseMs) {
+    // no lease to extend.
+  }
+
+  @Override
+  public synchronized void release() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      fileLock.release();
+      channel.close();
+    } catch (IOException e) {
+      System.err.println("WARN - failed to release lock upon \"" + lockFile + "\": " + e.getMessage());
+      System.err.flush();
+    } finally {
+      fileLock = null;
+      channel = null;
+    }
+  }
+
+  /**
+   * Probes the lock, should we not hold it ourselves.
+   */
+  @Override
+  public synchronized boolean isLocked() {
+    if (fileLock != null) {
+      return fileLock.isValid();
+    }
+    if (!lockFile.exists()) {
+      return false;
+    }
+    try (FileChannel probe = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE)) {
+      final FileLock probeLock = probe.tryLock();
+      if (probeLock == null) {
+        return true;
+      }
+      probeLock.release();
+      return false;
+    } catch (IOException e) {
+      // vanished underneath us, nobody can be holding it.
+      return false;
+    }
+  }
+}
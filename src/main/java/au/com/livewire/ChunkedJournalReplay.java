@@ -0,0 +1,364 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Tallies the positions within a csv journal upon several cores at once.
+ * The journal is split into byte ranges (chunks) which begin and end upon
+ * line boundaries, each of which is scanned upon a fork-join pool into a
+ * tally of its own; the net units of each company upon each exchange, the
+ * lowest those units fell to part way through the chunk, and the brokerage
+ * charged. The tallies are then merged in journal order. Tallies are
+ * arrays indexed by company id and then exchange ordinal.
+ * <p>
+ * A chunk can only have caused a negative quantity of stock should the units
+ * carried into it, plus the lowest it fell to, be negative. Only such a chunk
+ * (or one which failed to parse) is scanned again, in order, to report the
+ * offending line, exactly as a replay of the whole journal would have.
+ */
+public class ChunkedJournalReplay {
+  /**
+   * Chunks are no smaller than this, so small journals are scanned in one go.
+   */
+  private final static long DEFAULT_MIN_CHUNK_BYTES = 4L * 1024L * 1024L;
+
+  private final static ExchangeCode[] EXCHANGE_CODES = ExchangeCode.values();
+  private final static int EXCHANGE_COUNT = EXCHANGE_CODES.length;
+
+  /**
+   * Scans the chunks.
+   */
+  private final ForkJoinPool pool;
+
+  private final long minChunkBytes;
+
+  /**
+   * The companies which may be traded.
+   */
+  private final InstrumentRegistry instruments;
+
+  public ChunkedJournalReplay(final ForkJoinPool pool) {
+    this(pool, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param instruments the companies which may be traded.
+   */
+  public ChunkedJournalReplay(
+      final ForkJoinPool pool,
+      final InstrumentRegistry instruments
+  ) {
+    this(pool, DEFAULT_MIN_CHUNK_BYTES, instruments);
+  }
+
+  ChunkedJournalReplay(
+      final ForkJoinPool pool,
+      final long minChunkBytes
+  ) {
+    this(pool, minChunkBytes, InstrumentRegistry.DEFAULT);
+  }
+
+  ChunkedJournalReplay(
+      final ForkJoinPool pool,
+      final long minChunkBytes,
+      final InstrumentRegistry instruments
+  ) {
+    if (pool == null) {
+      throw new IllegalArgumentException("Chunked replay requires a fork-join pool");
+    }
+    if (minChunkBytes < 1) {
+      throw new IllegalArgumentException(
+          String.format("Chunks must be a positive number of bytes, value provided was %d", minChunkBytes)
+      );
+    }
+    this.pool = pool;
+    this.minChunkBytes = minChunkBytes;
+    this.instruments = instruments;
+  }
+
+  /**
+   * What a chunk of the journal came to.
+   */
+  private static final class Chunk implements TradeRecordHandler {
+    final long from;
+    final long to;
+    long[] units;
+    long[] lowest;
+    boolean[] seen;
+    final long[] brokerage = new long[EXCHANGE_COUNT];
+    int lineCount;
+    IllegalArgumentException failure;
+
+    Chunk(final long from, final long to, final int companyCount) {
+      this.from = from;
+      this.to = to;
+      this.units = new long[companyCount * EXCHANGE_COUNT];
+      this.lowest = new long[units.length];
+      this.seen = new boolean[units.length];
+    }
+
+    @Override
+    public void onTrade(
+        final ExchangeCode exchangeCode,
+        final Trade.TransactionType transactionType,
+        final long when,
+        final CompanyCode companyCode,
+        final int quantity,
+        final int brokerage
+    ) {
+      final int index = index(exchangeCode, companyCode);
+      if (index >= units.length) {
+        units = grow(units, index);
+        lowest = grow(lowest, index);
+        seen = Arrays.copyOf(seen, units.length);
+      }
+      units[index] += Trade.TransactionType.SELL == transactionType ? quantity : -quantity;
+      if (units[index] < lowest[index]) {
+        lowest[index] = units[index];
+      }
+      seen[index] = true;
+      this.brokerage[exchangeCode.ordinal()] += brokerage;
+    }
+  }
+
+  /**
+   * Tally the units available and brokerage charged upon every exchange.
+   * @param file the csv journal, which must exist.
+   * @return position book reflecting each and every trade within the journal.
+   * @throws IllegalArgumentException if a line does not represent a trade.
+   * @throws IllegalStateException if the trades would cause a negative quantity of stock.
+   * @throws ArithmeticException should a company have more units available than an int can hold.
+   */
+  public PositionBook positions(final File file) throws IOException, IllegalArgumentException, IllegalStateException {
+    final List<Chunk> chunks;
+    final long[] brokerage = new long[EXCHANGE_COUNT];
+    final PositionBook result;
+    long[] units = new long[0];
+    boolean[] seen = new boolean[0];
+    int linesBefore = 0;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      chunks = split(channel);
+      scan(file, channel, chunks);
+      for (Chunk chunk : chunks) {
+        if (chunk.failure != null || wouldGoNegative(units, chunk)) {
+          rescan(file, channel, chunk, units, linesBefore);
+        }
+        if (chunk.units.length > units.length) {
+          units = Arrays.copyOf(units, chunk.units.length);
+          seen = Arrays.copyOf(seen, chunk.units.length);
+        }
+        for (int i = 0; i < chunk.units.length; i++) {
+          units[i] += chunk.units[i];
+          seen[i] |= chunk.seen[i];
+        }
+        for (int i = 0; i < brokerage.length; i++) {
+          brokerage[i] += chunk.brokerage[i];
+        }
+        linesBefore += chunk.lineCount;
+      }
+    }
+
+    result = new PositionBook(instruments);
+    for (int i = 0; i < units.length; i++) {
+      if (seen[i]) {
+        result.apply(EXCHANGE_CODES[i % EXCHANGE_COUNT], Trade.TransactionType.SELL,
+            instruments.get(i / EXCHANGE_COUNT), Math.toIntExact(units[i]), 0);
+      }
+    }
+    for (ExchangeCode exchangeCode : ExchangeCode.values()) {
+      result.chargeBrokerage(exchangeCode, brokerage[exchangeCode.ordinal()]);
+    }
+    return result;
+  }
+
+  private static int index(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) {
+    return companyCode.ordinal() * EXCHANGE_COUNT + exchangeCode.ordinal();
+  }
+
+  /**
+   * @return a copy of a tally with room for an index, and then some.
+   */
+  private static long[] grow(final long[] tally, final int index) {
+    return Arrays.copyOf(tally, Math.max(index + 1, tally.length * 2));
+  }
+
+  /**
+   * Split the journal into about as many chunks as the pool has threads,
+   * each ending just beyond a newline (or at the end of the journal).
+   */
+  private List<Chunk> split(final FileChannel channel) throws IOException {
+    final List<Chunk> result = new ArrayList<>();
+    final long size = channel.size();
+    final long chunkCount = Math.max(1L, Math.min(pool.getParallelism(), size / minChunkBytes));
+    final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    long from = 0L;
+    for (long i = 1; i <= chunkCount && from < size; i++) {
+      long to = i == chunkCount ? size : Math.max(from, size * i / chunkCount);
+      // carry on to just beyond the next newline.
+      if (to < size && (to == 0 || !endsLine(channel, to, buffer))) {
+        to = nextLine(channel, to, buffer, size);
+      }
+      if (to > from) {
+        result.add(new Chunk(from, to, instruments.size()));
+      }
+      from = to;
+    }
+    return result;
+  }
+
+  /**
+   * Whether the byte before a position is a newline.
+   */
+  private static boolean endsLine(
+      final FileChannel channel,
+      final long position,
+      final ByteBuffer buffer
+  ) throws IOException {
+    buffer.clear().limit(1);
+    return channel.read(buffer, position - 1) == 1 && buffer.get(0) == '\n';
+  }
+
+  /**
+   * @return position just beyond the first newline at or after a position, or the end of the journal.
+   */
+  private static long nextLine(
+      final FileChannel channel,
+      final long position,
+      final ByteBuffer buffer,
+      final long size
+  ) throws IOException {
+    long offset = position;
+    while (offset < size) {
+      final int read;
+      buffer.clear();
+      read = channel.read(buffer, offset);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return offset + i + 1;
+        }
+      }
+      offset += read;
+    }
+    return size;
+  }
+
+  /**
+   * Scan every chunk, upon the pool unless there is only the one.
+   */
+  private void scan(
+      final File file,
+      final FileChannel channel,
+      final List<Chunk> chunks
+  ) throws IOException {
+    final List<Future<Void>> futures = new ArrayList<>();
+    if (chunks.size() == 1) {
+      scan(file, channel, chunks.get(0));
+      return;
+    }
+    for (Chunk chunk : chunks) {
+      futures.add(pool.submit(() -> {
+        try {
+          scan(file, channel, chunk);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return null;
+      }));
+    }
+    try {
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted whilst replaying journal \"" + file + "\"", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Scan a chunk into its tally, noting rather than throwing should a line
+   * not represent a trade, as the line is only known once the chunks before it are.
+   */
+  private void scan(
+      final File file,
+      final FileChannel channel,
+      final Chunk chunk
+  ) throws IOException {
+    try {
+      chunk.lineCount = new MappedJournalScanner(MappedJournalScanner.DEFAULT_WINDOW_SIZE, true, instruments)
+          .scan(file, channel, chunk.from, chunk.to, 0, chunk);
+    } catch (IllegalArgumentException e) {
+      chunk.failure = e;
+    }
+  }
+
+  private static boolean wouldGoNegative(
+      final long[] units,
+      final Chunk chunk
+  ) {
+    for (int i = 0; i < chunk.lowest.length; i++) {
+      if ((i < units.length ? units[i] : 0L) + chunk.lowest[i] < 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Scan a chunk again, in order, carrying on from the units of the chunks
+   * before it, to report the offending line.
+   */
+  private void rescan(
+      final File file,
+      final FileChannel channel,
+      final Chunk chunk,
+      final long[] unitsBefore,
+      final int linesBefore
+  ) throws IOException, IllegalArgumentException, IllegalStateException {
+    final long[][] units = new long[][] {unitsBefore.clone()};
+    final int[] lineCount = new int[] {linesBefore};
+    new MappedJournalScanner(instruments).scan(file, channel, chunk.from, chunk.to, linesBefore,
+        (exchangeCode, transactionType, when, companyCode, quantity, brokerage) -> {
+          final int index = index(exchangeCode, companyCode);
+          lineCount[0]++;
+          if (index >= units[0].length) {
+            units[0] = grow(units[0], index);
+          }
+          units[0][index] += Trade.TransactionType.SELL == transactionType ? quantity : -quantity;
+          if (units[0][index] < 0) {
+            throw new IllegalStateException(
+                String.format("Corrupt journal! At line %d, negative quantity of stock \"%s\"",
+                    lineCount[0], companyCode)
+            );
+          }
+        });
+    throw new IllegalStateException(
+        String.format("Chunk %d-%d of journal \"%s\" could not be replayed", chunk.from, chunk.to, file)
+    );
+  }
+}
@@ -0,0 +1,81 @@
+package au.com.livewire;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executor upon which simulated clients are run. Where the JVM
+ * offers virtual threads (21 onwards) each client gets one of its own, so
+ * that many thousands of them may be outstanding at once; older JVMs fall
+ * back to a fixed pool of platform threads.
+ * <p>
+ * Virtual threads are looked up reflectively, so that the project still
+ * builds (and runs) upon JDK 8.
+ */
+public final class ClientExecutors {
+  private final static String VIRTUAL_THREAD_FACTORY_METHOD = "newVirtualThreadPerTaskExecutor";
+
+  private ClientExecutors() {
+  }
+
+  /**
+   * @return whether the running JVM is able to give each client a virtual thread.
+   */
+  public static boolean virtualThreadsAvailable() {
+    return virtualThreadExecutorMethod() != null;
+  }
+
+  /**
+   * Create an executor for running clients.
+   * @param platformThreads how many platform threads to run clients upon; zero
+   *     (or less) for a virtual thread per client, where the JVM offers them,
+   *     otherwise four per processor.
+   * @return the executor, which the caller is expected to shut down.
+   */
+  public static ExecutorService newClientExecutor(final int platformThreads) {
+    final ExecutorService result;
+    final Method virtualThreadExecutor;
+    virtualThreadExecutor = platformThreads > 0 ? null : virtualThreadExecutorMethod();
+    if (virtualThreadExecutor != null) {
+      try {
+        return (ExecutorService) virtualThreadExecutor.invoke(null);
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        System.err.println("WARN - unable to create virtual threads, using platform threads instead");
+        System.err.println(e.getClass() + " - " + e.getMessage());
+        System.err.flush();
+      }
+    }
+    result = Executors.newFixedThreadPool(
+        platformThreads > 0 ? platformThreads : 4 * Runtime.getRuntime().availableProcessors(),
+        new ClientThreadFactory()
+    );
+    return result;
+  }
+
+  private static Method virtualThreadExecutorMethod() {
+    try {
+      return Executors.class.getMethod(VIRTUAL_THREAD_FACTORY_METHOD);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Names the platform threads, and stops them holding up the JVM's exit.
+   */
+  private static class ClientThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable task) {
+      final Thread result;
+      result = new Thread(task, "client-" + count.incrementAndGet());
+      result.setDaemon(true);
+      return result;
+    }
+  }
+}
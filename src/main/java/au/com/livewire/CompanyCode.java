@@ -1,10 +1,82 @@
 package au.com.livewire;
 
 /**
- * Those companies that may be traded on our platform. In a real-word
- * example, this would not be in an enum, but rather obtained from
- * a database.
+ * Those companies that may be traded on our platform. Rather than an enum,
+ * the companies are interned by an {@link InstrumentRegistry} as they are
+ * loaded from the configuration, so that listing a new one does not require
+ * a rebuild. Each has a dense id, its {@link #ordinal()}, and as a registry
+ * only ever has the one code per company they may be compared by identity.
  */
-public enum CompanyCode {
-  QAN, CBA, NAB
+public final class CompanyCode implements Comparable<CompanyCode> {
+  public static final CompanyCode QAN = new CompanyCode("QAN", 0);
+  public static final CompanyCode CBA = new CompanyCode("CBA", 1);
+  public static final CompanyCode NAB = new CompanyCode("NAB", 2);
+
+  private final String name;
+  private final int ordinal;
+
+  /**
+   * Only created here, for those companies we have always traded, and by registries.
+   */
+  CompanyCode(final String name, final int ordinal) {
+    this.name = name;
+    this.ordinal = ordinal;
+  }
+
+  /**
+   * @return ticker symbol of the company, upper case.
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * @return id of the company, from zero upto (but excluding) {@link InstrumentRegistry#size()} of its registry.
+   */
+  public int ordinal() {
+    return ordinal;
+  }
+
+  /**
+   * @return the companies we have always traded, in id order, see {@link InstrumentRegistry#DEFAULT}.
+   */
+  public static CompanyCode[] values() {
+    return InstrumentRegistry.DEFAULT.values();
+  }
+
+  /**
+   * As per an enum, whichever of the companies we have always traded has exactly the given symbol.
+   * @throws IllegalArgumentException if there is no such company.
+   */
+  public static CompanyCode valueOf(final String name) throws IllegalArgumentException {
+    return valueOf(name, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * As per an enum, the company with exactly the given symbol. Prefer
+   * {@link InstrumentRegistry#lookup(String)}, which does not throw.
+   * @param instruments the companies which may be traded.
+   * @throws IllegalArgumentException if no such company is registered.
+   */
+  public static CompanyCode valueOf(
+      final String name,
+      final InstrumentRegistry instruments
+  ) throws IllegalArgumentException {
+    final CompanyCode result = name == null || !name.equals(name.trim().toUpperCase())
+        ? null : instruments.lookup(name);
+    if (result == null) {
+      throw new IllegalArgumentException("No company code " + name);
+    }
+    return result;
+  }
+
+  @Override
+  public int compareTo(final CompanyCode other) {
+    return Integer.compare(ordinal, other.ordinal);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
 }
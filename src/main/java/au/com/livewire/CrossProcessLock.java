@@ -0,0 +1,44 @@
+package au.com.livewire;
+
+import java.io.IOException;
+
+/**
+ * Lock which keeps other processes (as opposed to other threads) away from
+ * a journal. Implementations need not be re-entrant, nor coordinate the
+ * threads of this process, that is left to {@link InProcessJournalLock}.
+ */
+public interface CrossProcessLock {
+  /**
+   * Acquire the lock, waiting a bounded amount of time for any other process holding it.
+   * @param leaseMs how long the lock is needed for, beyond which others may regard it as abandoned.
+   * @throws JournalLockedException if another process held onto the lock for too long.
+   */
+  void acquire(long leaseMs) throws JournalLockedException, IOException;
+
+  /**
+   * Acquire the lock shared with other readers, which unless overridden
+   * means acquiring it exclusively.
+   * @param leaseMs how long the lock is needed for, beyond which others may regard it as abandoned.
+   * @throws JournalLockedException if another process held onto the lock for too long.
+   */
+  default void acquireShared(long leaseMs) throws JournalLockedException, IOException {
+    acquire(leaseMs);
+  }
+
+  /**
+   * Hold onto the lock (which we already have) for at least a while longer.
+   * @param leaseMs how much longer the lock is needed for.
+   * @throws JournalLockedException if the lock had been abandoned and another process has since taken it.
+   */
+  void renew(long leaseMs) throws JournalLockedException, IOException;
+
+  /**
+   * Give up the lock, which we must hold.
+   */
+  void release();
+
+  /**
+   * @return whether any process (including this one) currently holds the lock.
+   */
+  boolean isLocked();
+}
@@ -7,4 +7,12 @@ public class CxaJournalBackedStockExchange extends JournalBackedStockExchange {
   ) {
     super(ExchangeCode.CXA, tradingJournal, currentBrokerage);
   }
+
+  public CxaJournalBackedStockExchange(
+      TradingJournal tradingJournal,
+      int currentBrokerage,
+      PositionCheckpoint checkpoint
+  ) {
+    super(ExchangeCode.CXA, tradingJournal, currentBrokerage, null, checkpoint);
+  }
 }
@@ -0,0 +1,16 @@
+package au.com.livewire;
+
+/**
+ * How an exchange carries out the requests made of it.
+ */
+public enum ExchangeMode {
+  /**
+   * Upon the requesting thread, coordinating with others via the journal lock and the position book.
+   */
+  JOURNAL,
+
+  /**
+   * Upon a single sequencer thread, to which requests are handed via a ring buffer.
+   */
+  SEQUENCED
+}
@@ -2,9 +2,15 @@ package au.com.livewire;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Wires up the assignment instance, including the CXA and ASX stock exchanges..
@@ -27,17 +33,41 @@ public class ExchangeModule extends AbstractModule {
     bind(Assignment.class);
   }
 
+  /**
+   * The companies which may be traded, as configured, handed to the journal
+   * (and through it, to the exchange and its position book).
+   */
   @Provides
+  @Singleton
+  InstrumentRegistry getInstrumentRegistry(
+      final AppProperties appProperties
+  ) {
+    return new InstrumentRegistry(appProperties.getInstruments());
+  }
+
+  @Provides
+  @Singleton
   protected StockExchange provideStockExchange(
-      @Named("tradingJournal") TradingJournal tradingJournal
+      @Named("tradingJournal") TradingJournal tradingJournal,
+      final PositionCheckpoint checkpoint,
+      final AppProperties appProperties
   ) {
     StockExchange result;
+    if (appProperties.getExchangeMode() == ExchangeMode.SEQUENCED) {
+      return new SequencedStockExchange(
+          exchangeCode,
+          tradingJournal,
+          getCurrentBrokerage(exchangeCode),
+          appProperties.getExchangeRingSize(),
+          checkpoint
+      );
+    }
     switch(exchangeCode) {
       case ASX:
-        result = new AsxJournalBackedStockExchange(tradingJournal, getCurrentBrokerage(ExchangeCode.ASX));
+        result = new AsxJournalBackedStockExchange(tradingJournal, getCurrentBrokerage(ExchangeCode.ASX), checkpoint);
         break;
       case CXA:
-        result = new CxaJournalBackedStockExchange(tradingJournal, getCurrentBrokerage(ExchangeCode.CXA));;
+        result = new CxaJournalBackedStockExchange(tradingJournal, getCurrentBrokerage(ExchangeCode.CXA), checkpoint);
         break;
       default:
         System.err.println("ERROR - unrecognised exchange code \"" + exchangeCode + "\"");
@@ -47,16 +77,144 @@ public class ExchangeModule extends AbstractModule {
     return result;
   }
 
+  /**
+   * The very same exchange, so that both ways of trading share its positions.
+   */
+  @Provides
+  protected AsyncStockExchange provideAsyncStockExchange(
+      final StockExchange stockExchange
+  ) {
+    return (AsyncStockExchange) stockExchange;
+  }
+
   @Named("tradingJournal")
-  @Provides TradingJournal getTradingJournal(
+  @Provides
+  @Singleton
+  TradingJournal getTradingJournal(
       @Named("journalFile") File journalFile,
-      @Named("journalLockFile") File journalLockFile
+      @Named("journalLockFile") File journalLockFile,
+      final InstrumentRegistry instruments,
+      final AppProperties appProperties
   ) {
+    final boolean isNew = !journalFile.exists();
     TradingJournal result;
-    result = new FileBasedTradingJournal(journalFile, journalLockFile);
+    switch(appProperties.getJournalType()) {
+      case APPEND_ONLY:
+        result = new AppendOnlyFileTradingJournal(
+            journalFile,
+            journalLockFile,
+            appProperties.getJournalSyncPolicy(),
+            appProperties.getJournalSyncInterval(),
+            appProperties.getJournalLockMode(),
+            instruments
+        );
+        break;
+      case GROUP_COMMIT:
+        result = new GroupCommitTradingJournal(
+            journalFile,
+            journalLockFile,
+            appProperties.getJournalSyncPolicy(),
+            appProperties.getJournalSyncInterval(),
+            appProperties.getJournalLockMode(),
+            instruments
+        );
+        break;
+      case BINARY:
+        result = new BinaryFileTradingJournal(
+            journalFile,
+            journalLockFile,
+            appProperties.getJournalLockMode(),
+            instruments
+        );
+        break;
+      case SEGMENTED:
+        result = new SegmentedTradingJournal(
+            journalFile,
+            journalLockFile,
+            appProperties.getJournalSegmentBytes(),
+            appProperties.getJournalSegmentAgeMs(),
+            appProperties.getJournalLockMode(),
+            instruments
+        );
+        break;
+      case SHARDED:
+        result = new ShardedTradingJournal(
+            journalFile,
+            journalLockFile,
+            appProperties.isJournalShardedByCompany(),
+            ForkJoinPool.commonPool(),
+            appProperties.getJournalLockMode(),
+            instruments
+        );
+        break;
+      case CSV:
+      default:
+        result = new FileBasedTradingJournal(
+            journalFile,
+            journalLockFile,
+            appProperties.getJournalLockMode(),
+            instruments
+        );
+        break;
+    }
+    if (isNew) {
+      migrateLegacyJournal(appProperties.getLegacyJournalFile(), journalFile, result, instruments);
+    }
     return result;
   }
 
+  /**
+   * Copies this exchange's trades out of the journal both exchanges once
+   * shared (journal.csv by default) into its new journal, so that its
+   * positions and brokerage are not lost by moving to a journal of its own.
+   */
+  private void migrateLegacyJournal(
+      final File legacyFile,
+      final File journalFile,
+      final TradingJournal journal,
+      final InstrumentRegistry instruments
+  ) {
+    final List<Trade> trades;
+    if (!legacyFile.exists() || legacyFile.getAbsoluteFile().equals(journalFile.getAbsoluteFile())) {
+      return;
+    }
+    try {
+      final TradingJournal legacyJournal = new SimpleFileBasedTradingJournal(legacyFile, instruments);
+      try (Stream<Trade> legacy = legacyJournal.stream(exchangeCode, null)) {
+        trades = legacy.collect(Collectors.toList());
+      }
+      if (trades.isEmpty()) {
+        return;
+      }
+      journal.lock(5000L);
+      try {
+        journal.addAll(trades);
+      } finally {
+        journal.releaseLock();
+      }
+    } catch (JournalLockedException | IOException e) {
+      throw new IllegalStateException("FAILED to copy " + exchangeCode + " trades from " + legacyFile
+          + " into " + journalFile, e);
+    }
+    System.err.println("WARN - copied " + trades.size() + " " + exchangeCode + " trades from " + legacyFile
+        + " into " + journalFile + ", remove " + legacyFile + " once every exchange has started up");
+    System.err.flush();
+  }
+
+  /**
+   * Each exchange keeps its own checkpoint alongside the journal, as the journal may be shared.
+   */
+  @Provides
+  PositionCheckpoint getPositionCheckpoint(
+      final @Named("journalFile") File journalFile,
+      final @Named("exchangeCode") ExchangeCode exchangeCode,
+      final AppProperties appProperties
+  ) {
+    final File checkpointFile;
+    checkpointFile = new File(journalFile.getPath() + "." + exchangeCode.name().toLowerCase() + ".checkpoint");
+    return new PositionCheckpoint(checkpointFile, appProperties.getJournalCheckpointInterval());
+  }
+
   @Named("journalFile")
   @Provides File getJournalFile(
       final @Named("exchangeCode") ExchangeCode exchangeCode,
@@ -109,6 +267,12 @@ public class ExchangeModule extends AbstractModule {
     return this.exchangeCode;
   }
 
+  @Provides
+  @Named("clientThreads")
+  int getClientThreads() {
+    return getAppProperties().getClientThreads();
+  }
+
   @Provides
   @Named("currentBrokerage")
   int getCurrentBrokerage(@Named("exchangeCode") ExchangeCode exchangeCode) {
@@ -2,29 +2,20 @@ package au.com.livewire;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import org.apache.commons.lang3.StringUtils;
 
 /**
  * Dumb thread-safe ASCII file trading journal, introduces a lock file, to
- * help prevent multiple executables from mangling a journal csv file.
+ * help prevent multiple executables from mangling a journal csv file. The
+ * lock file either holds a lease, or is locked by the operating system,
+ * depending upon the {@link LockMode}.
+ * Threads within the one JVM coordinate via an {@link InProcessJournalLock},
+ * so only touch the lock file when the journal changes hands between processes.
  */
 public class FileBasedTradingJournal extends SimpleFileBasedTradingJournal implements TradingJournal {
-  private final static int MAX_LOCK_RETRIES = 5;
-  private final static long MAX_LOCK_WAIT_MS = 10000L;
-
-  private final static long DEFAULT_LOCK_DURATION_MS = 1000L;
-
   private final static long MAX_LOCK_DURATION_MS = 10000L;
 
-  // how long to wait before retrying to acquire lock
-  private final static long LOCK_WAIT_DURATION_MS = 500L;
-
   /**
    * Lock file which is created to prevent others from accessing the file.
    * This file contains a number, representing the milliseconds since epoch 1970
@@ -34,15 +25,55 @@ public class FileBasedTradingJournal extends SimpleFileBasedTradingJournal imple
   @Named("journalLockFile")
   public File lockFile;
 
+  /**
+   * Shared with every other journal of this JVM using the same lock file.
+   */
+  private final InProcessJournalLock journalLock;
+
   public FileBasedTradingJournal(
       @Named("journalFile") File journalFile,
       @Named("journalLockFile") File journalLockFile
   ) {
-    super(journalFile);
+    this(journalFile, journalLockFile, LockMode.FILE);
+  }
+
+  /**
+   * @param lockMode how other processes are kept out, which must be the same
+   *     for every journal of this JVM using the lock file (the first one wins).
+   */
+  public FileBasedTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final LockMode lockMode
+  ) {
+    this(journalFile, journalLockFile, lockMode, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param lockMode how other processes are kept out, which must be the same
+   *     for every journal of this JVM using the lock file (the first one wins).
+   * @param instruments the companies which trades may be in.
+   */
+  public FileBasedTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final LockMode lockMode,
+      final InstrumentRegistry instruments
+  ) {
+    super(journalFile, instruments);
     this.lockFile = journalLockFile;
+    this.journalLock = InProcessJournalLock.forLockFile(
+        journalLockFile,
+        lockMode == LockMode.CHANNEL ? ChannelLock::new : LeaseFileLock::new
+    );
   }
 
-  public synchronized void lock(
+  /**
+   * Lock the journal exclusively on behalf of the current thread, which may already hold it.
+   * @param timeoutMs how long to wait for other threads, and how long the
+   *     lock is needed for.
+   */
+  public void lock(
       final long timeoutMs
   ) throws JournalLockedException, IOException {
     if (timeoutMs > MAX_LOCK_DURATION_MS) {
@@ -50,125 +81,85 @@ public class FileBasedTradingJournal extends SimpleFileBasedTradingJournal imple
           String.format("Lock timeout must be not exceed %dms", MAX_LOCK_DURATION_MS)
       );
     }
-    long then = System.currentTimeMillis();
-    long retryLockCount = 0;
-    Long lockExpiry;
-    long elapsed;
-
-    // be patient trying to acquire a lock on the journal.
-    do {
-      // check for existence of a lock file.
-      if ((lockExpiry = getLockExpiry()) != null) {
-        try {
-          Thread.sleep(LOCK_WAIT_DURATION_MS);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
-      }
-      elapsed = System.currentTimeMillis() - then;
-    } while(++retryLockCount < MAX_LOCK_RETRIES && elapsed < MAX_LOCK_WAIT_MS && lockExpiry != null);
+    journalLock.lock(timeoutMs);
+  }
 
-    if (lockExpiry != null) {
-      throw new JournalLockedException("Unable to acquire lock");
+  /**
+   * Lock the journal for reading on behalf of the current thread, alongside any other readers.
+   * @param timeoutMs how long to wait for any writer, and how long the
+   *     lock is needed for.
+   */
+  @Override
+  public void lockShared(
+      final long timeoutMs
+  ) throws JournalLockedException, IOException {
+    if (timeoutMs > MAX_LOCK_DURATION_MS) {
+      throw new IllegalArgumentException(
+          String.format("Lock timeout must be not exceed %dms", MAX_LOCK_DURATION_MS)
+      );
     }
+    journalLock.lockShared(timeoutMs);
+  }
 
-    String expiryText = String.format("%d", System.currentTimeMillis() + timeoutMs);
-    FileWriter lockWriter;
-    try {
-      // re-write the lock file from the start.
-      lockWriter = new FileWriter(lockFile, false);
-      lockWriter.append(expiryText).append("\n");
-      lockWriter.close();
-    } catch (IOException e) {
-      throw e;
+  /**
+   * Lock the journal for appending on behalf of the current thread,
+   * alongside other appenders of this JVM, but excluding other processes.
+   * @param timeoutMs how long to wait for any writer, and how long the
+   *     lock is needed for.
+   */
+  @Override
+  public void lockForAppend(
+      final long timeoutMs
+  ) throws JournalLockedException, IOException {
+    if (timeoutMs > MAX_LOCK_DURATION_MS) {
+      throw new IllegalArgumentException(
+          String.format("Lock timeout must be not exceed %dms", MAX_LOCK_DURATION_MS)
+      );
     }
-    return;
+    journalLock.lockForAppend(timeoutMs);
   }
 
   /**
-   * Whether a lock has been placed upon this journal
-   * @return
+   * Release the current thread's appending hold upon the journal.
+   * @throws IllegalMonitorStateException if the current thread had not locked the journal for appending.
    */
-  public synchronized boolean isLocked() {
-    final boolean result;
-    result = getLockExpiry() != null;
-    return result;
+  @Override
+  public void releaseAppendLock() {
+    journalLock.unlockForAppend();
   }
 
   /**
-   * Returns null if there is no active lock present or a non-null value
-   * is there is an active lock present.
-   * @return timestamp when the current lock expires, or null if there is
-   *     no lock file present.
+   * Release the current thread's shared hold upon the journal.
+   * @throws IllegalMonitorStateException if the current thread had not locked the journal for reading.
    */
-  public synchronized Long getLockExpiry() {
-    final Long result;
-    result = doGetLockExpiry(MAX_LOCK_RETRIES);
-    return result;
+  @Override
+  public void releaseSharedLock() {
+    journalLock.unlockShared();
   }
 
   /**
-   * Re-entrant method which allows us to retry getting a lock file if
-   * it disappears between checking for its existence and trying to
-   * read its contents.
-   * @param retryCount how many times to re-enter this method if the lock file goes missing.
-   * @return timestamp of a non-expired lock, or null if there is no lock or it has expired (and been removed).
+   * Whether a lock has been placed upon this journal, by any thread of any process.
+   * @return
    */
-  private Long doGetLockExpiry(final int retryCount) {
-    long now = System.currentTimeMillis();
-    Long result = null;
+  public boolean isLocked() {
+    return journalLock.isLocked();
+  }
 
-    // if no lock file exists ... there is no lock.
-    if (lockFile.exists()) {
-      // has it expired?
-      FileReader lockFileReader;
-      try {
-        lockFileReader = new FileReader(lockFile);
-        BufferedReader br = new BufferedReader(lockFileReader);
-        String text;
-        try {
-          if (((text = br.readLine()) != null) && StringUtils.isNotBlank(text) && (StringUtils.isNumeric(text))) {
-            long expiry = Long.parseLong(text.trim());
-            if (expiry >= now) {
-              result = expiry;
-              return result;
-            } else {
-              // lock has expired ... remove it.
-              releaseLock();
-            }
-          }
-        } catch (IOException e) {
-          // dealing with a corrupt lock file :-( if it still exists ... remove it.
-          System.err.println("WARN - detected corrupt lock file .. removing it");
-          System.err.flush();
-          if (lockFile.exists()) {
-            lockFile.delete();
-          }
-          return null;
-        } finally {
-          try {
-            br.close();
-            lockFileReader.close();
-          } catch (IOException ignoreMe) {
-            // YOLO
-          }
-        }
-      } catch (FileNotFoundException e) {
-        // somebody yanked it from underneath us .... if our retryCount hasn't expired .. try again
-        if (retryCount > 0) {
-          doGetLockExpiry(retryCount - 1);
-        }
-      }
-    }
-    return result;
+  /**
+   * Returns null if there is no active lock file present or a non-null value
+   * is there is an active lock file present.
+   * @return timestamp when the current lock expires, or null if there is
+   *     no lock file present.
+   */
+  public Long getLockExpiry() {
+    return new LeaseFileLock(lockFile).getLockExpiry();
   }
 
   /**
-   * We trust that whomever is releasing the lock also acquired it!!
+   * Release the current thread's hold upon the journal.
+   * @throws IllegalMonitorStateException if the current thread had not locked the journal.
    */
-  public synchronized void releaseLock() {
-    if (lockFile.exists()) {
-      lockFile.delete();
-    }
+  public void releaseLock() {
+    journalLock.unlock();
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,220 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Append-only trading journal which commits trades in groups. Callers of
+ * {@link #add(Trade)} are queued up and a single writer thread drains
+ * the queue, appending the whole batch with one write (and at most one
+ * sync) before letting every caller in the batch continue. Under
+ * concurrent load, callers share the cost of each write rather than each
+ * paying for their own.
+ */
+public class GroupCommitTradingJournal extends AppendOnlyFileTradingJournal {
+  private final static int MAX_BATCH_SIZE = 1024;
+  private final static int INITIAL_BATCH_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Queued by {@link #close()} to stop the writer thread once it has written
+   * everything queued before it, as interrupting the writer part way through
+   * a write would close the channel beneath it.
+   */
+  private final static PendingTrade CLOSING = new PendingTrade(null);
+
+  /**
+   * A trade waiting to be written, along with the means of telling its caller it has been.
+   */
+  private static class PendingTrade {
+    final Trade trade;
+    final CompletableFuture<Void> written;
+
+    PendingTrade(final Trade trade) {
+      this.trade = trade;
+      this.written = new CompletableFuture<>();
+    }
+  }
+
+  /**
+   * Trades waiting to be written by the writer thread.
+   */
+  private final BlockingQueue<PendingTrade> queue;
+
+  /**
+   * Drains the queue and writes each batch.
+   */
+  private final Thread writerThread;
+
+  /**
+   * Re-used for encoding each batch of trades. Only touched by the writer thread.
+   */
+  private ByteBuffer batchBuffer;
+
+  private volatile boolean closed;
+
+  public GroupCommitTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final SyncPolicy syncPolicy,
+      final int syncInterval
+  ) {
+    this(journalFile, journalLockFile, syncPolicy, syncInterval, LockMode.FILE);
+  }
+
+  public GroupCommitTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final SyncPolicy syncPolicy,
+      final int syncInterval,
+      final LockMode lockMode
+  ) {
+    this(journalFile, journalLockFile, syncPolicy, syncInterval, lockMode, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param instruments the companies which trades may be in.
+   */
+  public GroupCommitTradingJournal(
+      final File journalFile,
+      final File journalLockFile,
+      final SyncPolicy syncPolicy,
+      final int syncInterval,
+      final LockMode lockMode,
+      final InstrumentRegistry instruments
+  ) {
+    super(journalFile, journalLockFile, syncPolicy, syncInterval, lockMode, instruments);
+    this.queue = new LinkedBlockingQueue<>();
+    this.batchBuffer = ByteBuffer.allocateDirect(INITIAL_BATCH_BUFFER_SIZE);
+    this.writerThread = new Thread(this::drain, "journal-writer-" + journalFile.getName());
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  /**
+   * Queue the trade to be written and wait until the batch containing it has been written.
+   * @param trade the trade to be added to the journal.
+   */
+  @Override
+  public void add(Trade trade) throws IOException {
+    try {
+      addAsync(trade).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted whilst waiting for trade \"" + trade + "\" to be written", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException("FAILED to write trade \"" + trade + "\"", e.getCause());
+    }
+  }
+
+  /**
+   * Queue the trade to be written, without waiting for it.
+   * @param trade the trade to be added to the journal.
+   * @return completes once the batch containing the trade has been written.
+   */
+  @Override
+  public CompletableFuture<Void> addAsync(final Trade trade) {
+    final PendingTrade pending;
+    final CompletableFuture<Void> failed = new CompletableFuture<>();
+    if (file == null) {
+      failed.completeExceptionally(new IllegalStateException("Unable to add to journal without file reference"));
+      return failed;
+    }
+    if (closed) {
+      failed.completeExceptionally(new IOException("Journal \"" + file + "\" has been closed"));
+      return failed;
+    }
+    try {
+      // render the csv on the caller's thread, so that a bad trade only fails its own caller.
+      trade.toCsv();
+    } catch (RuntimeException e) {
+      failed.completeExceptionally(e);
+      return failed;
+    }
+    pending = new PendingTrade(trade);
+    queue.add(pending);
+    if (closed && queue.remove(pending)) {
+      // the writer may already have gone away, and won't ever see this trade.
+      failed.completeExceptionally(new IOException("Journal \"" + file + "\" has been closed"));
+      return failed;
+    }
+    return pending.written;
+  }
+
+  /**
+   * Stops the writer thread once it has written everything queued so far, then closes the journal file.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    queue.add(CLOSING);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    PendingTrade straggler;
+    while ((straggler = queue.poll()) != null) {
+      if (straggler == CLOSING) {
+        continue;
+      }
+      straggler.written.completeExceptionally(new IOException("Journal \"" + file + "\" has been closed"));
+    }
+    super.close();
+  }
+
+  /**
+   * Body of the writer thread.
+   */
+  private void drain() {
+    final List<PendingTrade> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    boolean closing = false;
+    while (!closing) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        // only close() stops the writer, by queueing CLOSING.
+        continue;
+      }
+      queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+      closing = batch.remove(CLOSING);
+      if (!batch.isEmpty()) {
+        writeBatch(batch);
+      }
+      batch.clear();
+    }
+  }
+
+  private void writeBatch(final List<PendingTrade> batch) {
+    try {
+      batchBuffer.clear();
+      for (PendingTrade pending : batch) {
+        batchBuffer = encode(pending.trade.toCsv(), batchBuffer);
+      }
+      batchBuffer.flip();
+      write(batchBuffer, batch.size());
+      for (PendingTrade pending : batch) {
+        pending.written.complete(null);
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("ERROR - FAILED to write batch of " + batch.size() + " trades to journal \"" + file + "\"");
+      System.err.println(e.getClass() + " - " + e.getMessage());
+      System.err.flush();
+      for (PendingTrade pending : batch) {
+        pending.written.completeExceptionally(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,382 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Coordinates the threads of this JVM wanting to lock a journal, so that
+ * they wait upon each other without touching the filesystem. Only the first
+ * of them takes the (comparatively costly) cross process lock, which is then
+ * handed from thread to thread for as long as any are queued, and given up
+ * once the last of them is done.
+ * <p>
+ * The hand-off is decided upon release, from whether any threads are queued
+ * for the (fair) in-process lock at that moment. A thread which queues just
+ * after that finds the cross process lock given up, and takes it afresh
+ * within its own timeout, whereas a queued thread which gives up waiting
+ * releases the cross process lock should nobody else of ours be left to.
+ * <p>
+ * The journal may be locked shared, by any number of readers, exclusively,
+ * by a single writer, or for appending, by any number of appenders. Appenders
+ * share the journal with each other (and readers) within this process, but
+ * take the cross process lock exclusively, so that no other process may read
+ * or append meanwhile. The cross process lock is taken in whichever mode the
+ * first thread wanted, and should a writer or appender find it only held
+ * shared it is released and taken again exclusively, once any readers of
+ * ours are done with it. A thread holding the journal shared must release it
+ * before appending to it or locking it exclusively, as must an appender
+ * before locking it exclusively, since it would otherwise be waiting upon
+ * itself.
+ * <p>
+ * The cross process lock is taken (or renewed) by one thread at a time, but
+ * outside of this lock's monitor, so that a slow lease or operating system
+ * lock does not hold up threads of ours releasing the journal meanwhile.
+ * <p>
+ * There is one of these per lock file, shared by every journal using that
+ * lock file, hence they are obtained via {@link #forLockFile(File, Function)}.
+ */
+public class InProcessJournalLock {
+  private static final ConcurrentMap<File, InProcessJournalLock> LOCKS = new ConcurrentHashMap<>();
+
+  private final OwnedLock lock = new OwnedLock();
+
+  /**
+   * Keeps other processes away from the journal.
+   */
+  private final CrossProcessLock crossProcessLock;
+
+  /**
+   * How the cross process lock is held, if at all, guarded by this.
+   */
+  private CrossProcessMode crossProcessMode = CrossProcessMode.NONE;
+
+  /**
+   * How many holds (shared or exclusive, re-entrant or not) threads of this
+   * process have upon the journal, guarded by this.
+   */
+  private int holdCount;
+
+  /**
+   * Whether a thread of ours is taking, renewing or upgrading the cross
+   * process lock, which nobody else may touch meanwhile, guarded by this.
+   */
+  private boolean crossProcessBusy;
+
+  /**
+   * How many shared and appending holds the current thread has upon the journal.
+   */
+  private final ThreadLocal<int[]> threadHolds = ThreadLocal.withInitial(() -> new int[2]);
+  private static final int SHARED_HOLDS = 0;
+  private static final int APPEND_HOLDS = 1;
+
+  private enum CrossProcessMode {
+    NONE,
+    SHARED,
+    EXCLUSIVE
+  }
+
+  InProcessJournalLock(final CrossProcessLock crossProcessLock) {
+    this.crossProcessLock = crossProcessLock;
+  }
+
+  /**
+   * Obtain the lock shared by every journal within this JVM which uses a lock file.
+   * @param lockFile the lock file of interest.
+   * @param crossProcessLockFactory creates the cross process lock, should this
+   *     be the first time the lock file has been seen.
+   * @return the in-process lock for the lock file.
+   */
+  public static InProcessJournalLock forLockFile(
+      final File lockFile,
+      final Function<File, CrossProcessLock> crossProcessLockFactory
+  ) {
+    File key;
+    try {
+      key = lockFile.getCanonicalFile();
+    } catch (IOException e) {
+      key = lockFile.getAbsoluteFile();
+    }
+    return LOCKS.computeIfAbsent(key, file -> new InProcessJournalLock(crossProcessLockFactory.apply(lockFile)));
+  }
+
+  /**
+   * Lock the journal exclusively, re-entrantly, on behalf of the current thread.
+   * @param timeoutMs how long to wait for other threads, which is also how
+   *     long the journal is needed for (as far as other processes are concerned).
+   * @throws JournalLockedException if the journal could not be locked in time.
+   * @throws IllegalStateException if the current thread holds the journal shared (or for appending) only.
+   */
+  public void lock(final long timeoutMs) throws JournalLockedException, IOException, IllegalStateException {
+    if (lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread()) {
+      throw new IllegalStateException(
+          String.format("Thread \"%s\" is unable to lock the journal exclusively whilst holding it shared "
+              + "(or for appending)", Thread.currentThread().getName())
+      );
+    }
+    acquire(lock.writeLock(), false, timeoutMs);
+  }
+
+  /**
+   * Lock the journal shared with any other readers, re-entrantly, on behalf of the current thread.
+   * @param timeoutMs how long to wait for any writer, which is also how
+   *     long the journal is needed for (as far as other processes are concerned).
+   * @throws JournalLockedException if the journal could not be locked in time.
+   */
+  public void lockShared(final long timeoutMs) throws JournalLockedException, IOException {
+    acquire(lock.readLock(), true, timeoutMs);
+    threadHolds.get()[SHARED_HOLDS]++;
+  }
+
+  /**
+   * Lock the journal for appending, re-entrantly, on behalf of the current
+   * thread, alongside other appenders (and readers) of this process, whereas
+   * other processes are kept out altogether.
+   * @param timeoutMs how long to wait for any writer (or readers holding the
+   *     cross process lock shared), which is also how long the journal is
+   *     needed for (as far as other processes are concerned).
+   * @throws JournalLockedException if the journal could not be locked in time.
+   * @throws IllegalStateException if the current thread holds the journal shared, but neither for appending
+   *     nor exclusively.
+   */
+  public void lockForAppend(final long timeoutMs) throws JournalLockedException, IOException, IllegalStateException {
+    final int[] holds = threadHolds.get();
+    if (holds[SHARED_HOLDS] > 0 && holds[APPEND_HOLDS] == 0 && !lock.isWriteLockedByCurrentThread()) {
+      throw new IllegalStateException(
+          String.format("Thread \"%s\" is unable to lock the journal for appending whilst holding it shared",
+              Thread.currentThread().getName())
+      );
+    }
+    acquire(lock.readLock(), false, timeoutMs);
+    holds[APPEND_HOLDS]++;
+  }
+
+  /**
+   * Release one exclusive hold upon the journal. The cross process lock is
+   * retained should other threads of ours be waiting for the journal.
+   * @throws IllegalMonitorStateException if the current thread does not hold the lock exclusively.
+   */
+  public void unlock() throws IllegalMonitorStateException {
+    if (!lock.isWriteLockedByCurrentThread()) {
+      throw new IllegalMonitorStateException(
+          String.format("Journal lock is not held by thread \"%s\"", Thread.currentThread().getName())
+      );
+    }
+    release(lock.writeLock());
+  }
+
+  /**
+   * Release one shared hold upon the journal.
+   * @throws IllegalMonitorStateException if the current thread does not hold the lock shared.
+   */
+  public void unlockShared() throws IllegalMonitorStateException {
+    final int[] holds = threadHolds.get();
+    if (holds[SHARED_HOLDS] == 0) {
+      throw new IllegalMonitorStateException(
+          String.format("Journal shared lock is not held by thread \"%s\"", Thread.currentThread().getName())
+      );
+    }
+    release(lock.readLock());
+    holds[SHARED_HOLDS]--;
+  }
+
+  /**
+   * Release one appending hold upon the journal.
+   * @throws IllegalMonitorStateException if the current thread does not hold the lock for appending.
+   */
+  public void unlockForAppend() throws IllegalMonitorStateException {
+    final int[] holds = threadHolds.get();
+    if (holds[APPEND_HOLDS] == 0) {
+      throw new IllegalMonitorStateException(
+          String.format("Journal append lock is not held by thread \"%s\"", Thread.currentThread().getName())
+      );
+    }
+    release(lock.readLock());
+    holds[APPEND_HOLDS]--;
+  }
+
+  /**
+   * @return whether any thread of any process has locked the journal.
+   */
+  public boolean isLocked() {
+    return lock.isWriteLocked() || lock.getReadLockCount() > 0 || crossProcessLock.isLocked();
+  }
+
+  /**
+   * @return whether the current thread has exclusively locked the journal.
+   */
+  public boolean isHeldByCurrentThread() {
+    return lock.isWriteLockedByCurrentThread();
+  }
+
+  /**
+   * @param shared whether the cross process lock may be taken shared.
+   */
+  private void acquire(
+      final Lock inProcessLock,
+      final boolean shared,
+      final long timeoutMs
+  ) throws JournalLockedException, IOException {
+    final long deadline = System.currentTimeMillis() + timeoutMs;
+    final boolean acquired;
+    try {
+      acquired = inProcessLock.tryLock(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new JournalLockedException("Interrupted whilst waiting to acquire lock", e);
+    }
+    if (!acquired) {
+      final Thread owner = lock.owner();
+      releaseIfIdle();
+      throw new JournalLockedException(
+          String.format("Unable to acquire lock, held by thread \"%s\"", owner == null ? "?" : owner.getName())
+      );
+    }
+
+    final CrossProcessMode was;
+    final CrossProcessMode wanted;
+    synchronized (this) {
+      try {
+        awaitCrossProcessLock(shared, deadline);
+      } catch (JournalLockedException e) {
+        giveUp(inProcessLock);
+        throw e;
+      }
+      was = crossProcessMode;
+      if (was == CrossProcessMode.EXCLUSIVE || (was == CrossProcessMode.SHARED && shared)) {
+        // already ours (or handed over from another thread of ours).
+        wanted = was;
+      } else {
+        wanted = shared ? CrossProcessMode.SHARED : CrossProcessMode.EXCLUSIVE;
+      }
+      crossProcessBusy = true;
+    }
+
+    // nobody else of ours touches the cross process lock meanwhile, nor do we need our monitor to.
+    boolean released = false;
+    try {
+      if (wanted == was) {
+        crossProcessLock.renew(timeoutMs);
+      } else {
+        if (was == CrossProcessMode.SHARED) {
+          // left behind by readers, upgrade it.
+          crossProcessLock.release();
+          released = true;
+        }
+        if (shared) {
+          crossProcessLock.acquireShared(timeoutMs);
+        } else {
+          crossProcessLock.acquire(timeoutMs);
+        }
+      }
+    } catch (JournalLockedException | IOException | RuntimeException e) {
+      synchronized (this) {
+        crossProcessBusy = false;
+        if (released) {
+          crossProcessMode = CrossProcessMode.NONE;
+        }
+        giveUp(inProcessLock);
+      }
+      throw e;
+    }
+    synchronized (this) {
+      crossProcessBusy = false;
+      crossProcessMode = wanted;
+      holdCount++;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Wait for any other thread of ours to be done with the cross process
+   * lock, and should it be held shared whilst we need it exclusively, for
+   * readers of ours to be done with it, as it can't be taken exclusively
+   * without first letting it go, which would leave them unprotected from
+   * other processes.
+   * @param shared whether the cross process lock may be held shared.
+   * @param deadline when to give up waiting.
+   * @throws JournalLockedException if the others are not done in time.
+   */
+  private void awaitCrossProcessLock(
+      final boolean shared,
+      final long deadline
+  ) throws JournalLockedException {
+    long remaining;
+    while (crossProcessBusy || (!shared && crossProcessMode == CrossProcessMode.SHARED && holdCount > 0)) {
+      if ((remaining = deadline - System.currentTimeMillis()) <= 0) {
+        throw new JournalLockedException(crossProcessBusy
+            ? "Unable to acquire lock, whilst another thread takes the cross process lock"
+            : String.format("Unable to acquire lock, shared by %d readers", holdCount)
+        );
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new JournalLockedException("Interrupted whilst waiting to acquire lock", e);
+      }
+    }
+  }
+
+  /**
+   * Let go of the in-process lock having failed to take the cross process
+   * lock, giving that up too should nobody else of ours be holding it.
+   * Callers must hold our monitor.
+   */
+  private void giveUp(final Lock inProcessLock) {
+    if (holdCount == 0 && crossProcessMode != CrossProcessMode.NONE) {
+      crossProcessLock.release();
+      crossProcessMode = CrossProcessMode.NONE;
+    }
+    inProcessLock.unlock();
+    notifyAll();
+  }
+
+  /**
+   * Give up the cross process lock should it have been kept for threads
+   * which have since stopped waiting for it.
+   */
+  private synchronized void releaseIfIdle() {
+    if (holdCount == 0 && !crossProcessBusy && crossProcessMode != CrossProcessMode.NONE
+        && !lock.hasQueuedThreads() && !lock.isWriteLocked() && lock.getReadLockCount() == 0) {
+      crossProcessLock.release();
+      crossProcessMode = CrossProcessMode.NONE;
+    }
+  }
+
+  private void release(final Lock inProcessLock) {
+    try {
+      synchronized (this) {
+        // whoever is busy with the cross process lock will be holding it.
+        if (--holdCount == 0 && !crossProcessBusy && !lock.hasQueuedThreads()
+            && crossProcessMode != CrossProcessMode.NONE) {
+          crossProcessLock.release();
+          crossProcessMode = CrossProcessMode.NONE;
+        }
+        // appenders may be waiting for the readers to be done.
+        notifyAll();
+      }
+    } finally {
+      inProcessLock.unlock();
+    }
+  }
+
+  /**
+   * Exposes which thread holds the lock exclusively, for the sake of error messages.
+   */
+  private static class OwnedLock extends ReentrantReadWriteLock {
+    OwnedLock() {
+      // queued threads are served in order, so a hand-off goes to the longest waiting.
+      super(true);
+    }
+
+    Thread owner() {
+      return getOwner();
+    }
+  }
+}
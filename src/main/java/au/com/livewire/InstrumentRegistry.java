@@ -0,0 +1,174 @@
+package au.com.livewire;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Every company (instrument) which may be traded upon our platform, each
+ * interned as a {@link CompanyCode} with a dense integer id, in the order
+ * they were registered. The companies we have always traded (QAN, CBA and
+ * NAB) are registered first, then those listed in the configuration (see
+ * {@link AppProperties#getInstruments()}), so listing a new company only
+ * takes a restart rather than a rebuild.
+ * <p>
+ * Ids are stored within binary journals, so an existing company must never
+ * be removed from (nor moved within) the configured list, only new ones
+ * appended to it.
+ * <p>
+ * A registry is built once, from the configuration, and handed to those
+ * journals (and through them, the exchanges and position books) which are
+ * to trade its companies, see {@link TradingJournal#instruments()}. It is
+ * never changed afterwards, so may be shared by any number of threads, and
+ * each injector (or test) has its own. Only the companies we have always
+ * traded are known to {@link #DEFAULT}, which is used wherever no registry
+ * is given.
+ * <p>
+ * Codes are looked up via an open-addressing hash table of their symbols,
+ * straight from the characters (or bytes) of a line, without creating a
+ * string, nor throwing should the symbol be unknown.
+ */
+public final class InstrumentRegistry {
+  /**
+   * Ids fit in the int of a binary journal record, but position books are paged, so keep them sensible.
+   */
+  final static int MAX_INSTRUMENTS = 65536;
+  final static int MAX_SYMBOL_LENGTH = 12;
+
+  /**
+   * Only the companies we have always traded.
+   */
+  public static final InstrumentRegistry DEFAULT = new InstrumentRegistry(Collections.emptyList());
+
+  /**
+   * The codes in id order, along with a hash table of them (a power of two
+   * in size, never more than half full) keyed by symbol.
+   */
+  private final CompanyCode[] codes;
+  private final CompanyCode[] slots;
+
+  /**
+   * Intern the companies we have always traded, then those listed, skipping any already registered.
+   * @param instruments ticker symbols, (ASCII) letters and digits only, case insensitive.
+   * @throws IllegalArgumentException if any symbol is blank, too long, or holds other characters,
+   *     or there are too many of them.
+   */
+  public InstrumentRegistry(final Collection<String> instruments) throws IllegalArgumentException {
+    final List<CompanyCode> registered = new ArrayList<>();
+    final Set<String> names = new HashSet<>();
+    // created by CompanyCode itself, so its constants never depend upon a registry.
+    for (CompanyCode companyCode : Arrays.asList(CompanyCode.QAN, CompanyCode.CBA, CompanyCode.NAB)) {
+      registered.add(companyCode);
+      names.add(companyCode.name());
+    }
+    for (String symbol : instruments) {
+      final String name = symbol == null ? "" : symbol.trim().toUpperCase();
+      if (name.isEmpty() || name.length() > MAX_SYMBOL_LENGTH
+          || !name.chars().allMatch(c -> c < 128 && Character.isLetterOrDigit(c))) {
+        throw new IllegalArgumentException(
+            String.format("Company code \"%s\" must be upto %d letters and digits", symbol, MAX_SYMBOL_LENGTH)
+        );
+      }
+      if (names.add(name)) {
+        if (registered.size() >= MAX_INSTRUMENTS) {
+          throw new IllegalArgumentException(
+              String.format("Unable to register company code \"%s\", upto %d may be registered", name, MAX_INSTRUMENTS)
+          );
+        }
+        registered.add(new CompanyCode(name, registered.size()));
+      }
+    }
+    codes = registered.toArray(new CompanyCode[0]);
+    slots = new CompanyCode[Math.max(16, Integer.highestOneBit(codes.length * 2 - 1) * 2)];
+    for (CompanyCode code : codes) {
+      int slot = hash(code.name(), 0, code.name().length()) & (slots.length - 1);
+      while (slots[slot] != null) {
+        slot = (slot + 1) & (slots.length - 1);
+      }
+      slots[slot] = code;
+    }
+  }
+
+  /**
+   * Which company, if any, has the (case insensitive) symbol between two offsets?
+   * @param chars holds the symbol, such as a line of a journal.
+   * @param start offset of the first character of the symbol.
+   * @param end offset just beyond the last character of the symbol.
+   * @return the company's code, or null if there is none.
+   */
+  public CompanyCode lookup(
+      final CharSequence chars,
+      final int start,
+      final int end
+  ) {
+    final int mask = slots.length - 1;
+    final int length = end - start;
+    if (length < 1 || length > MAX_SYMBOL_LENGTH) {
+      return null;
+    }
+    for (int slot = hash(chars, start, end) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+      final String name = slots[slot].name();
+      if (name.length() == length) {
+        int i = 0;
+        while (i < length && name.charAt(i) == Character.toUpperCase(chars.charAt(start + i))) {
+          i++;
+        }
+        if (i == length) {
+          return slots[slot];
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Which company, if any, has the (trimmed, case insensitive) symbol?
+   * @return the company's code, or null if there is none.
+   */
+  public CompanyCode lookup(final String symbol) {
+    if (symbol == null) {
+      return null;
+    }
+    final String trimmed = symbol.trim();
+    return lookup(trimmed, 0, trimmed.length());
+  }
+
+  /**
+   * @param id as given by {@link CompanyCode#ordinal()}.
+   * @return the company with the id, or null if there is none.
+   */
+  public CompanyCode get(final int id) {
+    return id < 0 || id >= codes.length ? null : codes[id];
+  }
+
+  /**
+   * @return how many companies are registered, one more than the highest id.
+   */
+  public int size() {
+    return codes.length;
+  }
+
+  /**
+   * @return every company registered, in id order, which belongs to the caller.
+   */
+  public CompanyCode[] values() {
+    return codes.clone();
+  }
+
+  private static int hash(
+      final CharSequence chars,
+      final int start,
+      final int end
+  ) {
+    int result = 0;
+    for (int i = start; i < end; i++) {
+      result = 31 * result + Character.toUpperCase(chars.charAt(i));
+    }
+    // spread the bits, as the table is indexed by the lowest of them.
+    return result ^ (result >>> 16);
+  }
+}
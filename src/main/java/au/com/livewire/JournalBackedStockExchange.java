@@ -3,18 +3,43 @@ package au.com.livewire;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.StringUtils;
 
 /**
  * Implementation of a stock exchange backed by a journal of transactions.
  * That journal of transactions could be one of several implementations.
+ * <p>
+ * Trades lock the journal for appending, which is shared between the
+ * threads of this process, relying upon the journal's own add() being
+ * thread-safe, but keeps other processes (and anybody of ours needing the
+ * journal exclusively) out. Queries only lock it shared, so that reports
+ * run alongside each other, and alongside reports of other processes,
+ * although traders wait for them to finish. A buy reserves its units
+ * against the position book's atomic counters before appending its trade,
+ * handing them back should the append fail, so buys never wait upon each
+ * other, and only lock the journal whilst appending.
+ * <p>
+ * Orders may also be placed asynchronously, in which case they are run upon
+ * a dedicated executor and handed to the journal via
+ * {@link TradingJournal#addAsync(Trade)}, so that a journal which batches
+ * its writes need not tie up a thread per order.
+ * <p>
+ * Given a {@link PositionCheckpoint}, the positions are recovered from the
+ * latest checkpoint (replaying only the journal beyond it) and checkpointed
+ * again every so many trades, upon the executor, whilst the journal is
+ * briefly locked exclusively.
  */
-public class JournalBackedStockExchange implements StockExchange {
+public class JournalBackedStockExchange implements AsyncStockExchange {
   /**
    * How much each transaction currently costs for this stock exchange.
    */
@@ -30,14 +55,71 @@ public class JournalBackedStockExchange implements StockExchange {
    */
   TradingJournal journal;
 
+  /**
+   * Units available for each company, lazily built from the journal.
+   */
+  private volatile PositionBook positionBook;
+
+  /**
+   * Runs asynchronous orders, guarded by this.
+   */
+  private Executor executor;
+
+  /**
+   * Saves the positions every so often, null if they are always rebuilt from the whole journal.
+   */
+  private final PositionCheckpoint checkpoint;
+
+  /**
+   * Trades handed to the journal (or buys which have set aside units to be),
+   * but not yet reflected in the position book.
+   */
+  private final AtomicInteger tradesInFlight = new AtomicInteger();
+
+  /**
+   * How many buys have ever set about reserving units, which they do without
+   * locking the journal, so that a checkpoint can tell whether any did so
+   * whilst it copied the positions.
+   */
+  private final AtomicLong reservations = new AtomicLong();
+
   public JournalBackedStockExchange(
       ExchangeCode exchangeCode,
       TradingJournal tradingJournal,
       int currentBrokerage
+  ) {
+    this(exchangeCode, tradingJournal, currentBrokerage, null, null);
+  }
+
+  /**
+   * @param executor runs the asynchronous orders, rather than a pool of our own.
+   */
+  public JournalBackedStockExchange(
+      final ExchangeCode exchangeCode,
+      final TradingJournal tradingJournal,
+      final int currentBrokerage,
+      final Executor executor
+  ) {
+    this(exchangeCode, tradingJournal, currentBrokerage, executor, null);
+  }
+
+  /**
+   * @param executor runs the asynchronous orders (and checkpoints), null for a pool of our own.
+   *     Checkpoints wait for traders to let go of the journal, so must not be run upon their thread.
+   * @param checkpoint saves the positions every so often, null for no checkpoints.
+   */
+  public JournalBackedStockExchange(
+      final ExchangeCode exchangeCode,
+      final TradingJournal tradingJournal,
+      final int currentBrokerage,
+      final Executor executor,
+      final PositionCheckpoint checkpoint
   ) {
     this.exchangeCode = exchangeCode;
     this.journal = tradingJournal;
     this.currentBrokerage = currentBrokerage;
+    this.executor = executor;
+    this.checkpoint = checkpoint;
   }
 
   @Override
@@ -45,188 +127,595 @@ public class JournalBackedStockExchange implements StockExchange {
       final String code,
       final Integer units
   ) throws IllegalArgumentException, IOException {
-    Trade trade;
-    Date when = new Date();
-    CompanyCode companyCode;
-    if (StringUtils.isBlank(code)) {
-      throw new InvalidCodeException("Must provide non-null, non-blank company code");
-    }
-    if (units == null || units < 1) {
-      throw new IllegalArgumentException("Must provide non-null, positive whole number for units, value provided was \"" + units + "\"");
-    }
+    final Trade trade = newTrade(Trade.TransactionType.BUY, code, units);
+    final CompanyCode companyCode = trade.getCompanyCode();
+    final PositionBook positions;
+    boolean appended = false;
+
+    // the units are set aside before locking, so the journal is only locked whilst appending.
+    tradesInFlight.incrementAndGet();
+    reservations.incrementAndGet();
     try {
-      companyCode = CompanyCode.valueOf(code.trim().toUpperCase());
-    } catch (IllegalArgumentException e) {
-      throw new InvalidCodeException(String.format("Specified company code \"%s\" not valid", code));
-    }
+      try {
+        positions = loadedPositions();
+      } catch (JournalLockedException wtf) {
+        final String msg;
+        msg = String.format("ERROR - FAILED to lock journal to process BUY request \"%s\"", trade);
+        System.err.println("ERROR " + msg);
+        System.err.flush();
+        throw new IllegalStateException(msg, wtf);
+      }
+      // ensure that there is a sufficient quantity to buy, setting it aside.
+      long surplus = positions.reserve(exchangeCode, companyCode, trade.getQuantity());
+      if (surplus < trade.getQuantity()) {
+        final String msg = String.format(
+            "Insufficient units (%d) available for stock \"%s\" "
+            + "to accommodate purchase of %d units",
+            surplus, companyCode, trade.getQuantity());
+        throw new InsufficentUnitsException(msg);
+      }
 
-    trade = new Trade(exchangeCode, Trade.TransactionType.BUY, when, companyCode, units, currentBrokerage);
+      try {
+        try {
+          journal.lockForAppend(5000L);
+        } catch (JournalLockedException wtf) {
+          final String msg;
+          msg = String.format("ERROR - FAILED to lock journal to process BUY request \"%s\"", trade);
+          System.err.println("ERROR " + msg);
+          System.err.flush();
+          throw new IllegalStateException(msg, wtf);
+        }
+        try {
+          journal.add(trade);
+          appended = true;
+        } finally {
+          journal.releaseAppendLock();
+        }
+      } finally {
+        if (appended) {
+          positions.chargeBrokerage(exchangeCode, trade.getBrokerage());
+        } else {
+          positions.unreserve(exchangeCode, companyCode, trade.getQuantity());
+        }
+      }
+    } finally {
+      tradesInFlight.decrementAndGet();
+    }
+    recorded(1);
+  }
 
+  @Override
+  public void sell(String code, Integer units) throws IllegalArgumentException {
+    final Trade trade = newTrade(Trade.TransactionType.SELL, code, units);
     try {
-      journal.lock(5000L);
+      journal.lockForAppend(5000L);
     } catch (JournalLockedException wtf) {
       final String msg;
-      msg = String.format("ERROR - FAILED to lock journal to process BUY request \"%s\"", trade);
+      msg = String.format("ERROR - FAILED to lock journal to process SELL request \"%s\"", trade);
       System.err.println("ERROR " + msg);
       System.err.flush();
       throw new IllegalStateException(msg, wtf);
+    } catch (IOException ioe) {
+      final String msg;
+      msg = String.format("FAILED to lock journal to append sell trade \"%s\".", trade);
+      System.err.println("FATAL - " + msg);
+      throw new IllegalStateException(msg, ioe);
     }
-
-    // ensure that there is a sufficient quantify to buy
-    List<Trade> tradeList;
     try {
-      tradeList = journal.list();
-    } catch (FileNotFoundException firstTimeAroundException) {
-      // this can happen if there isn't yet a journal file in existence..
-      tradeList = null;
-    }
-    // if there are NO trades, then there cannot possible be sufficent to buy.
-    if (tradeList == null || tradeList.size() < 1) {
-      journal.releaseLock();
-      throw new InsufficentUnitsException(
-          String.format("Exchange \"%s\" does not contain sufficient units of \"%s\" to honour trade",
-              exchangeCode, code)
-      );
-    }
-
-    int buyCount = tradeList.stream()
-        .filter(t -> Trade.TransactionType.BUY == t.getTransactionType())
-        .filter(t -> exchangeCode == t.getExchangeCode())
-        .filter(t -> companyCode == t.getCompanyCode())
-        .map(Trade::getQuantity)
-        .mapToInt(Integer::intValue)
-        .sum();
-    int sellCount = tradeList.stream()
-        .filter(t -> Trade.TransactionType.SELL == t.getTransactionType())
-        .filter(t -> exchangeCode == t.getExchangeCode())
-        .filter(t -> companyCode == t.getCompanyCode())
-        .map(Trade::getQuantity)
-        .mapToInt(Integer::intValue)
-        .sum();
-    int surplus = sellCount - buyCount;
-    if (surplus < 0) {
-      final String msg = String.format(
-          "FATAL - journal corrupt ... invalid negative "
-              + "quantity (%d) of stock \"%s\"", surplus, companyCode);
-      System.err.println(msg);
-      journal.releaseLock();
-      throw new IllegalStateException(msg);
-    }
-
-    if (surplus < trade.getQuantity()) {
-      final String msg = String.format(
-          "Insufficient units (%d) available for stock \"%s\" "
-          + "to accommodate purchase of %d units",
-          surplus, companyCode, trade.getQuantity());
-      journal.releaseLock();
-      throw new InsufficentUnitsException(msg);
+      final PositionBook positions = loadPositions();
+      journal.add(trade);
+      positions.apply(trade);
+      recorded(1);
+    } catch (IOException ioe) {
+      final String msg;
+      msg = String.format("FAILED to append sell trade \"%s\" to journal.", trade);
+      System.err.println("FATAL - " + msg);
+      throw new IllegalStateException(msg, ioe);
+    } finally {
+      journal.releaseAppendLock();
     }
-
-    journal.add(trade);
-    journal.releaseLock();
-    return;
   }
 
   @Override
-  public void sell(String code, Integer units) throws IllegalArgumentException {
-    Trade trade;
-    Date when = new Date();
-    CompanyCode companyCode;
-    if (StringUtils.isBlank(code)) {
-      throw new InvalidCodeException("Must provide non-null, non-blank company code");
-    }
-    if (units == null || units < 1) {
-      throw new IllegalArgumentException("Must provide non-null, positive whole number for units. Value provided was \"" + units + "\"");
+  public Map<String, Integer> getOrderBookTotalVolume() throws IOException, IllegalStateException {
+    final PositionBook positions;
+    try {
+      journal.lockShared(5000L);
+    } catch (JournalLockedException wtf) {
+      final String msg;
+      msg = String.format("ERROR - FAILED to lock journal to calculate order book totals.");
+      System.err.println("ERROR " + msg);
+      System.err.flush();
+      throw new IllegalStateException(msg, wtf);
     }
     try {
-      companyCode = CompanyCode.valueOf(code.trim().toUpperCase());
-    } catch (IllegalArgumentException e) {
-      throw new InvalidCodeException(String.format("Specified company code \"%s\" not valid", code));
+      positions = loadPositions();
+    } finally {
+      journal.releaseSharedLock();
     }
+    return positions.getVolumes(exchangeCode);
+  }
 
-    trade = new Trade(exchangeCode, Trade.TransactionType.SELL, when, companyCode, units, currentBrokerage);
+  /**
+   * Units available for a single company, read straight from the position
+   * book without building a map of every company.
+   * @param companyCode the company of interest.
+   * @return units available, zero if the company has not been traded.
+   */
+  public long getOrderBookVolume(final CompanyCode companyCode) throws IOException, IllegalStateException {
+    final PositionBook positions;
     try {
-      journal.lock(5000L);
-      journal.add(trade);
-      journal.releaseLock();
+      journal.lockShared(5000L);
     } catch (JournalLockedException wtf) {
       final String msg;
-      msg = String.format("ERROR - FAILED to lock journal to process BUY request \"%s\"", trade);
+      msg = String.format("ERROR - FAILED to lock journal to calculate order book volume.");
       System.err.println("ERROR " + msg);
       System.err.flush();
       throw new IllegalStateException(msg, wtf);
-    } catch (IOException ioe) {
-      final String msg;
-      msg = String.format("FAILED to append sell trade \"%s\" to journal.", trade);
-      System.err.println("FATAL - " + msg);
-      throw new IllegalStateException(msg, ioe);
     }
+    try {
+      positions = loadPositions();
+    } finally {
+      journal.releaseSharedLock();
+    }
+    return positions.getAvailable(exchangeCode, companyCode);
   }
 
   @Override
-  public Map<String, Integer> getOrderBookTotalVolume() throws IOException, IllegalStateException {
-    final List<Trade> tradeList;
+  public BigDecimal getTradingCosts() throws IOException {
+    final BigDecimal result;
+    final PositionBook positions;
     try {
-      journal.lock(5000L);
+      journal.lockShared(5000L);
     } catch (JournalLockedException wtf) {
       final String msg;
-      msg = String.format("ERROR - FAILED to lock journal to calculate order book totals.");
+      msg = String.format("ERROR - FAILED to lock journal to calculate trading costs.");
       System.err.println("ERROR " + msg);
       System.err.flush();
       throw new IllegalStateException(msg, wtf);
     }
-    tradeList = journal.list();
-    journal.releaseLock();
-    Map<String, Integer> result;
-    result = new HashMap<>();
-    int lineCount = 0;
-    for (Trade trade : tradeList) {
-      // if the trade was not a part of this exchange, ignore it.
-      if (!(exchangeCode == trade.getExchangeCode())) {
-        continue;
-      }
-      final String key = trade.getCompanyCode().name();
-      int existing = result.getOrDefault(key, 0);
-      int after = Trade.TransactionType.SELL == trade.getTransactionType()
-          ? existing + trade.getQuantity()
-          : existing - trade.getQuantity();
-      lineCount++;
-      if (after < 0) {
-        throw new IllegalStateException(
-            String.format("Corrupt journal! At line %d, negative quantity of stock \"%s\"",
-                lineCount, key)
-        );
-      }
-      result.put(key, after);
+    try {
+      positions = loadPositions();
+    } finally {
+      journal.releaseSharedLock();
     }
+    /* we can't apply the same brokerage to each trade, as the charge
+     * is subject to fluctuate throughout a trading period, so the book
+     * accumulates whatever each trade was actually charged.
+     */
+    // return the result in dollars rather than cents.
+    result = BigDecimal.valueOf(positions.getBrokerageCents(exchangeCode), 2);
     return result;
   }
 
+  /**
+   * Validates every order, then locks the journal once to carry out those
+   * which are valid against the position book, appending all the accepted
+   * trades with a single write. Units sold within the batch are only made
+   * available to the batch's own (later) buys until that write succeeds, so
+   * nobody else can buy units which might yet fail to be recorded. Once the
+   * write succeeds the accepted orders stand, and their units are never
+   * handed back, even should bringing the positions up to date then fail.
+   * @param orders the orders to be carried out.
+   * @return what became of each order, in the same order.
+   */
   @Override
-  public BigDecimal getTradingCosts() throws IOException {
-    final BigDecimal result;
-    int brokerageSumCents = 0;
-    final List<Trade> tradeList;
-    tradeList = journal.list();
-    do {
-      // no point pursuing this if the journal is empty.
-      if ((tradeList == null) || tradeList.size() == 0) {
-        break;
-      }
-
-      /* we can't apply the same brokerage to each trade, as the charge
-       * is subject to fluctuate throughout a trading period.
-       */
-      brokerageSumCents = tradeList.stream()
-          .filter(trade -> exchangeCode == trade.getExchangeCode())
-          .map(Trade::getBrokerage)
-          .filter(Objects::nonNull)
-          .mapToInt(Integer::intValue)
-          .sum();
-
-    } while (false);
-    // return the result in dollars rather than cents.
-    result = BigDecimal.valueOf((double)brokerageSumCents / 100.0D);
+  public List<OrderResult> submitBatch(final List<Order> orders) {
+    final OrderResult[] results = new OrderResult[orders.size()];
+    final Trade[] trades = new Trade[orders.size()];
+    for (int i = 0; i < orders.size(); i++) {
+      final Order order = orders.get(i);
+      try {
+        trades[i] = newTrade(order.getTransactionType(), order.getCode(), order.getUnits());
+      } catch (IllegalArgumentException e) {
+        results[i] = OrderResult.rejected(order, e);
+      }
+    }
+
+    try {
+      journal.lockForAppend(5000L);
+    } catch (JournalLockedException | IOException wtf) {
+      final String msg;
+      msg = String.format("ERROR - FAILED to lock journal to process batch of %d orders", orders.size());
+      System.err.println("ERROR " + msg);
+      System.err.flush();
+      return complete(orders, results, new IllegalStateException(msg, wtf));
+    }
+
+    // units sold within this batch, and units reserved from the book, by company id.
+    final InstrumentRegistry instruments = journal.instruments();
+    final int[] sold = new int[instruments.size()];
+    final boolean[] anySold = new boolean[sold.length];
+    final int[] reserved = new int[sold.length];
+    PositionBook positions = null;
+    boolean appended = false;
+    try {
+      positions = loadPositions();
+      final List<Trade> accepted = new ArrayList<>(orders.size());
+      for (int i = 0; i < trades.length; i++) {
+        final Trade trade = trades[i];
+        if (trade == null) {
+          continue;
+        }
+        final int company = trade.getCompanyCode().ordinal();
+        if (trade.getTransactionType() == Trade.TransactionType.SELL) {
+          sold[company] += trade.getQuantity();
+          anySold[company] = true;
+        } else {
+          final int fromBatch = Math.min(sold[company], trade.getQuantity());
+          final int fromBook = trade.getQuantity() - fromBatch;
+          if (fromBook > 0) {
+            long surplus = positions.reserve(exchangeCode, trade.getCompanyCode(), fromBook);
+            if (surplus < fromBook) {
+              results[i] = OrderResult.rejected(orders.get(i), new InsufficentUnitsException(String.format(
+                  "Insufficient units (%d) available for stock \"%s\" "
+                  + "to accommodate purchase of %d units",
+                  surplus + sold[company], trade.getCompanyCode(), trade.getQuantity())));
+              continue;
+            }
+            reserved[company] += fromBook;
+          }
+          sold[company] -= fromBatch;
+        }
+        accepted.add(trade);
+      }
+
+      journal.addAll(accepted);
+      appended = true;
+      for (Trade trade : accepted) {
+        positions.chargeBrokerage(exchangeCode, trade.getBrokerage());
+      }
+      for (int company = 0; company < sold.length; company++) {
+        if (anySold[company]) {
+          positions.apply(exchangeCode, Trade.TransactionType.SELL, instruments.get(company), sold[company], 0);
+        }
+      }
+      recorded(accepted.size());
+      return complete(orders, results, null);
+    } catch (IOException | RuntimeException e) {
+      final String msg;
+      if (appended) {
+        // the trades are in the journal, so they stand, and their units must not be handed back.
+        msg = String.format("FAILED to bring positions up to date with batch of %d orders appended to journal.",
+            orders.size());
+        System.err.println("FATAL - " + msg);
+        System.err.println(e.getClass() + " - " + e.getMessage());
+        System.err.flush();
+        return complete(orders, results, null);
+      }
+      msg = String.format("FAILED to append batch of %d orders to journal.", orders.size());
+      System.err.println("FATAL - " + msg);
+      System.err.flush();
+      if (positions != null) {
+        for (int company = 0; company < reserved.length; company++) {
+          if (reserved[company] > 0) {
+            positions.unreserve(exchangeCode, instruments.get(company), reserved[company]);
+          }
+        }
+      }
+      return complete(orders, results, e);
+    } finally {
+      journal.releaseAppendLock();
+    }
+  }
+
+  /**
+   * Fill in the results of every order not already refused.
+   * @param failure why they failed, or null if they were accepted.
+   */
+  private static List<OrderResult> complete(
+      final List<Order> orders,
+      final OrderResult[] results,
+      final Throwable failure
+  ) {
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == null) {
+        results[i] = failure == null
+            ? OrderResult.accepted(orders.get(i))
+            : OrderResult.rejected(orders.get(i), failure);
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Buy stock on one of our own threads.
+   * @return completes once the trade is in the journal, or exceptionally
+   *     with whatever {@link #buy(String, Integer)} would have thrown.
+   */
+  @Override
+  public CompletableFuture<Void> buyAsync(
+      final String code,
+      final Integer units
+  ) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    executor().execute(() -> {
+      final Trade trade;
+      final PositionBook positions;
+      try {
+        trade = newTrade(Trade.TransactionType.BUY, code, units);
+        journal.lockForAppend(5000L);
+      } catch (JournalLockedException wtf) {
+        final String msg;
+        msg = String.format("ERROR - FAILED to lock journal to process BUY request for %d \"%s\"", units, code);
+        System.err.println("ERROR " + msg);
+        System.err.flush();
+        result.completeExceptionally(new IllegalStateException(msg, wtf));
+        return;
+      } catch (IOException | RuntimeException e) {
+        result.completeExceptionally(e);
+        return;
+      }
+      try {
+        positions = loadPositions();
+        long surplus = positions.reserve(exchangeCode, trade.getCompanyCode(), trade.getQuantity());
+        if (surplus < trade.getQuantity()) {
+          final String msg = String.format(
+              "Insufficient units (%d) available for stock \"%s\" "
+              + "to accommodate purchase of %d units",
+              surplus, trade.getCompanyCode(), trade.getQuantity());
+          result.completeExceptionally(new InsufficentUnitsException(msg));
+          return;
+        }
+        // the trade has its place in the journal, but need not be written before we move on.
+        // whatever the caller chains on is run by us, rather than by the journal's writer.
+        tradesInFlight.incrementAndGet();
+        journal.addAsync(trade).whenCompleteAsync((ignored, failure) -> {
+          if (failure == null) {
+            positions.chargeBrokerage(exchangeCode, trade.getBrokerage());
+          } else {
+            positions.unreserve(exchangeCode, trade.getCompanyCode(), trade.getQuantity());
+          }
+          tradesInFlight.decrementAndGet();
+          if (failure == null) {
+            recorded(1);
+            result.complete(null);
+          } else {
+            result.completeExceptionally(failure);
+          }
+        }, executor());
+      } catch (IOException | RuntimeException e) {
+        result.completeExceptionally(e);
+      } finally {
+        journal.releaseAppendLock();
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Sell stock on one of our own threads.
+   * @return completes once the trade is in the journal, or exceptionally
+   *     with whatever {@link #sell(String, Integer)} would have thrown.
+   */
+  @Override
+  public CompletableFuture<Void> sellAsync(
+      final String code,
+      final Integer units
+  ) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    executor().execute(() -> {
+      final Trade trade;
+      try {
+        trade = newTrade(Trade.TransactionType.SELL, code, units);
+        journal.lockForAppend(5000L);
+      } catch (JournalLockedException wtf) {
+        final String msg;
+        msg = String.format("ERROR - FAILED to lock journal to process SELL request for %d \"%s\"", units, code);
+        System.err.println("ERROR " + msg);
+        System.err.flush();
+        result.completeExceptionally(new IllegalStateException(msg, wtf));
+        return;
+      } catch (IOException | RuntimeException e) {
+        result.completeExceptionally(e);
+        return;
+      }
+      try {
+        final PositionBook positions = loadPositions();
+        tradesInFlight.incrementAndGet();
+        journal.addAsync(trade).whenCompleteAsync((ignored, failure) -> {
+          if (failure == null) {
+            positions.apply(trade);
+          }
+          tradesInFlight.decrementAndGet();
+          if (failure == null) {
+            recorded(1);
+            result.complete(null);
+          } else {
+            final String msg;
+            msg = String.format("FAILED to append sell trade \"%s\" to journal.", trade);
+            System.err.println("FATAL - " + msg);
+            result.completeExceptionally(new IllegalStateException(msg, failure));
+          }
+        }, executor());
+      } catch (IOException | RuntimeException e) {
+        result.completeExceptionally(e);
+      } finally {
+        journal.releaseAppendLock();
+      }
+    });
+    return result;
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Integer>> getOrderBookTotalVolumeAsync() {
+    final CompletableFuture<Map<String, Integer>> result = new CompletableFuture<>();
+    executor().execute(() -> {
+      try {
+        result.complete(getOrderBookTotalVolume());
+      } catch (IOException | RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Validate an order, turning it into a trade upon this exchange.
+   * @param transactionType whether buying or selling.
+   * @param code company being traded.
+   * @param units how many units are being traded.
+   * @return the trade, charged at the current brokerage.
+   * @throws InvalidCodeException if the company code is not recognised.
+   * @throws IllegalArgumentException if the units are missing or not positive.
+   */
+  private Trade newTrade(
+      final Trade.TransactionType transactionType,
+      final String code,
+      final Integer units
+  ) throws InvalidCodeException, IllegalArgumentException {
+    return newTrade(exchangeCode, transactionType, code, units, currentBrokerage, journal.instruments());
+  }
+
+  /**
+   * Validate an order, turning it into a trade upon an exchange.
+   * @param exchangeCode exchange upon which the trade is made.
+   * @param transactionType whether buying or selling.
+   * @param code company being traded.
+   * @param units how many units are being traded.
+   * @param brokerage what the exchange charges for the trade, in cents.
+   * @param instruments the companies which may be traded.
+   * @return the trade.
+   * @throws InvalidCodeException if the company code is not recognised.
+   * @throws IllegalArgumentException if the units are missing or not positive.
+   */
+  static Trade newTrade(
+      final ExchangeCode exchangeCode,
+      final Trade.TransactionType transactionType,
+      final String code,
+      final Integer units,
+      final int brokerage,
+      final InstrumentRegistry instruments
+  ) throws InvalidCodeException, IllegalArgumentException {
+    final Trade result;
+    final CompanyCode companyCode;
+    if (StringUtils.isBlank(code)) {
+      throw new InvalidCodeException("Must provide non-null, non-blank company code");
+    }
+    if (units == null || units < 1) {
+      throw new IllegalArgumentException("Must provide non-null, positive whole number for units, value provided was \"" + units + "\"");
+    }
+    companyCode = instruments.lookup(code);
+    if (companyCode == null) {
+      throw new InvalidCodeException(String.format("Specified company code \"%s\" not valid", code));
+    }
+    result = new Trade(exchangeCode, transactionType, new Date(), companyCode, units, brokerage);
+    return result;
+  }
+
+  /**
+   * Obtain the executor running asynchronous orders, starting a pool of
+   * daemon threads (one per processor) should none have been supplied.
+   */
+  private synchronized Executor executor() {
+    if (executor == null) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        final Thread thread = new Thread(runnable, "exchange-" + exchangeCode + "-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Save the positions as they stand, along with how far into the journal
+   * they reach. The journal is locked exclusively whilst doing so, so that
+   * the two agree.
+   * @return whether a checkpoint was written, which it isn't should there be
+   *     no checkpoint, a journal unable to resume part way through, or
+   *     asynchronous trades still being written.
+   */
+  public boolean checkpoint() throws IOException, JournalLockedException {
+    if (checkpoint == null) {
+      return false;
+    }
+    journal.lock(5000L);
+    try {
+      final PositionBook positions = loadPositions();
+      final long position = journal.position();
+      final long reserved = reservations.get();
+      if (position < 0 || tradesInFlight.get() > 0) {
+        return false;
+      }
+      // buys reserve units without the journal lock, so the copy only stands should none have meanwhile.
+      final PositionBook snapshot = new PositionBook(journal.instruments());
+      snapshot.merge(positions);
+      if (tradesInFlight.get() > 0 || reservations.get() != reserved) {
+        return false;
+      }
+      checkpoint.write(exchangeCode, snapshot, journal, position);
+      return true;
+    } finally {
+      journal.releaseLock();
+    }
+  }
+
+  /**
+   * Note that trades have made it into the journal, taking a checkpoint (upon
+   * the executor, as the caller may hold the journal lock) should one be due.
+   */
+  private void recorded(final int tradeCount) {
+    if (checkpoint != null && checkpoint.recorded(tradeCount)) {
+      executor().execute(() -> {
+        try {
+          checkpoint();
+        } catch (JournalLockedException | IOException | RuntimeException e) {
+          System.err.println("WARN - FAILED to checkpoint positions of exchange " + exchangeCode);
+          System.err.println(e.getClass() + " - " + e.getMessage());
+          System.err.flush();
+        }
+      });
+    }
+  }
+
+  /**
+   * Obtain the position book, locking the journal shared to replay it should
+   * this be the first time around.
+   * @return position book reflecting every trade in the journal.
+   */
+  private PositionBook loadedPositions() throws IOException, JournalLockedException {
+    final PositionBook result = positionBook;
+    if (result != null) {
+      return result;
+    }
+    journal.lockShared(5000L);
+    try {
+      return loadPositions();
+    } finally {
+      journal.releaseSharedLock();
+    }
+  }
+
+  /**
+   * Obtain the position book, replaying the journal the first time around.
+   * Callers must hold the journal lock, at least shared. Thereafter
+   * the book is kept up to date by applying each trade as it is appended,
+   * which relies upon this being the only instance recording trades for our
+   * exchange.
+   * @return position book reflecting every trade in the journal.
+   */
+  private PositionBook loadPositions() throws IOException {
+    PositionBook result = positionBook;
+    if (result == null) {
+      synchronized (this) {
+        // nobody appends until they have the book, so the replay sees every trade.
+        if ((result = positionBook) == null) {
+          if (checkpoint != null) {
+            result = checkpoint.recover(exchangeCode, journal);
+          } else {
+            try {
+              result = journal.positions(exchangeCode);
+            } catch (FileNotFoundException firstTimeAroundException) {
+              // this can happen if there isn't yet a journal file in existence..
+              result = new PositionBook(journal.instruments());
+            }
+          }
+          positionBook = result;
+        }
+      }
+    }
     return result;
   }
 }
@@ -0,0 +1,101 @@
+package au.com.livewire;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+
+/**
+ * Command line tool which migrates a journal from the csv format into the
+ * binary format, or back again. Nobody should be trading against either
+ * journal whilst it runs.
+ */
+public class JournalConverter {
+  final static String CSV_TO_BINARY = "csv-to-binary";
+  final static String BINARY_TO_CSV = "binary-to-csv";
+
+  public static void main(String...args) {
+    if (args.length != 3 || !(CSV_TO_BINARY.equals(args[0]) || BINARY_TO_CSV.equals(args[0]))) {
+      System.err.println(
+          String.format("Usage: java %s %s|%s <source journal> <target journal>",
+              JournalConverter.class.getName(), CSV_TO_BINARY, BINARY_TO_CSV)
+      );
+      System.err.flush();
+      System.exit(1);
+    }
+
+    final File sourceFile = new File(args[1]);
+    final File targetFile = new File(args[2]);
+    final TradingJournal source;
+    final TradingJournal target;
+    if (CSV_TO_BINARY.equals(args[0])) {
+      source = new SimpleFileBasedTradingJournal(sourceFile);
+      target = new BinaryFileTradingJournal(targetFile, lockFileFor(targetFile));
+    } else {
+      // read the companies by the ids the journal was written with, whatever is configured now.
+      final InstrumentRegistry instruments;
+      try {
+        instruments = new InstrumentRegistry(BinaryFileTradingJournal.listedInstruments(sourceFile));
+      } catch (IOException | IllegalArgumentException e) {
+        System.err.println("ERROR - FAILED to read the companies of journal \"" + sourceFile + "\"");
+        System.err.println(e.getClass().getName() + " - " + e.getMessage());
+        System.err.flush();
+        System.exit(1);
+        return;
+      }
+      source = new BinaryFileTradingJournal(sourceFile, lockFileFor(sourceFile), LockMode.FILE, instruments);
+      target = new AppendOnlyFileTradingJournal(targetFile, lockFileFor(targetFile), SyncPolicy.NEVER, 0);
+    }
+
+    int exitStatus = 0;
+    try {
+      int count = convert(source, target);
+      System.out.println(String.format("Converted %d trades from \"%s\" into \"%s\"", count, sourceFile, targetFile));
+      System.out.flush();
+    } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+      System.err.println("ERROR - FAILED to convert journal \"" + sourceFile + "\"");
+      System.err.println(e.getClass().getName() + " - " + e.getMessage());
+      System.err.flush();
+      exitStatus = 1;
+    } finally {
+      try {
+        ((Closeable) target).close();
+      } catch (IOException ignoreMe) {
+        // nothing more we can do.
+      }
+    }
+    System.exit(exitStatus);
+  }
+
+  /**
+   * Copy each and every trade, in order, from one journal to another.
+   * @param source journal to read from.
+   * @param target journal to append to, which must not yet hold any trades.
+   * @return how many trades were copied.
+   */
+  public static int convert(
+      final TradingJournal source,
+      final TradingJournal target
+  ) throws IOException, IllegalStateException {
+    final int[] count = new int[1];
+    try (Stream<Trade> existing = target.stream(null, null)) {
+      if (existing.findAny().isPresent()) {
+        throw new IllegalStateException("Refusing to convert into a journal which already holds trades");
+      }
+    }
+    source.forEach(null, null, trade -> {
+      try {
+        target.add(trade);
+        count[0]++;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    return count[0];
+  }
+
+  private static File lockFileFor(final File journalFile) {
+    return new File(journalFile.getPath() + ".lock");
+  }
+}
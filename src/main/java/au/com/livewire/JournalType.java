@@ -0,0 +1,36 @@
+package au.com.livewire;
+
+/**
+ * Identifies which trading journal implementation the application should be wired up with.
+ */
+public enum JournalType {
+  /**
+   * ASCII file journal which opens, appends to and closes the file for every trade.
+   */
+  CSV,
+
+  /**
+   * ASCII file journal which keeps a single channel open for appending trades.
+   */
+  APPEND_ONLY,
+
+  /**
+   * Append-only journal which writes the trades of concurrent callers in batches.
+   */
+  GROUP_COMMIT,
+
+  /**
+   * Journal of fixed size binary records, see {@link BinaryFileTradingJournal}.
+   */
+  BINARY,
+
+  /**
+   * ASCII journal split into segment files, see {@link SegmentedTradingJournal}.
+   */
+  SEGMENTED,
+
+  /**
+   * ASCII journal split into a shard file per exchange, see {@link ShardedTradingJournal}.
+   */
+  SHARDED
+}
@@ -0,0 +1,236 @@
+package au.com.livewire;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Cross process lock represented by the existence of a lock file. The lock
+ * file contains a number, representing the milliseconds since epoch 1970
+ * that the lock expires, after which anybody may take it over.
+ * <p>
+ * Taking over an expired lease, like every other change to the lock file,
+ * is done whilst holding an operating system lock upon a guard file next to
+ * it (lock file name plus ".guard"), so that two processes which both find
+ * the lease expired cannot both remove it and then both create a new one.
+ * The guard is only ever held for the moment it takes to check and write
+ * the lock file.
+ */
+public class LeaseFileLock implements CrossProcessLock {
+  private final static int MAX_LOCK_RETRIES = 5;
+  private final static long MAX_LOCK_WAIT_MS = 10000L;
+
+  // how long to wait before retrying to acquire lock
+  private final static long LOCK_WAIT_DURATION_MS = 500L;
+
+  /**
+   * Lock file which is created to prevent others from accessing the journal.
+   */
+  private final File lockFile;
+
+  /**
+   * Locked by the operating system whilst the lock file is checked and changed.
+   */
+  private final File guardFile;
+
+  /**
+   * When the lease we last wrote expires, should we hold the lock.
+   */
+  private long expiry;
+
+  public LeaseFileLock(final File lockFile) {
+    this.lockFile = lockFile;
+    this.guardFile = new File(lockFile.getPath() + ".guard");
+  }
+
+  @Override
+  public synchronized void acquire(
+      final long leaseMs
+  ) throws JournalLockedException, IOException {
+    long then = System.currentTimeMillis();
+    long retryLockCount = 0;
+    boolean created = false;
+    long elapsed;
+
+    // be patient trying to acquire a lock on the journal.
+    do {
+      if (takeLease(leaseMs)) {
+        created = true;
+      } else {
+        try {
+          Thread.sleep(LOCK_WAIT_DURATION_MS);
+        } catch (InterruptedException e) {
+          e.printStackTrace();
+        }
+      }
+      elapsed = System.currentTimeMillis() - then;
+    } while(++retryLockCount < MAX_LOCK_RETRIES && elapsed < MAX_LOCK_WAIT_MS && !created);
+
+    if (!created) {
+      throw new JournalLockedException("Unable to acquire lock");
+    }
+  }
+
+  /**
+   * Write a lease of our own, should there be no lock file, or should it
+   * hold an expired (or unreadable) lease, all whilst holding the guard.
+   * @return whether the lease is now ours.
+   */
+  private boolean takeLease(final long leaseMs) throws IOException {
+    return guarded(() -> {
+      if (getLockExpiry() != null) {
+        return false;
+      }
+      // nobody else may take the lease over whilst we hold the guard.
+      Files.deleteIfExists(lockFile.toPath());
+      writeExpiry(leaseMs);
+      return true;
+    });
+  }
+
+  /**
+   * Something done to the lock file whilst holding the guard.
+   */
+  private interface GuardedAction<T> {
+    T run() throws IOException;
+  }
+
+  private <T> T guarded(final GuardedAction<T> action) throws IOException {
+    // the guard is locked for the whole process, so threads of ours (via other instances) take turns first.
+    synchronized (LeaseFileLock.class) {
+      try (FileChannel guard = FileChannel.open(
+          guardFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+           FileLock ignored = guard.lock()) {
+        return action.run();
+      }
+    }
+  }
+
+  /**
+   * Only re-writes the lock file if the lease we hold is due to expire too soon.
+   */
+  @Override
+  public synchronized void renew(
+      final long leaseMs
+  ) throws JournalLockedException, IOException {
+    final long now = System.currentTimeMillis();
+    if (expiry < now + LOCK_WAIT_DURATION_MS) {
+      // our lease has lapsed (or nearly so), somebody else may have taken the lock.
+      acquire(leaseMs);
+    } else if (expiry < now + leaseMs) {
+      guarded(() -> {
+        writeExpiry(leaseMs);
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Only removes the lock file if it still holds the lease we wrote, so
+   * as not to remove a lock somebody else took after ours lapsed.
+   */
+  @Override
+  public synchronized void release() {
+    try {
+      guarded(() -> {
+        final Long lockExpiry = getLockExpiry();
+        if (lockExpiry != null && lockExpiry == expiry) {
+          lockFile.delete();
+        }
+        return null;
+      });
+    } catch (IOException e) {
+      System.err.println("WARN - failed to release lease upon \"" + lockFile + "\": " + e.getMessage());
+      System.err.flush();
+    } finally {
+      expiry = 0L;
+    }
+  }
+
+  @Override
+  public synchronized boolean isLocked() {
+    return getLockExpiry() != null;
+  }
+
+  /**
+   * Returns null if there is no active lock present or a non-null value
+   * is there is an active lock present.
+   * @return timestamp when the current lock expires, or null if there is
+   *     no lock file present.
+   */
+  public synchronized Long getLockExpiry() {
+    final Long result;
+    result = doGetLockExpiry(MAX_LOCK_RETRIES);
+    return result;
+  }
+
+  private void writeExpiry(final long leaseMs) throws IOException {
+    final long proposedExpiry = System.currentTimeMillis() + leaseMs;
+    String expiryText = String.format("%d", proposedExpiry);
+    FileWriter lockWriter;
+    // re-write the lock file from the start.
+    lockWriter = new FileWriter(lockFile, false);
+    lockWriter.append(expiryText).append("\n");
+    lockWriter.close();
+    expiry = proposedExpiry;
+  }
+
+  /**
+   * Re-entrant method which allows us to retry getting a lock file if
+   * it disappears between checking for its existence and trying to
+   * read its contents.
+   * @param retryCount how many times to re-enter this method if the lock file goes missing.
+   * @return timestamp of a non-expired lock, or null if there is no lock, it has expired or is unreadable.
+   */
+  private Long doGetLockExpiry(final int retryCount) {
+    long now = System.currentTimeMillis();
+    Long result = null;
+
+    // if no lock file exists ... there is no lock.
+    if (lockFile.exists()) {
+      // has it expired?
+      FileReader lockFileReader;
+      try {
+        lockFileReader = new FileReader(lockFile);
+        BufferedReader br = new BufferedReader(lockFileReader);
+        String text;
+        try {
+          if (((text = br.readLine()) != null) && StringUtils.isNotBlank(text) && (StringUtils.isNumeric(text))) {
+            long lockExpiry = Long.parseLong(text.trim());
+            if (lockExpiry >= now) {
+              result = lockExpiry;
+              return result;
+            }
+            // lock has expired ... left for the next to acquire it to take over.
+          }
+        } catch (IOException e) {
+          // dealing with a corrupt lock file :-( left for the next to acquire it to take over.
+          System.err.println("WARN - detected corrupt lock file");
+          System.err.flush();
+          return null;
+        } finally {
+          try {
+            br.close();
+            lockFileReader.close();
+          } catch (IOException ignoreMe) {
+            // YOLO
+          }
+        }
+      } catch (FileNotFoundException e) {
+        // somebody yanked it from underneath us .... if our retryCount hasn't expired .. try again
+        if (retryCount > 0) {
+          return doGetLockExpiry(retryCount - 1);
+        }
+      }
+    }
+    return result;
+  }
+}
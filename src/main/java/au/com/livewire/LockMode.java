@@ -0,0 +1,16 @@
+package au.com.livewire;
+
+/**
+ * How journals are protected from other processes.
+ */
+public enum LockMode {
+  /**
+   * Lock file holding a lease which others wait out, polling every half second.
+   */
+  FILE,
+
+  /**
+   * Operating system lock upon the lock file, handed over as soon as it is released.
+   */
+  CHANNEL
+}
@@ -0,0 +1,186 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Walks the bytes of a csv journal via a memory mapping, picking out the
+ * fields of each trade (with a {@link TradeCsvParser}) without creating a
+ * string (nor a trade) per line, and feeds them to a {@link TradeRecordHandler}.
+ * The journal is interpreted, and errors reported, exactly as when it is listed.
+ * Each scanner holds scratch space, so should only be used by one thread at a time.
+ */
+public class MappedJournalScanner {
+  /**
+   * How much of the journal to map at a time. No single line may be longer than this.
+   */
+  final static int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final int windowSize;
+
+  /**
+   * Whether to leave reporting lines which do not represent a trade to the caller.
+   */
+  private final boolean quiet;
+
+  /**
+   * Picks apart each line.
+   */
+  private final TradeCsvParser parser;
+
+  /**
+   * Re-used to hold the fields of each line.
+   */
+  private final MutableTrade holder = new MutableTrade();
+
+  public MappedJournalScanner() {
+    this(InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param instruments the companies which may be traded.
+   */
+  public MappedJournalScanner(final InstrumentRegistry instruments) {
+    this(DEFAULT_WINDOW_SIZE, false, instruments);
+  }
+
+  MappedJournalScanner(final int windowSize) {
+    this(windowSize, false, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param quiet true to throw, without also printing, should a line not represent a trade.
+   * @param instruments the companies which may be traded.
+   */
+  MappedJournalScanner(final int windowSize, final boolean quiet, final InstrumentRegistry instruments) {
+    this.windowSize = windowSize;
+    this.quiet = quiet;
+    this.parser = new TradeCsvParser(instruments);
+  }
+
+  /**
+   * Feed each trade within a csv journal, in order, to a handler.
+   * @param file the journal to scan, which must exist.
+   * @param handler receives the fields of each trade.
+   * @return how many lines were scanned.
+   * @throws IllegalArgumentException if a line does not represent a trade.
+   */
+  public int scan(
+      final File file,
+      final TradeRecordHandler handler
+  ) throws IOException, IllegalArgumentException {
+    return scan(file, 0L, handler);
+  }
+
+  /**
+   * Feed each trade within a csv journal, from a given line onwards, to a handler.
+   * @param file the journal to scan, which must exist.
+   * @param fromPosition byte offset of the first line to scan, which must
+   *     follow a newline (or be the start of the file).
+   * @param handler receives the fields of each trade.
+   * @return how many lines were scanned (line numbers in errors count from the first of them).
+   * @throws IllegalArgumentException if a line does not represent a trade,
+   *     or the position is not the start of a line within the journal.
+   */
+  public int scan(
+      final File file,
+      final long fromPosition,
+      final TradeRecordHandler handler
+  ) throws IOException, IllegalArgumentException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (fromPosition < 0 || fromPosition > size || (fromPosition > 0 && !followsNewline(channel, fromPosition))) {
+        throw new IllegalArgumentException(
+            String.format("Position %d is not the start of a line within journal \"%s\"", fromPosition, file)
+        );
+      }
+      return scan(file, channel, fromPosition, size, 0, handler);
+    }
+  }
+
+  /**
+   * Feed each trade within a range of a csv journal, in order, to a handler.
+   * Used to scan several ranges of the one journal at once, each with a scanner of its own.
+   * @param channel the journal, open for reading.
+   * @param fromPosition byte offset of the first line to scan, which must follow a newline.
+   * @param toPosition byte offset just beyond the last line to scan, which
+   *     must follow a newline (or be the end of the journal).
+   * @param linesBefore how many lines precede the range, so errors report the line within the journal.
+   * @param handler receives the fields of each trade.
+   * @return how many lines were scanned.
+   * @throws IllegalArgumentException if a line does not represent a trade.
+   */
+  int scan(
+      final File file,
+      final FileChannel channel,
+      final long fromPosition,
+      final long toPosition,
+      final int linesBefore,
+      final TradeRecordHandler handler
+  ) throws IOException, IllegalArgumentException {
+    int lineCount = 0;
+    long position = fromPosition;
+    while (position < toPosition) {
+      final int length = (int) Math.min(windowSize, toPosition - position);
+      final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      final boolean lastWindow = position + length == toPosition;
+      int lineStart = 0;
+      for (int i = 0; i < length; i++) {
+        if (window.get(i) == '\n') {
+          scanLine(window, lineStart, i, linesBefore + ++lineCount, handler);
+          lineStart = i + 1;
+        }
+      }
+      if (lineStart < length && lastWindow) {
+        // final line without a trailing newline.
+        scanLine(window, lineStart, length, linesBefore + ++lineCount, handler);
+        lineStart = length;
+      } else if (lineStart == 0) {
+        throw new IOException(
+            String.format("Line %d of journal \"%s\" is longer than %d bytes",
+                linesBefore + lineCount + 1, file, windowSize)
+        );
+      }
+      // carry on from the start of any line left incomplete by this window.
+      position += lineStart;
+    }
+    return lineCount;
+  }
+
+  private static boolean followsNewline(
+      final FileChannel channel,
+      final long position
+  ) throws IOException {
+    final ByteBuffer previous = ByteBuffer.allocate(1);
+    return channel.read(previous, position - 1) == 1 && previous.get(0) == '\n';
+  }
+
+  /**
+   * Pick apart the line between two offsets of the window, less any
+   * carriage return, as a reader of lines would.
+   */
+  private void scanLine(
+      final MappedByteBuffer window,
+      final int start,
+      final int end,
+      final int lineNumber,
+      final TradeRecordHandler handler
+  ) throws IllegalArgumentException {
+    final int lineEnd = end > start && window.get(end - 1) == '\r' ? end - 1 : end;
+    try {
+      parser.parse(window, start, lineEnd, holder);
+    } catch (IllegalArgumentException e) {
+      final String msg = String.format("%s - at line %d", e.getMessage(), lineNumber);
+      if (!quiet) {
+        System.err.println(msg);
+        System.err.flush();
+      }
+      throw new IllegalArgumentException(msg, e);
+    }
+    holder.sendTo(handler);
+  }
+}
@@ -0,0 +1,54 @@
+package au.com.livewire;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.PrivateModule;
+import com.google.inject.multibindings.MapBinder;
+import com.google.inject.name.Names;
+import java.util.Properties;
+
+/**
+ * Wires up every exchange within the one injector, so that a single process
+ * may serve them all at once. Each exchange gets an {@link ExchangeModule}
+ * of its own, installed privately, so that its journal, position book and
+ * any writer or sequencer threads belong to it alone; only the exchanges
+ * themselves (and an assignment driving each of them) are exposed, keyed by
+ * exchange code:
+ * <pre>
+ *   Map&lt;ExchangeCode, StockExchange&gt;
+ *   Map&lt;ExchangeCode, Assignment&gt;
+ * </pre>
+ * The exchanges must be configured with journals (and lock files) of their
+ * own, as the defaults are.
+ */
+public class MultiExchangeModule extends AbstractModule {
+  Properties properties;
+
+  MultiExchangeModule(final Properties properties) {
+    this.properties = properties;
+  }
+
+  @Override
+  protected void configure() {
+    final MapBinder<ExchangeCode, StockExchange> exchanges;
+    final MapBinder<ExchangeCode, Assignment> assignments;
+    exchanges = MapBinder.newMapBinder(binder(), ExchangeCode.class, StockExchange.class);
+    assignments = MapBinder.newMapBinder(binder(), ExchangeCode.class, Assignment.class);
+    for (ExchangeCode exchangeCode : ExchangeCode.values()) {
+      final Key<StockExchange> exchangeKey = Key.get(StockExchange.class, Names.named(exchangeCode.name()));
+      final Key<Assignment> assignmentKey = Key.get(Assignment.class, Names.named(exchangeCode.name()));
+      install(new PrivateModule() {
+        @Override
+        protected void configure() {
+          install(new ExchangeModule(exchangeCode, properties));
+          bind(exchangeKey).to(StockExchange.class);
+          bind(assignmentKey).to(Assignment.class);
+          expose(exchangeKey);
+          expose(assignmentKey);
+        }
+      });
+      exchanges.addBinding(exchangeCode).to(exchangeKey);
+      assignments.addBinding(exchangeCode).to(assignmentKey);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package au.com.livewire;
+
+import java.util.Date;
+
+/**
+ * Re-usable holder for the fields of a trade, which may be filled in over
+ * and over again (e.g.; whilst parsing a journal) without creating a new
+ * {@link Trade} each time. Quantity and brokerage are held as primitives.
+ */
+public class MutableTrade {
+  private ExchangeCode exchangeCode;
+  private Trade.TransactionType transactionType;
+  private long when;
+  private CompanyCode companyCode;
+  private int quantity;
+  private int brokerage;
+
+  public MutableTrade set(
+      final ExchangeCode exchangeCode,
+      final Trade.TransactionType transactionType,
+      final long when,
+      final CompanyCode companyCode,
+      final int quantity,
+      final int brokerage
+  ) {
+    this.exchangeCode = exchangeCode;
+    this.transactionType = transactionType;
+    this.when = when;
+    this.companyCode = companyCode;
+    this.quantity = quantity;
+    this.brokerage = brokerage;
+    return this;
+  }
+
+  public ExchangeCode getExchangeCode() {
+    return this.exchangeCode;
+  }
+
+  public Trade.TransactionType getTransactionType() {
+    return this.transactionType;
+  }
+
+  /**
+   * @return milliseconds since epoch that the trade took place.
+   */
+  public long getWhen() {
+    return this.when;
+  }
+
+  public CompanyCode getCompanyCode() {
+    return this.companyCode;
+  }
+
+  public int getQuantity() {
+    return this.quantity;
+  }
+
+  public int getBrokerage() {
+    return this.brokerage;
+  }
+
+  /**
+   * Pass the fields currently held on to a handler.
+   * @param handler receives the fields of the trade.
+   */
+  public void sendTo(final TradeRecordHandler handler) {
+    handler.onTrade(exchangeCode, transactionType, when, companyCode, quantity, brokerage);
+  }
+
+  /**
+   * @return an (immutable by convention) trade holding the fields currently held.
+   */
+  public Trade toTrade() {
+    return new Trade(exchangeCode, transactionType, new Date(when), companyCode, quantity, brokerage);
+  }
+}
@@ -0,0 +1,39 @@
+package au.com.livewire;
+
+import lombok.Data;
+
+/**
+ * A request to buy or sell units of a company, as submitted to an exchange
+ * in a batch (see {@link StockExchange#submitBatch(java.util.List)}).
+ */
+@Data
+public class Order {
+  /**
+   * Whether buying from, or selling to, the exchange.
+   */
+  private final Trade.TransactionType transactionType;
+
+  /**
+   * The company to be traded, as given by whoever placed the order.
+   */
+  private final String code;
+
+  /**
+   * How many units are to be traded.
+   */
+  private final Integer units;
+
+  public static Order buy(
+      final String code,
+      final Integer units
+  ) {
+    return new Order(Trade.TransactionType.BUY, code, units);
+  }
+
+  public static Order sell(
+      final String code,
+      final Integer units
+  ) {
+    return new Order(Trade.TransactionType.SELL, code, units);
+  }
+}
@@ -0,0 +1,76 @@
+package au.com.livewire;
+
+import lombok.Data;
+
+/**
+ * What became of an order submitted as part of a batch.
+ */
+@Data
+public class OrderResult {
+  public enum Outcome {
+    /**
+     * The trade has been recorded in the journal.
+     */
+    ACCEPTED,
+
+    /**
+     * Not enough units were available to be bought.
+     */
+    INSUFFICIENT_UNITS,
+
+    /**
+     * The company code was not recognised.
+     */
+    INVALID_CODE,
+
+    /**
+     * The number of units was missing or not positive.
+     */
+    INVALID_UNITS,
+
+    /**
+     * The order was acceptable, but could not be recorded.
+     */
+    FAILED
+  }
+
+  private final Order order;
+
+  private final Outcome outcome;
+
+  /**
+   * Why the order was not accepted, null if it was.
+   */
+  private final String message;
+
+  public boolean isAccepted() {
+    return outcome == Outcome.ACCEPTED;
+  }
+
+  public static OrderResult accepted(final Order order) {
+    return new OrderResult(order, Outcome.ACCEPTED, null);
+  }
+
+  /**
+   * Describe an order which was refused (or failed) with an exception.
+   * @param order the order concerned.
+   * @param cause what the exchange would have thrown for the order.
+   * @return result whose outcome reflects the kind of exception.
+   */
+  public static OrderResult rejected(
+      final Order order,
+      final Throwable cause
+  ) {
+    final Outcome outcome;
+    if (cause instanceof InsufficentUnitsException) {
+      outcome = Outcome.INSUFFICIENT_UNITS;
+    } else if (cause instanceof InvalidCodeException) {
+      outcome = Outcome.INVALID_CODE;
+    } else if (cause instanceof IllegalArgumentException) {
+      outcome = Outcome.INVALID_UNITS;
+    } else {
+      outcome = Outcome.FAILED;
+    }
+    return new OrderResult(order, outcome, cause.getMessage());
+  }
+}
@@ -0,0 +1,368 @@
+package au.com.livewire;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Running tally of how many units of each company are available upon each
+ * exchange, along with the brokerage charged by each exchange. It is built
+ * once from the journal and then kept up to date as each trade is appended,
+ * so that nobody needs to replay the entire journal just to find out whether
+ * a purchase can be honoured or what the trading costs came to.
+ * <p>
+ * Each tally is an atomic counter, so that units may be reserved for a
+ * purchase (see {@link #reserve}) without any lock being taken. The tallies
+ * are held in primitive arrays indexed by exchange and company id, so
+ * neither trading nor querying a single tally (see {@link #getAvailable},
+ * {@link #forEachVolume}) allocates, with maps keyed by company name only
+ * built for those who ask for them (see {@link #getVolumes}).
+ * <p>
+ * As there may be thousands of companies (see {@link InstrumentRegistry}),
+ * of which only a few are traded upon an exchange, the units are kept in
+ * pages of 64 companies, each allocated the first time one of its companies
+ * is traded upon an exchange.
+ */
+public class PositionBook {
+  private final static int EXCHANGE_COUNT = ExchangeCode.values().length;
+  private final static int PAGE_SIZE = Long.SIZE;
+  private final static int PAGES_PER_EXCHANGE = InstrumentRegistry.MAX_INSTRUMENTS / PAGE_SIZE;
+
+  /**
+   * Receives the units available for each company traded upon an exchange.
+   */
+  @FunctionalInterface
+  public interface VolumeVisitor {
+    void visit(CompanyCode companyCode, long units);
+  }
+
+  /**
+   * Units available to 64 companies upon an exchange.
+   */
+  private static final class Page {
+    final AtomicLongArray units = new AtomicLongArray(PAGE_SIZE);
+
+    /**
+     * A bit for each company traded upon the exchange, as only those
+     * companies have volumes to report.
+     */
+    final AtomicLong traded = new AtomicLong();
+  }
+
+  /**
+   * Pages of units, indexed by exchange ordinal and then company id / 64, null until needed.
+   */
+  private final AtomicReferenceArray<Page> pages;
+
+  /**
+   * Total brokerage (in cents) charged by each exchange, indexed by ordinal.
+   */
+  private final AtomicLongArray brokerage;
+
+  /**
+   * The companies which may be traded, by id.
+   */
+  private final InstrumentRegistry instruments;
+
+  public PositionBook() {
+    this(InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param instruments the companies which may be traded.
+   */
+  public PositionBook(final InstrumentRegistry instruments) {
+    this.instruments = instruments;
+    this.pages = new AtomicReferenceArray<>(EXCHANGE_COUNT * PAGES_PER_EXCHANGE);
+    this.brokerage = new AtomicLongArray(EXCHANGE_COUNT);
+  }
+
+  /**
+   * Build up a position book by replaying the supplied trades in order.
+   * @param tradeList trades as they appear in the journal, may be null.
+   * @return position book reflecting each and every one of the trades.
+   * @throws IllegalStateException if the trades would cause a negative quantity of stock.
+   */
+  public static PositionBook fromTrades(
+      final List<Trade> tradeList
+  ) throws IllegalStateException {
+    final PositionBook result;
+    result = new PositionBook();
+    if (tradeList != null) {
+      int lineCount = 0;
+      for (Trade trade : tradeList) {
+        lineCount++;
+        if (result.apply(trade) < 0) {
+          throw new IllegalStateException(
+              String.format("Corrupt journal! At line %d, negative quantity of stock \"%s\"",
+                  lineCount, trade.getCompanyCode())
+          );
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Build up a position book by replaying a journal.
+   * @param journal the journal of interest.
+   * @return position book reflecting each and every trade within the journal.
+   * @throws IllegalStateException if the trades would cause a negative quantity of stock.
+   */
+  public static PositionBook fromJournal(
+      final TradingJournal journal
+  ) throws IOException, IllegalStateException {
+    final PositionBook result;
+    final int[] lineCount = new int[1];
+    result = new PositionBook(journal.instruments());
+    journal.replay((exchangeCode, transactionType, when, companyCode, quantity, brokerage) -> {
+      lineCount[0]++;
+      if (result.apply(exchangeCode, transactionType, companyCode, quantity, brokerage) < 0) {
+        throw new IllegalStateException(
+            String.format("Corrupt journal! At line %d, negative quantity of stock \"%s\"",
+                lineCount[0], companyCode)
+        );
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Bring the book up to date with the trades upon an exchange which were
+   * added to a journal beyond some position, such as that of a checkpoint.
+   * Trades upon other exchanges are skipped, since the book is only being
+   * kept for the one.
+   * @param journal the journal of interest.
+   * @param exchangeCode the exchange the book is kept for.
+   * @param fromPosition position within the journal to resume from.
+   * @throws IllegalStateException if the trades would cause a negative quantity of stock.
+   */
+  public void catchUp(
+      final TradingJournal journal,
+      final ExchangeCode exchangeCode,
+      final long fromPosition
+  ) throws IOException, IllegalStateException {
+    final int[] lineCount = new int[1];
+    journal.replay(fromPosition, (tradeExchangeCode, transactionType, when, companyCode, quantity, brokerage) -> {
+      lineCount[0]++;
+      if (tradeExchangeCode == exchangeCode
+          && apply(exchangeCode, transactionType, companyCode, quantity, brokerage) < 0) {
+        throw new IllegalStateException(
+            String.format("Corrupt journal! At trade %d beyond position %d, negative quantity of stock \"%s\"",
+                lineCount[0], fromPosition, companyCode)
+        );
+      }
+    });
+  }
+
+  /**
+   * Adjust the available units to reflect a trade which has made it into the journal.
+   * @param trade the trade just recorded.
+   * @return number of units available for the trade's company after the adjustment.
+   */
+  public long apply(final Trade trade) {
+    return apply(
+        trade.getExchangeCode(),
+        trade.getTransactionType(),
+        trade.getCompanyCode(),
+        trade.getQuantity(),
+        trade.getBrokerage() == null ? 0 : trade.getBrokerage()
+    );
+  }
+
+  /**
+   * Adjust the available units to reflect a trade which has made it into the journal.
+   * @return number of units available for the company after the adjustment.
+   */
+  public long apply(
+      final ExchangeCode exchangeCode,
+      final Trade.TransactionType transactionType,
+      final CompanyCode companyCode,
+      final int quantity,
+      final int brokerage
+  ) {
+    final long result;
+    result = tradedPage(exchangeCode, companyCode).units.addAndGet(
+        companyCode.ordinal() % PAGE_SIZE,
+        Trade.TransactionType.SELL == transactionType ? quantity : -quantity
+    );
+    chargeBrokerage(exchangeCode, brokerage);
+    return result;
+  }
+
+  /**
+   * Set aside units of a company for a purchase which is yet to make it into
+   * the journal, providing that doing so would not leave a negative quantity.
+   * Should the purchase not make it into the journal, the units must be handed
+   * back via {@link #unreserve}, otherwise its brokerage charged via
+   * {@link #chargeBrokerage}.
+   * @param exchangeCode the exchange upon which the purchase is made.
+   * @param companyCode the company being purchased.
+   * @param quantity how many units are to be purchased.
+   * @return units available beforehand, which is less than the quantity if none were reserved.
+   */
+  public long reserve(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode,
+      final int quantity
+  ) {
+    // the company is only noted as traded once a trade is applied, as the purchase may not go ahead.
+    final Page page = pages.get(pageIndex(exchangeCode, companyCode));
+    final int index = companyCode.ordinal() % PAGE_SIZE;
+    long available;
+    if (page == null) {
+      // never traded, so nothing to reserve.
+      return 0L;
+    }
+    do {
+      available = page.units.get(index);
+      if (available < quantity) {
+        break;
+      }
+    } while (!page.units.compareAndSet(index, available, available - quantity));
+    return available;
+  }
+
+  /**
+   * Hand back units reserved for a purchase which did not go ahead.
+   */
+  public void unreserve(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode,
+      final int quantity
+  ) {
+    page(pageIndex(exchangeCode, companyCode)).units.addAndGet(companyCode.ordinal() % PAGE_SIZE, quantity);
+  }
+
+  /**
+   * Add to the brokerage charged by an exchange.
+   * @param brokerage charge in cents.
+   */
+  public void chargeBrokerage(
+      final ExchangeCode exchangeCode,
+      final long brokerage
+  ) {
+    this.brokerage.addAndGet(exchangeCode.ordinal(), brokerage);
+  }
+
+  /**
+   * Add the tallies of another book, built from trades which this one has
+   * not seen (such as another shard of the journal), to this one.
+   * @param other book whose tallies are added, left as it was.
+   */
+  public void merge(final PositionBook other) {
+    for (int i = 0; i < pages.length(); i++) {
+      final Page otherPage = other.pages.get(i);
+      if (otherPage != null) {
+        final Page page = page(i);
+        final long traded = otherPage.traded.get();
+        page.traded.getAndUpdate(mask -> mask | traded);
+        for (int j = 0; j < PAGE_SIZE; j++) {
+          page.units.addAndGet(j, otherPage.units.get(j));
+        }
+      }
+    }
+    for (int i = 0; i < brokerage.length(); i++) {
+      brokerage.addAndGet(i, other.brokerage.get(i));
+    }
+  }
+
+  /**
+   * How many units of a company are available to be bought upon an exchange?
+   * @param exchangeCode the exchange of interest.
+   * @param companyCode the company of interest.
+   * @return units available, zero if no trades have been seen.
+   */
+  public long getAvailable(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) {
+    final Page page = pages.get(pageIndex(exchangeCode, companyCode));
+    return page == null ? 0L : page.units.get(companyCode.ordinal() % PAGE_SIZE);
+  }
+
+  /**
+   * How much brokerage has an exchange charged across all of its trades?
+   * @param exchangeCode the exchange of interest.
+   * @return total brokerage in cents, zero if no trades have been seen.
+   */
+  public long getBrokerageCents(final ExchangeCode exchangeCode) {
+    return brokerage.get(exchangeCode.ordinal());
+  }
+
+  /**
+   * Report aggregate volume available for each company traded upon an exchange.
+   * @param exchangeCode the exchange of interest.
+   * @return map, keyed by company code, which belongs to the caller.
+   * @throws ArithmeticException should a company have more units available than an int can hold.
+   */
+  public Map<String, Integer> getVolumes(final ExchangeCode exchangeCode) {
+    final Map<String, Integer> result;
+    result = new HashMap<>();
+    forEachVolume(exchangeCode, (companyCode, available) -> result.put(companyCode.name(), Math.toIntExact(available)));
+    return result;
+  }
+
+  /**
+   * Pass the units available for each company traded upon an exchange to a
+   * visitor, in order of company id, without building a map.
+   * @param exchangeCode the exchange of interest.
+   * @param visitor receives each company traded, and its units.
+   */
+  public void forEachVolume(
+      final ExchangeCode exchangeCode,
+      final VolumeVisitor visitor
+  ) {
+    final int offset = exchangeCode.ordinal() * PAGES_PER_EXCHANGE;
+    final int pageCount = (instruments.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+    for (int i = 0; i < pageCount; i++) {
+      final Page page = pages.get(offset + i);
+      if (page != null) {
+        long traded = page.traded.get();
+        while (traded != 0L) {
+          final int slot = Long.numberOfTrailingZeros(traded);
+          visitor.visit(instruments.get(i * PAGE_SIZE + slot), page.units.get(slot));
+          traded &= traded - 1L;
+        }
+      }
+    }
+  }
+
+  private static int pageIndex(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) {
+    return exchangeCode.ordinal() * PAGES_PER_EXCHANGE + companyCode.ordinal() / PAGE_SIZE;
+  }
+
+  /**
+   * @return the page holding a company's units upon an exchange, noting that it has been traded.
+   */
+  private Page tradedPage(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) {
+    final Page result = page(pageIndex(exchangeCode, companyCode));
+    final long bit = 1L << (companyCode.ordinal() % PAGE_SIZE);
+    if ((result.traded.get() & bit) == 0L) {
+      result.traded.getAndUpdate(mask -> mask | bit);
+    }
+    return result;
+  }
+
+  /**
+   * @return the page at an index, allocating it should nobody have yet.
+   */
+  private Page page(final int index) {
+    final Page page = pages.get(index);
+    if (page != null) {
+      return page;
+    }
+    final Page candidate = new Page();
+    return pages.compareAndSet(index, null, candidate) ? candidate : pages.get(index);
+  }
+}
@@ -0,0 +1,208 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Periodically saves an exchange's positions and brokerage, along with how
+ * far into the journal they reach, so that recovering them only means
+ * replaying the trades added to the journal since, rather than all of them.
+ * <p>
+ * Each checkpoint also holds the journal's identity upto its position (see
+ * {@link TradingJournal#identity(long)}), so that one taken from a journal
+ * which has since been replaced is never resumed from, even should the
+ * replacement have grown beyond the checkpoint.
+ * <p>
+ * Each checkpoint is written to a temporary file which is then renamed over
+ * the previous one, so a failure part way through leaves the previous one
+ * intact. Since a journal may be shared by several exchanges, each exchange
+ * keeps a checkpoint file of its own.
+ */
+public class PositionCheckpoint {
+  private final static String EXCHANGE_KEY = "exchange";
+  private final static String POSITION_KEY = "journal.position";
+  private final static String IDENTITY_KEY = "journal.identity";
+  private final static String BROKERAGE_KEY = "brokerage";
+  private final static String UNITS_KEY_PREFIX = "units.";
+
+  /**
+   * Holds the latest checkpoint.
+   */
+  private final File file;
+
+  /**
+   * How many trades to let by between checkpoints, zero for checkpoints only upon request.
+   */
+  private final int interval;
+
+  /**
+   * Trades recorded since the last checkpoint fell due.
+   */
+  private final AtomicInteger tradesSinceCheckpoint = new AtomicInteger();
+
+  public PositionCheckpoint(
+      final File file,
+      final int interval
+  ) {
+    if (interval < 0) {
+      throw new IllegalArgumentException(
+          String.format("Checkpoint interval must not be negative, value provided was %d", interval)
+      );
+    }
+    this.file = file;
+    this.interval = interval;
+  }
+
+  /**
+   * Rebuild the positions of an exchange from the latest checkpoint, then
+   * catch up with the trades added to the journal since. Should there be no
+   * usable checkpoint, the entire journal is replayed instead.
+   * @param exchangeCode the exchange of interest.
+   * @param journal the journal the checkpoint was taken from.
+   * @return position book, up to date for the exchange.
+   * @throws IllegalStateException if the trades would cause a negative quantity of stock.
+   */
+  public PositionBook recover(
+      final ExchangeCode exchangeCode,
+      final TradingJournal journal
+  ) throws IOException, IllegalStateException {
+    final Properties checkpoint;
+    final long journalPosition;
+    final long checkpointPosition;
+    PositionBook result;
+    checkpoint = read();
+    journalPosition = journal.position();
+    checkpointPosition = checkpoint == null ? -1L : parseLong(checkpoint.getProperty(POSITION_KEY));
+    if (checkpoint == null || journalPosition < 0) {
+      return replayAll(exchangeCode, journal);
+    }
+    if (!exchangeCode.name().equals(checkpoint.getProperty(EXCHANGE_KEY))
+        || checkpointPosition < 0 || checkpointPosition > journalPosition
+        || !Objects.equals(checkpoint.getProperty(IDENTITY_KEY), journal.identity(checkpointPosition))) {
+      System.err.println("WARN - checkpoint \"" + file + "\" does not match the journal, replaying it all");
+      System.err.flush();
+      return replayAll(exchangeCode, journal);
+    }
+    result = new PositionBook(journal.instruments());
+    try {
+      for (String key : checkpoint.stringPropertyNames()) {
+        if (key.startsWith(UNITS_KEY_PREFIX)) {
+          final CompanyCode companyCode = CompanyCode.valueOf(
+              key.substring(UNITS_KEY_PREFIX.length()), journal.instruments());
+          result.apply(exchangeCode, Trade.TransactionType.SELL, companyCode,
+              Integer.parseInt(checkpoint.getProperty(key)), 0);
+        }
+      }
+      result.chargeBrokerage(exchangeCode, Long.parseLong(checkpoint.getProperty(BROKERAGE_KEY, "0")));
+      result.catchUp(journal, exchangeCode, checkpointPosition);
+    } catch (IllegalArgumentException e) {
+      // a garbled checkpoint, or the journal has been replaced since so the position is meaningless.
+      System.err.println("WARN - checkpoint \"" + file + "\" does not match the journal, replaying it all");
+      System.err.println(e.getClass() + " - " + e.getMessage());
+      System.err.flush();
+      result = replayAll(exchangeCode, journal);
+    }
+    return result;
+  }
+
+  /**
+   * Note that trades have been recorded.
+   * @param tradeCount how many trades.
+   * @return whether a checkpoint has fallen due, which is only reported to one caller.
+   */
+  public boolean recorded(final int tradeCount) {
+    return interval > 0
+        && tradesSinceCheckpoint.addAndGet(tradeCount) >= interval
+        && tradesSinceCheckpoint.getAndSet(0) >= interval;
+  }
+
+  /**
+   * Save the positions of an exchange. The caller must make sure no trades
+   * are added to the journal (nor the positions changed) whilst doing so.
+   * @param exchangeCode the exchange of interest.
+   * @param positions positions reflecting every trade upon the exchange upto the journal position.
+   * @param journal the journal the positions were taken from.
+   * @param journalPosition as reported by {@link TradingJournal#position()}.
+   */
+  public void write(
+      final ExchangeCode exchangeCode,
+      final PositionBook positions,
+      final TradingJournal journal,
+      final long journalPosition
+  ) throws IOException {
+    final Properties checkpoint;
+    final String journalIdentity;
+    final File temporaryFile;
+    checkpoint = new Properties();
+    checkpoint.setProperty(EXCHANGE_KEY, exchangeCode.name());
+    checkpoint.setProperty(POSITION_KEY, Long.toString(journalPosition));
+    if ((journalIdentity = journal.identity(journalPosition)) != null) {
+      checkpoint.setProperty(IDENTITY_KEY, journalIdentity);
+    }
+    checkpoint.setProperty(BROKERAGE_KEY, Long.toString(positions.getBrokerageCents(exchangeCode)));
+    for (Map.Entry<String, Integer> entry : positions.getVolumes(exchangeCode).entrySet()) {
+      checkpoint.setProperty(UNITS_KEY_PREFIX + entry.getKey(), entry.getValue().toString());
+    }
+    temporaryFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(temporaryFile)) {
+      checkpoint.store(out, "positions of " + exchangeCode + " upto journal position " + journalPosition);
+      out.getFD().sync();
+    }
+    try {
+      Files.move(temporaryFile.toPath(), file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * @return the latest checkpoint, or null if there isn't one (or it can't be read).
+   */
+  private Properties read() throws IOException {
+    final Properties result = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      result.load(in);
+    } catch (FileNotFoundException firstTimeAround) {
+      return null;
+    } catch (IllegalArgumentException e) {
+      System.err.println("WARN - unreadable checkpoint \"" + file + "\", replaying the whole journal");
+      System.err.flush();
+      return null;
+    }
+    return result;
+  }
+
+  private static PositionBook replayAll(
+      final ExchangeCode exchangeCode,
+      final TradingJournal journal
+  ) throws IOException {
+    PositionBook result;
+    try {
+      result = journal.positions(exchangeCode);
+    } catch (FileNotFoundException firstTimeAroundException) {
+      // this can happen if there isn't yet a journal file in existence..
+      result = new PositionBook(journal.instruments());
+    }
+    return result;
+  }
+
+  private static long parseLong(final String rawText) {
+    try {
+      return rawText == null ? -1L : Long.parseLong(rawText.trim());
+    } catch (NumberFormatException e) {
+      return -1L;
+    }
+  }
+}
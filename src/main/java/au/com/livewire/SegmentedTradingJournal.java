@@ -0,0 +1,568 @@
+package au.com.livewire;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * ASCII trading journal kept as a directory of segment files, rather than
+ * one ever growing file. Trades are appended to the latest (active) segment
+ * until it reaches a size, or an age, at which point it is sealed (forced to
+ * the device and made read-only) and a new segment begun.
+ * <p>
+ * Sealed segments may be compacted, which replaces them with a summary of
+ * the net units held and brokerage charged upon each exchange, written as a
+ * handful of trades, and moves them into an archive directory. The journal
+ * (as listed or replayed) is then the summary followed by the segments
+ * since, so reading it no longer costs more the longer trading goes on,
+ * whilst the archived and remaining segments still provide a full audit
+ * trail of every trade, see {@link #auditTrail(ExchangeCode, CompanyCode)}.
+ * <p>
+ * The directory looks like:
+ * <pre>
+ *   summary-000041.csv              (segments upto 41, compacted)
+ *   segment-000042-1591234567890.csv (number, then when it was begun)
+ *   segment-000043-1591300000000.csv (active)
+ *   archive/segment-000001-....csv
+ * </pre>
+ * Only one process may append to (and compact) a segmented journal, since
+ * the active segment is only known to that process. Every segment left
+ * behind by an earlier process is taken to be sealed.
+ */
+public class SegmentedTradingJournal extends FileBasedTradingJournal implements Closeable {
+  private final static int INITIAL_BUFFER_SIZE = 256;
+  private final static String ARCHIVE_DIRECTORY = "archive";
+  private final static Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)-(\\d+)\\.csv");
+  private final static Pattern SUMMARY_NAME = Pattern.compile("summary-(\\d+)\\.csv");
+
+  /**
+   * Holds the segments and summary.
+   */
+  private final File directory;
+
+  /**
+   * Begin a new segment once the active one would grow beyond this many bytes.
+   */
+  private final long maxSegmentBytes;
+
+  /**
+   * Begin a new segment once the active one is this old, zero for no limit.
+   */
+  private final long maxSegmentAgeMs;
+
+  /**
+   * The segment being appended to, null until the first append. A journal
+   * never appends to a segment it did not begin, so every other segment is sealed.
+   */
+  private Segment active;
+
+  /**
+   * Channel used to append to the active segment.
+   */
+  private FileChannel channel;
+
+  /**
+   * Re-used for encoding trades prior to writing them.
+   */
+  private ByteBuffer encodeBuffer;
+
+  /**
+   * Held whilst compacting, so that only one compaction at a time writes a summary.
+   */
+  private final Object compacting = new Object();
+
+  /**
+   * A segment file, along with what its name says about it.
+   */
+  private static final class Segment {
+    final File file;
+    final int number;
+    final long begunAt;
+
+    Segment(final File file, final int number, final long begunAt) {
+      this.file = file;
+      this.number = number;
+      this.begunAt = begunAt;
+    }
+  }
+
+  public SegmentedTradingJournal(
+      final File directory,
+      final File journalLockFile,
+      final long maxSegmentBytes,
+      final long maxSegmentAgeMs
+  ) {
+    this(directory, journalLockFile, maxSegmentBytes, maxSegmentAgeMs, LockMode.FILE);
+  }
+
+  /**
+   * @param directory holds the segments, created should it not exist.
+   * @param maxSegmentBytes how large a segment may grow (unless a single batch of trades is larger).
+   * @param maxSegmentAgeMs how long a segment is appended to, zero for no limit.
+   */
+  public SegmentedTradingJournal(
+      final File directory,
+      final File journalLockFile,
+      final long maxSegmentBytes,
+      final long maxSegmentAgeMs,
+      final LockMode lockMode
+  ) {
+    this(directory, journalLockFile, maxSegmentBytes, maxSegmentAgeMs, lockMode, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param directory holds the segments, created should it not exist.
+   * @param maxSegmentBytes how large a segment may grow (unless a single batch of trades is larger).
+   * @param maxSegmentAgeMs how long a segment is appended to, zero for no limit.
+   * @param instruments the companies which trades may be in.
+   */
+  public SegmentedTradingJournal(
+      final File directory,
+      final File journalLockFile,
+      final long maxSegmentBytes,
+      final long maxSegmentAgeMs,
+      final LockMode lockMode,
+      final InstrumentRegistry instruments
+  ) {
+    super(directory, journalLockFile, lockMode, instruments);
+    if (maxSegmentBytes < 1) {
+      throw new IllegalArgumentException(
+          String.format("Segment size must be a positive number of bytes, value provided was %d", maxSegmentBytes)
+      );
+    }
+    if (maxSegmentAgeMs < 0) {
+      throw new IllegalArgumentException(
+          String.format("Segment age must not be negative, value provided was %d", maxSegmentAgeMs)
+      );
+    }
+    this.directory = directory;
+    this.maxSegmentBytes = maxSegmentBytes;
+    this.maxSegmentAgeMs = maxSegmentAgeMs;
+    this.encodeBuffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+  }
+
+  @Override
+  public synchronized void add(Trade trade) throws IOException {
+    encodeBuffer.clear();
+    encodeBuffer = AppendOnlyFileTradingJournal.encode(trade.toCsv(), encodeBuffer);
+    encodeBuffer.flip();
+    write(encodeBuffer);
+  }
+
+  /**
+   * Encodes every trade before writing any, then appends them to the one segment with a single write.
+   * @param trades the trades to be added to the journal.
+   */
+  @Override
+  public synchronized void addAll(final List<Trade> trades) throws IOException {
+    encodeBuffer.clear();
+    for (Trade trade : trades) {
+      encodeBuffer = AppendOnlyFileTradingJournal.encode(trade.toCsv(), encodeBuffer);
+    }
+    encodeBuffer.flip();
+    write(encodeBuffer);
+  }
+
+  /**
+   * The summary (if any) followed by the trades of each segment since.
+   */
+  @Override
+  public synchronized List<Trade> list() throws IOException {
+    final List<Trade> result;
+    result = new ArrayList<>();
+    for (File file : journalFiles()) {
+      result.addAll(new SimpleFileBasedTradingJournal(file, instruments()).list());
+    }
+    return result;
+  }
+
+  /**
+   * Reads the summary and then each segment as the stream is consumed.
+   */
+  @Override
+  public synchronized Stream<Trade> stream(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) throws IOException {
+    return stream(journalFiles(), exchangeCode, companyCode);
+  }
+
+  /**
+   * Replays the summary and then each segment, rather than tallying the directory as a csv file.
+   * @param exchangeCode exchange of interest, although the book reflects every exchange.
+   */
+  @Override
+  public PositionBook positions(
+      final ExchangeCode exchangeCode
+  ) throws IOException, IllegalStateException {
+    return PositionBook.fromJournal(this);
+  }
+
+  /**
+   * Scans the summary and then each segment via a memory mapping.
+   * @param handler receives the fields of each trade.
+   */
+  @Override
+  public synchronized void replay(TradeRecordHandler handler) throws IOException {
+    for (File file : journalFiles()) {
+      new SimpleFileBasedTradingJournal(file, instruments()).replay(handler);
+    }
+  }
+
+  /**
+   * Positions within a segmented journal would also have to say which
+   * segment (or summary) they fall in, so resuming part way through is not
+   * supported and the journal is always replayed in full.
+   * @return -1, regardless.
+   */
+  @Override
+  public long position() {
+    return -1L;
+  }
+
+  @Override
+  public synchronized void replay(
+      final long fromPosition,
+      final TradeRecordHandler handler
+  ) throws IOException, IllegalArgumentException {
+    if (fromPosition != 0L) {
+      throw new IllegalArgumentException(
+          String.format("Unable to replay segmented journal from position %d", fromPosition)
+      );
+    }
+    replay(handler);
+  }
+
+  /**
+   * Every trade ever added to the journal, in order, read from the archived
+   * segments and then those not yet compacted, as the stream is consumed.
+   * The stream holds segments open, so must be closed once finished with.
+   * @param exchangeCode only stream trades upon this exchange, or null for any exchange.
+   * @param companyCode only stream trades for this company, or null for any company.
+   * @return stream of trades, which may throw {@link UncheckedIOException} as it is consumed.
+   */
+  public synchronized Stream<Trade> auditTrail(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) throws IOException {
+    final List<File> files = new ArrayList<>();
+    for (Segment segment : segments(new File(directory, ARCHIVE_DIRECTORY))) {
+      files.add(segment.file);
+    }
+    for (Segment segment : segments(directory)) {
+      files.add(segment.file);
+    }
+    return stream(files, exchangeCode, companyCode);
+  }
+
+  /**
+   * Replace the sealed segments with a summary of the net units held and
+   * brokerage charged upon each exchange, moving them into the archive.
+   * The journal is locked for appending whilst doing so, which keeps other
+   * processes out but lets trading within this one carry on, as the summary
+   * is written beforehand and this journal is only held whilst it takes the
+   * place of the segments.
+   * @return how many segments were compacted.
+   * @throws IllegalStateException if the segments would cause a negative quantity of stock.
+   */
+  public int compact() throws IOException, JournalLockedException {
+    lockForAppend(5000L);
+    try {
+      synchronized (compacting) {
+        final List<Segment> sealed = new ArrayList<>();
+        final File summaryFile;
+        final File temporaryFile;
+        synchronized (this) {
+          final int summarised = summaryNumber();
+          for (Segment segment : segments(directory)) {
+            if (segment.number > summarised && (active == null || segment.number < active.number)) {
+              sealed.add(segment);
+            }
+          }
+        }
+        if (sealed.isEmpty()) {
+          summaryFile = null;
+          temporaryFile = null;
+        } else {
+          summaryFile = new File(directory, String.format("summary-%06d.csv", sealed.get(sealed.size() - 1).number));
+          temporaryFile = new File(directory, summaryFile.getName() + ".tmp");
+          writeSummary(sealed, temporaryFile);
+        }
+        synchronized (this) {
+          if (summaryFile != null) {
+            try {
+              Files.move(temporaryFile.toPath(), summaryFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+              Files.move(temporaryFile.toPath(), summaryFile.toPath());
+            }
+          }
+          archive(summaryNumber());
+        }
+        return sealed.size();
+      }
+    } finally {
+      releaseAppendLock();
+    }
+  }
+
+  /**
+   * Seals the active segment, should there be one.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      seal();
+      active = null;
+    }
+  }
+
+  /**
+   * Append encoded trades to the active segment, beginning a new one should
+   * the active one be too large or too old.
+   */
+  private void write(final ByteBuffer buffer) throws IOException {
+    if (active == null
+        || (channel.size() > 0 && channel.size() + buffer.remaining() > maxSegmentBytes)
+        || (maxSegmentAgeMs > 0 && System.currentTimeMillis() - active.begunAt >= maxSegmentAgeMs)) {
+      roll();
+    }
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Seal the active segment (if any) and begin the next.
+   */
+  private void roll() throws IOException {
+    final int number;
+    final long now;
+    if (channel != null) {
+      seal();
+    }
+    number = Math.max(summaryNumber(), lastSegmentNumber()) + 1;
+    now = System.currentTimeMillis();
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create journal directory \"" + directory + "\"");
+    }
+    active = new Segment(new File(directory, String.format("segment-%06d-%d.csv", number, now)), number, now);
+    channel = FileChannel.open(
+        active.file.toPath(),
+        StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND
+    );
+  }
+
+  /**
+   * Force the active segment to the device and make it read-only.
+   */
+  private void seal() throws IOException {
+    try {
+      channel.force(false);
+    } finally {
+      channel.close();
+      channel = null;
+    }
+    if (!active.file.setReadOnly()) {
+      System.err.println("WARN - unable to make segment \"" + active.file + "\" read-only");
+      System.err.flush();
+    }
+  }
+
+  /**
+   * Write a summary of the current summary plus some sealed segments, which
+   * is to replace the current summary once moved into place.
+   */
+  private void writeSummary(final List<Segment> sealed, final File temporaryFile) throws IOException {
+    final List<File> files = new ArrayList<>();
+    final PositionBook positions = new PositionBook(instruments());
+    final long[] latest = new long[1];
+    final StringBuilder lines = new StringBuilder();
+    if (summaryFile() != null) {
+      files.add(summaryFile());
+    }
+    for (Segment segment : sealed) {
+      files.add(segment.file);
+    }
+    for (File file : files) {
+      new SimpleFileBasedTradingJournal(file, instruments()).replay((exchangeCode, transactionType, when, companyCode, quantity, brokerage) -> {
+        if (positions.apply(exchangeCode, transactionType, companyCode, quantity, brokerage) < 0) {
+          throw new IllegalStateException(
+              String.format("Corrupt journal! Negative quantity of stock \"%s\" within \"%s\"", companyCode, file)
+          );
+        }
+        latest[0] = Math.max(latest[0], when);
+      });
+    }
+
+    for (ExchangeCode exchangeCode : ExchangeCode.values()) {
+      final Map<String, Integer> volumes = positions.getVolumes(exchangeCode);
+      final List<String> companies = new ArrayList<>(volumes.keySet());
+      long brokerage = positions.getBrokerageCents(exchangeCode);
+      Collections.sort(companies);
+      for (String company : companies) {
+        final int units = volumes.get(company);
+        final int charge = (int) Math.min(brokerage, Integer.MAX_VALUE);
+        if (units > 0 || charge > 0) {
+          lines.append(summaryLine(
+              exchangeCode, latest[0], CompanyCode.valueOf(company, instruments()), units, charge));
+          brokerage -= charge;
+        }
+      }
+      while (brokerage > 0) {
+        // more brokerage than a single trade can carry, or no units left to carry it.
+        final int charge = (int) Math.min(brokerage, Integer.MAX_VALUE);
+        lines.append(summaryLine(exchangeCode, latest[0], CompanyCode.QAN, 0, charge));
+        brokerage -= charge;
+      }
+    }
+
+    try (FileOutputStream out = new FileOutputStream(temporaryFile)) {
+      out.write(lines.toString().getBytes(StandardCharsets.US_ASCII));
+      out.getFD().sync();
+    }
+  }
+
+  private static String summaryLine(
+      final ExchangeCode exchangeCode,
+      final long when,
+      final CompanyCode companyCode,
+      final int units,
+      final int brokerage
+  ) {
+    return new Trade(exchangeCode, Trade.TransactionType.SELL, new Date(when), companyCode, units, brokerage).toCsv()
+        + "\n";
+  }
+
+  /**
+   * Move segments, and summaries, which the latest summary has taken the place of into the archive.
+   * Picks up after any compaction which stopped part way through.
+   */
+  private void archive(final int summarised) throws IOException {
+    final File archiveDirectory = new File(directory, ARCHIVE_DIRECTORY);
+    for (Segment segment : segments(directory)) {
+      if (segment.number <= summarised) {
+        if (!archiveDirectory.isDirectory() && !archiveDirectory.mkdirs()) {
+          throw new IOException("Unable to create archive directory \"" + archiveDirectory + "\"");
+        }
+        Files.move(segment.file.toPath(), new File(archiveDirectory, segment.file.getName()).toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    final File[] summaries = directory.listFiles();
+    if (summaries != null) {
+      for (File file : summaries) {
+        final Matcher matcher = SUMMARY_NAME.matcher(file.getName());
+        if (matcher.matches() && Integer.parseInt(matcher.group(1)) < summarised && !file.delete()) {
+          System.err.println("WARN - unable to remove superseded summary \"" + file + "\"");
+          System.err.flush();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the latest summary followed by the segments it does not cover, in order.
+   */
+  private List<File> journalFiles() {
+    final List<File> result = new ArrayList<>();
+    final int summarised = summaryNumber();
+    if (summaryFile() != null) {
+      result.add(summaryFile());
+    }
+    for (Segment segment : segments(directory)) {
+      if (segment.number > summarised) {
+        result.add(segment.file);
+      }
+    }
+    return result;
+  }
+
+  private File summaryFile() {
+    final int number = summaryNumber();
+    return number == 0 ? null : new File(directory, String.format("summary-%06d.csv", number));
+  }
+
+  /**
+   * @return number of the last segment covered by the latest summary, zero if there is no summary.
+   */
+  private int summaryNumber() {
+    int result = 0;
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        final Matcher matcher = SUMMARY_NAME.matcher(file.getName());
+        if (matcher.matches()) {
+          result = Math.max(result, Integer.parseInt(matcher.group(1)));
+        }
+      }
+    }
+    return result;
+  }
+
+  private int lastSegmentNumber() {
+    final List<Segment> segments = segments(directory);
+    final List<Segment> archived = segments(new File(directory, ARCHIVE_DIRECTORY));
+    int result = 0;
+    if (!segments.isEmpty()) {
+      result = segments.get(segments.size() - 1).number;
+    }
+    if (!archived.isEmpty()) {
+      result = Math.max(result, archived.get(archived.size() - 1).number);
+    }
+    return result;
+  }
+
+  /**
+   * @return the segments within a directory, in order.
+   */
+  private static List<Segment> segments(final File directory) {
+    final List<Segment> result = new ArrayList<>();
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        final Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+        if (matcher.matches()) {
+          result.add(new Segment(file, Integer.parseInt(matcher.group(1)), Long.parseLong(matcher.group(2))));
+        }
+      }
+    }
+    result.sort((left, right) -> Integer.compare(left.number, right.number));
+    return result;
+  }
+
+  /**
+   * Lazily stream the trades of several files, one after the other.
+   */
+  private Stream<Trade> stream(
+      final List<File> files,
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) {
+    return files.stream().flatMap(file -> {
+      try {
+        return new SimpleFileBasedTradingJournal(file, instruments()).stream(exchangeCode, companyCode);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+}
@@ -0,0 +1,512 @@
+package au.com.livewire;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stock exchange where every request is published into a preallocated ring
+ * buffer and carried out, in the order published, by a single sequencer
+ * thread. The sequencer alone owns the position book and writes to the
+ * journal, so there is no contention for either, trades reach the journal
+ * in a deterministic order, and all the trades accepted from whatever has
+ * been published since the sequencer last looked are written together.
+ * <p>
+ * Publishers claim a sequence number, wait for its slot to be free, fill
+ * it in and then publish the sequence number into the slot, which is what
+ * the sequencer waits upon.
+ * <p>
+ * Given a {@link PositionCheckpoint}, the sequencer recovers the positions
+ * from the latest checkpoint and, between runs, checkpoints them again every
+ * so many trades.
+ */
+public class SequencedStockExchange implements AsyncStockExchange, Closeable {
+  private final static int DEFAULT_RING_SIZE = 1024;
+
+  // how long the sequencer sleeps for when there is nothing to do, should nobody wake it.
+  private final static long IDLE_PARK_NANOS = 100_000L;
+
+  private final ExchangeCode exchangeCode;
+
+  private final TradingJournal journal;
+
+  private final int currentBrokerage;
+
+  private final Slot[] ring;
+
+  private final int mask;
+
+  /**
+   * Next sequence number to be handed to a publisher.
+   */
+  private final AtomicLong claimed = new AtomicLong();
+
+  /**
+   * Every sequence number before this has been carried out, so its slot may be re-used.
+   */
+  private volatile long processed;
+
+  private volatile boolean closed;
+
+  private final Thread sequencerThread;
+
+  /**
+   * Only touched by the sequencer thread.
+   */
+  private PositionBook positionBook;
+
+  /**
+   * Saves the positions every so often, null if they are always rebuilt from the whole journal.
+   */
+  private final PositionCheckpoint checkpoint;
+
+  /**
+   * Whether to checkpoint once the current run is done, only touched by the sequencer thread.
+   */
+  private boolean checkpointDue;
+
+  /**
+   * Accepted trades (and their slots' futures) awaiting a write, only touched by the sequencer thread.
+   */
+  private final List<Trade> pendingTrades = new ArrayList<>();
+  private final List<CompletableFuture<Object>> pendingResults = new ArrayList<>();
+
+  private enum RequestType {
+    BUY,
+    SELL,
+    ORDER_BOOK_TOTAL_VOLUME,
+    TRADING_COSTS
+  }
+
+  /**
+   * A request, re-used once the sequencer has carried it out.
+   */
+  private static final class Slot {
+    /**
+     * Sequence number of the request the slot holds, written last by the publisher.
+     */
+    volatile long sequence = -1L;
+
+    RequestType requestType;
+    String code;
+    Integer units;
+    CompletableFuture<Object> result;
+  }
+
+  public SequencedStockExchange(
+      final ExchangeCode exchangeCode,
+      final TradingJournal journal,
+      final int currentBrokerage
+  ) {
+    this(exchangeCode, journal, currentBrokerage, DEFAULT_RING_SIZE);
+  }
+
+  /**
+   * @param ringSize how many requests may be outstanding, a power of two.
+   */
+  public SequencedStockExchange(
+      final ExchangeCode exchangeCode,
+      final TradingJournal journal,
+      final int currentBrokerage,
+      final int ringSize
+  ) {
+    this(exchangeCode, journal, currentBrokerage, ringSize, null);
+  }
+
+  /**
+   * @param ringSize how many requests may be outstanding, a power of two.
+   * @param checkpoint saves the positions every so often, null for no checkpoints.
+   */
+  public SequencedStockExchange(
+      final ExchangeCode exchangeCode,
+      final TradingJournal journal,
+      final int currentBrokerage,
+      final int ringSize,
+      final PositionCheckpoint checkpoint
+  ) {
+    if (ringSize < 1 || Integer.bitCount(ringSize) != 1) {
+      throw new IllegalArgumentException(
+          String.format("Ring size must be a positive power of two, value provided was %d", ringSize)
+      );
+    }
+    this.exchangeCode = exchangeCode;
+    this.journal = journal;
+    this.currentBrokerage = currentBrokerage;
+    this.checkpoint = checkpoint;
+    this.ring = new Slot[ringSize];
+    for (int i = 0; i < ringSize; i++) {
+      ring[i] = new Slot();
+    }
+    this.mask = ringSize - 1;
+    this.sequencerThread = new Thread(this::sequence, "exchange-sequencer-" + exchangeCode);
+    this.sequencerThread.setDaemon(true);
+    this.sequencerThread.start();
+  }
+
+  @Override
+  public void buy(
+      final String code,
+      final Integer units
+  ) throws IllegalArgumentException, IOException {
+    await(buyAsync(code, units));
+  }
+
+  @Override
+  public void sell(
+      final String code,
+      final Integer units
+  ) throws IllegalArgumentException {
+    try {
+      await(sellAsync(code, units));
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe.getMessage(), ioe);
+    }
+  }
+
+  @Override
+  public Map<String, Integer> getOrderBookTotalVolume() throws IOException {
+    return await(getOrderBookTotalVolumeAsync());
+  }
+
+  @Override
+  public BigDecimal getTradingCosts() throws IOException {
+    return await(publish(RequestType.TRADING_COSTS, null, null));
+  }
+
+  @Override
+  public CompletableFuture<Void> buyAsync(
+      final String code,
+      final Integer units
+  ) {
+    return publish(RequestType.BUY, code, units);
+  }
+
+  @Override
+  public CompletableFuture<Void> sellAsync(
+      final String code,
+      final Integer units
+  ) {
+    return publish(RequestType.SELL, code, units);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Integer>> getOrderBookTotalVolumeAsync() {
+    return publish(RequestType.ORDER_BOOK_TOTAL_VOLUME, null, null);
+  }
+
+  /**
+   * Publishes every order before waiting upon any, so that they are carried
+   * out back to back and their trades written together.
+   * @param orders the orders to be carried out.
+   * @return what became of each order, in the same order.
+   */
+  @Override
+  public List<OrderResult> submitBatch(final List<Order> orders) {
+    final List<CompletableFuture<Void>> futures = new ArrayList<>(orders.size());
+    final List<OrderResult> result = new ArrayList<>(orders.size());
+    for (Order order : orders) {
+      futures.add(order.getTransactionType() == Trade.TransactionType.BUY
+          ? buyAsync(order.getCode(), order.getUnits())
+          : sellAsync(order.getCode(), order.getUnits()));
+    }
+    for (int i = 0; i < orders.size(); i++) {
+      try {
+        await(futures.get(i));
+        result.add(OrderResult.accepted(orders.get(i)));
+      } catch (IOException | RuntimeException e) {
+        result.add(OrderResult.rejected(orders.get(i), e));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Stops the sequencer once it has carried out everything already published.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(sequencerThread);
+    try {
+      sequencerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Publish a request for the sequencer to carry out.
+   * @return completes once the request has been carried out.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> CompletableFuture<T> publish(
+      final RequestType requestType,
+      final String code,
+      final Integer units
+  ) {
+    final CompletableFuture<Object> result = new CompletableFuture<>();
+    if (closed) {
+      result.completeExceptionally(new IllegalStateException("Exchange " + exchangeCode + " has been closed"));
+      return (CompletableFuture<T>) result;
+    }
+    final long sequence = claimed.getAndIncrement();
+    // wait for the sequencer to be done with whatever last used the slot.
+    while (sequence - processed >= ring.length) {
+      LockSupport.unpark(sequencerThread);
+      Thread.yield();
+    }
+    final Slot slot = ring[(int) sequence & mask];
+    slot.requestType = requestType;
+    slot.code = code;
+    slot.units = units;
+    slot.result = result;
+    slot.sequence = sequence;
+    LockSupport.unpark(sequencerThread);
+    if (closed) {
+      // we may have slipped in as the sequencer stopped, in which case nobody will carry this out.
+      try {
+        sequencerThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      result.completeExceptionally(new IllegalStateException("Exchange " + exchangeCode + " has been closed"));
+    }
+    return (CompletableFuture<T>) result;
+  }
+
+  /**
+   * Body of the sequencer thread.
+   */
+  private void sequence() {
+    long next = 0L;
+    while (true) {
+      int count = 0;
+      while (count < ring.length && ring[(int) (next + count) & mask].sequence == next + count) {
+        count++;
+      }
+      if (count == 0) {
+        if (closed && claimed.get() == next) {
+          break;
+        }
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+        continue;
+      }
+      process(next, count);
+      next += count;
+      processed = next;
+      if (checkpointDue) {
+        checkpointDue = false;
+        checkpoint();
+      }
+    }
+  }
+
+  /**
+   * Carry out a run of published requests, appending their accepted trades together.
+   */
+  private void process(
+      final long first,
+      final int count
+  ) {
+    boolean locked = false;
+    try {
+      journal.lockForAppend(5000L);
+      locked = true;
+      if (positionBook == null) {
+        positionBook = loadPositions();
+      }
+      for (long sequence = first; sequence < first + count; sequence++) {
+        final Slot slot = ring[(int) sequence & mask];
+        carryOut(slot.requestType, slot.code, slot.units, slot.result);
+      }
+      commit();
+    } catch (JournalLockedException | IOException | RuntimeException e) {
+      final String msg;
+      msg = String.format("ERROR - FAILED to carry out %d requests upon exchange %s", count, exchangeCode);
+      System.err.println(msg);
+      System.err.flush();
+      backOut(e);
+      for (long sequence = first; sequence < first + count; sequence++) {
+        ring[(int) sequence & mask].result.completeExceptionally(new IllegalStateException(msg, e));
+      }
+    } finally {
+      if (locked) {
+        journal.releaseAppendLock();
+      }
+      for (long sequence = first; sequence < first + count; sequence++) {
+        final Slot slot = ring[(int) sequence & mask];
+        slot.code = null;
+        slot.units = null;
+        slot.result = null;
+      }
+    }
+  }
+
+  private void carryOut(
+      final RequestType requestType,
+      final String code,
+      final Integer units,
+      final CompletableFuture<Object> result
+  ) throws IOException {
+    final Trade trade;
+    switch (requestType) {
+      case BUY:
+        try {
+          trade = JournalBackedStockExchange.newTrade(
+              exchangeCode, Trade.TransactionType.BUY, code, units, currentBrokerage, journal.instruments());
+        } catch (IllegalArgumentException e) {
+          result.completeExceptionally(e);
+          return;
+        }
+        long surplus = positionBook.reserve(exchangeCode, trade.getCompanyCode(), trade.getQuantity());
+        if (surplus < trade.getQuantity()) {
+          result.completeExceptionally(new InsufficentUnitsException(String.format(
+              "Insufficient units (%d) available for stock \"%s\" "
+              + "to accommodate purchase of %d units",
+              surplus, trade.getCompanyCode(), trade.getQuantity())));
+          return;
+        }
+        pendingTrades.add(trade);
+        pendingResults.add(result);
+        break;
+      case SELL:
+        try {
+          trade = JournalBackedStockExchange.newTrade(
+              exchangeCode, Trade.TransactionType.SELL, code, units, currentBrokerage, journal.instruments());
+        } catch (IllegalArgumentException e) {
+          result.completeExceptionally(e);
+          return;
+        }
+        // available to later requests straight away, brokerage is charged once written.
+        positionBook.apply(exchangeCode, Trade.TransactionType.SELL, trade.getCompanyCode(), trade.getQuantity(), 0);
+        pendingTrades.add(trade);
+        pendingResults.add(result);
+        break;
+      case ORDER_BOOK_TOTAL_VOLUME:
+        // reports reflect everything sequenced before them, so must follow its write.
+        commit();
+        result.complete(positionBook.getVolumes(exchangeCode));
+        break;
+      case TRADING_COSTS:
+        commit();
+        result.complete(BigDecimal.valueOf(positionBook.getBrokerageCents(exchangeCode), 2));
+        break;
+      default:
+        result.completeExceptionally(new IllegalStateException("Unrecognised request " + requestType));
+        break;
+    }
+  }
+
+  /**
+   * Write the trades accepted so far, then let their requesters know. Should
+   * the write fail, the trades are backed out of the position book, latest first.
+   */
+  private void commit() {
+    if (pendingTrades.isEmpty()) {
+      return;
+    }
+    try {
+      journal.addAll(pendingTrades);
+      for (int i = 0; i < pendingTrades.size(); i++) {
+        final Trade trade = pendingTrades.get(i);
+        positionBook.chargeBrokerage(exchangeCode, trade.getBrokerage());
+        pendingResults.get(i).complete(null);
+      }
+      if (checkpoint != null && checkpoint.recorded(pendingTrades.size())) {
+        checkpointDue = true;
+      }
+      pendingTrades.clear();
+      pendingResults.clear();
+    } catch (IOException | RuntimeException e) {
+      System.err.println("ERROR - FAILED to append " + pendingTrades.size() + " trades to journal");
+      System.err.println(e.getClass() + " - " + e.getMessage());
+      System.err.flush();
+      backOut(e);
+    }
+  }
+
+  /**
+   * Remove the trades accepted so far from the position book, latest first, failing their requests.
+   */
+  private void backOut(final Throwable cause) {
+    for (int i = pendingTrades.size() - 1; i >= 0; i--) {
+      final Trade trade = pendingTrades.get(i);
+      if (trade.getTransactionType() == Trade.TransactionType.BUY) {
+        positionBook.unreserve(exchangeCode, trade.getCompanyCode(), trade.getQuantity());
+      } else {
+        positionBook.reserve(exchangeCode, trade.getCompanyCode(), trade.getQuantity());
+      }
+      pendingResults.get(i).completeExceptionally(cause);
+    }
+    pendingTrades.clear();
+    pendingResults.clear();
+  }
+
+  /**
+   * Save the positions, between runs, whilst the journal is locked exclusively.
+   */
+  private void checkpoint() {
+    try {
+      journal.lock(5000L);
+    } catch (JournalLockedException | IOException e) {
+      System.err.println("WARN - FAILED to lock journal to checkpoint positions of exchange " + exchangeCode);
+      System.err.println(e.getClass() + " - " + e.getMessage());
+      System.err.flush();
+      return;
+    }
+    try {
+      final long position = journal.position();
+      if (position >= 0) {
+        checkpoint.write(exchangeCode, positionBook, journal, position);
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("WARN - FAILED to checkpoint positions of exchange " + exchangeCode);
+      System.err.println(e.getClass() + " - " + e.getMessage());
+      System.err.flush();
+    } finally {
+      journal.releaseLock();
+    }
+  }
+
+  private PositionBook loadPositions() throws IOException {
+    PositionBook result;
+    if (checkpoint != null) {
+      return checkpoint.recover(exchangeCode, journal);
+    }
+    try {
+      result = journal.positions(exchangeCode);
+    } catch (FileNotFoundException firstTimeAroundException) {
+      // this can happen if there isn't yet a journal file in existence..
+      result = new PositionBook(journal.instruments());
+    }
+    return result;
+  }
+
+  /**
+   * Wait for a request, re-throwing whatever it failed with.
+   */
+  private static <T> T await(final CompletableFuture<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted whilst waiting for the exchange", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,413 @@
+package au.com.livewire;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * ASCII trading journal kept as a directory of shard files, one for each
+ * exchange, or optionally one for each company upon each exchange, so that
+ * reading the trades of one exchange (or company) never involves parsing
+ * those of another.
+ * <p>
+ * The directory looks like:
+ * <pre>
+ *   ASX.csv   (or ASX-CBA.csv, ASX-NAB.csv... when sharded by company)
+ *   CXA.csv
+ * </pre>
+ * Trades are only kept in order within each shard, which is all the
+ * positions depend upon, since no trade affects the units of another
+ * company. Positions are tallied by replaying the relevant shards in
+ * parallel upon a fork-join pool, each into a book of its own, and then
+ * merging the books, see {@link #positions(ExchangeCode)}.
+ * <p>
+ * Whether the journal is sharded by company must not change once it has
+ * been written to, as the trades of a company would then be split across
+ * two shards, with no way of telling their order.
+ */
+public class ShardedTradingJournal extends FileBasedTradingJournal implements Closeable {
+  private final static int INITIAL_BUFFER_SIZE = 256;
+  private final static Pattern SHARD_NAME = Pattern.compile("([A-Z]+)(?:-([A-Z0-9]+))?\\.csv");
+
+  /**
+   * Holds the shards.
+   */
+  private final File directory;
+
+  /**
+   * Whether each company has a shard of its own upon each exchange.
+   */
+  private final boolean byCompany;
+
+  /**
+   * Replays the shards, in parallel.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * Channels used to append to each shard, keyed by shard file name, opened upon the first append.
+   */
+  private final Map<String, FileChannel> channels;
+
+  /**
+   * Re-used for encoding trades prior to writing them.
+   */
+  private ByteBuffer encodeBuffer;
+
+  /**
+   * A shard file, along with what its name says about it.
+   */
+  private static final class Shard {
+    final File file;
+    final ExchangeCode exchangeCode;
+    final CompanyCode companyCode;
+
+    Shard(final File file, final ExchangeCode exchangeCode, final CompanyCode companyCode) {
+      this.file = file;
+      this.exchangeCode = exchangeCode;
+      this.companyCode = companyCode;
+    }
+  }
+
+  public ShardedTradingJournal(
+      final File directory,
+      final File journalLockFile,
+      final boolean byCompany
+  ) {
+    this(directory, journalLockFile, byCompany, ForkJoinPool.commonPool(), LockMode.FILE);
+  }
+
+  /**
+   * @param directory holds the shards, created should it not exist.
+   * @param byCompany true for a shard per company upon each exchange, false for a shard per exchange.
+   * @param pool replays the shards, such as the common pool.
+   */
+  public ShardedTradingJournal(
+      final File directory,
+      final File journalLockFile,
+      final boolean byCompany,
+      final ForkJoinPool pool,
+      final LockMode lockMode
+  ) {
+    this(directory, journalLockFile, byCompany, pool, lockMode, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param directory holds the shards, created should it not exist.
+   * @param byCompany true for a shard per company upon each exchange, false for a shard per exchange.
+   * @param pool replays the shards, such as the common pool.
+   * @param instruments the companies which trades may be in.
+   */
+  public ShardedTradingJournal(
+      final File directory,
+      final File journalLockFile,
+      final boolean byCompany,
+      final ForkJoinPool pool,
+      final LockMode lockMode,
+      final InstrumentRegistry instruments
+  ) {
+    super(directory, journalLockFile, lockMode, instruments);
+    if (pool == null) {
+      throw new IllegalArgumentException("Sharded journal requires a fork-join pool");
+    }
+    this.directory = directory;
+    this.byCompany = byCompany;
+    this.pool = pool;
+    this.channels = new HashMap<>();
+    this.encodeBuffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+  }
+
+  @Override
+  public synchronized void add(Trade trade) throws IOException {
+    encodeBuffer.clear();
+    encodeBuffer = AppendOnlyFileTradingJournal.encode(trade.toCsv(), encodeBuffer);
+    encodeBuffer.flip();
+    write(shardName(trade.getExchangeCode(), trade.getCompanyCode()), encodeBuffer);
+  }
+
+  /**
+   * Appends the trades to their shards in turn, so a failure may leave the
+   * earlier ones in the journal, as the trades may belong to several shards.
+   * @param trades the trades to be added to the journal.
+   */
+  @Override
+  public synchronized void addAll(final List<Trade> trades) throws IOException {
+    for (Trade trade : trades) {
+      add(trade);
+    }
+  }
+
+  /**
+   * Every trade within every shard, merged into the order they took place.
+   */
+  @Override
+  public synchronized List<Trade> list() throws IOException {
+    final List<Trade> result;
+    result = new ArrayList<>();
+    for (Shard shard : shards(null, null)) {
+      result.addAll(new SimpleFileBasedTradingJournal(shard.file, instruments()).list());
+    }
+    // a stable sort, so each shard's trades stay in the order they were added.
+    result.sort(Comparator.comparing(Trade::getTimestamp));
+    return result;
+  }
+
+  /**
+   * Only reads the shards which may hold the trades requested. The trades of
+   * a single shard are read as the stream is consumed, whereas those spread
+   * across several are read up front to merge them into order.
+   */
+  @Override
+  public synchronized Stream<Trade> stream(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) throws IOException {
+    final List<Shard> shards = shards(exchangeCode, companyCode);
+    final List<Trade> trades;
+    if (shards.size() == 1) {
+      return new SimpleFileBasedTradingJournal(shards.get(0).file, instruments()).stream(exchangeCode, companyCode);
+    }
+    trades = new ArrayList<>();
+    for (Shard shard : shards) {
+      final SimpleFileBasedTradingJournal shardJournal = new SimpleFileBasedTradingJournal(shard.file, instruments());
+      try (Stream<Trade> shardTrades = shardJournal.stream(exchangeCode, companyCode)) {
+        shardTrades.forEachOrdered(trades::add);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+    }
+    trades.sort(Comparator.comparing(Trade::getTimestamp));
+    return trades.stream();
+  }
+
+  /**
+   * Scans each shard in turn, so trades are only in order within each shard,
+   * which is enough to rebuild positions from.
+   * @param handler receives the fields of each trade.
+   */
+  @Override
+  public synchronized void replay(TradeRecordHandler handler) throws IOException {
+    for (Shard shard : shards(null, null)) {
+      new SimpleFileBasedTradingJournal(shard.file, instruments()).replay(handler);
+    }
+  }
+
+  /**
+   * Positions within a sharded journal would have to cover every shard, so
+   * resuming part way through is not supported and the journal is always
+   * replayed in full, although only the exchange's shards are read.
+   * @return -1, regardless.
+   */
+  @Override
+  public long position() {
+    return -1L;
+  }
+
+  @Override
+  public synchronized void replay(
+      final long fromPosition,
+      final TradeRecordHandler handler
+  ) throws IOException, IllegalArgumentException {
+    if (fromPosition != 0L) {
+      throw new IllegalArgumentException(
+          String.format("Unable to replay sharded journal from position %d", fromPosition)
+      );
+    }
+    replay(handler);
+  }
+
+  /**
+   * Tally the units available and brokerage charged upon an exchange (or
+   * every exchange) by replaying its shards in parallel, each into a book
+   * of its own, and merging the books.
+   * @param exchangeCode exchange of interest, or null for every exchange.
+   * @return position book reflecting only the shards of the exchange.
+   * @throws IllegalStateException if a shard would cause a negative quantity of stock.
+   */
+  @Override
+  public PositionBook positions(
+      final ExchangeCode exchangeCode
+  ) throws IOException, IllegalStateException {
+    final List<Shard> shards;
+    synchronized (this) {
+      shards = shards(exchangeCode, null);
+    }
+    try {
+      return pool.invoke(new ReplayTask(shards, 0, shards.size(), instruments()));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Closes each shard's channel.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    IOException failure = null;
+    for (FileChannel channel : channels.values()) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+    channels.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Replays a range of shards, splitting it in two until only one shard remains.
+   */
+  private static final class ReplayTask extends RecursiveTask<PositionBook> {
+    private final List<Shard> shards;
+    private final int from;
+    private final int to;
+    private final InstrumentRegistry instruments;
+
+    ReplayTask(
+        final List<Shard> shards,
+        final int from,
+        final int to,
+        final InstrumentRegistry instruments
+    ) {
+      this.shards = shards;
+      this.from = from;
+      this.to = to;
+      this.instruments = instruments;
+    }
+
+    @Override
+    protected PositionBook compute() {
+      final PositionBook result;
+      final ReplayTask left;
+      final int middle;
+      if (to - from <= 1) {
+        return from == to ? new PositionBook(instruments) : replay(shards.get(from).file);
+      }
+      middle = (from + to) >>> 1;
+      left = new ReplayTask(shards, from, middle, instruments);
+      left.fork();
+      result = new ReplayTask(shards, middle, to, instruments).compute();
+      result.merge(left.join());
+      return result;
+    }
+
+    private PositionBook replay(final File file) {
+      final PositionBook result = new PositionBook(instruments);
+      final int[] lineCount = new int[1];
+      try {
+        new SimpleFileBasedTradingJournal(file, instruments).replay((exchangeCode, transactionType, when, companyCode, quantity, brokerage) -> {
+          lineCount[0]++;
+          if (result.apply(exchangeCode, transactionType, companyCode, quantity, brokerage) < 0) {
+            throw new IllegalStateException(
+                String.format("Corrupt journal! At line %d of \"%s\", negative quantity of stock \"%s\"",
+                    lineCount[0], file, companyCode)
+            );
+          }
+        });
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return result;
+    }
+  }
+
+  private String shardName(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) {
+    return byCompany ? exchangeCode.name() + "-" + companyCode.name() + ".csv" : exchangeCode.name() + ".csv";
+  }
+
+  /**
+   * Append encoded trades to a shard.
+   */
+  private void write(
+      final String shardName,
+      final ByteBuffer buffer
+  ) throws IOException {
+    FileChannel channel = channels.get(shardName);
+    if (channel == null || !channel.isOpen()) {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Unable to create journal directory \"" + directory + "\"");
+      }
+      channel = FileChannel.open(
+          new File(directory, shardName).toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND
+      );
+      channels.put(shardName, channel);
+    }
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * @param exchangeCode only shards of this exchange, or null for every exchange.
+   * @param companyCode only shards which may hold this company, or null for every company.
+   * @return the shards within the directory which may hold the trades requested.
+   * @throws IllegalStateException if an exchange is sharded both by company and not.
+   */
+  private List<Shard> shards(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) throws IllegalStateException {
+    final List<Shard> result = new ArrayList<>();
+    final Map<ExchangeCode, Boolean> shardedByCompany = new HashMap<>();
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        final Matcher matcher = SHARD_NAME.matcher(file.getName());
+        final Shard shard;
+        final CompanyCode shardCompanyCode;
+        if (!matcher.matches()) {
+          continue;
+        }
+        shardCompanyCode = matcher.group(2) == null ? null : instruments().lookup(matcher.group(2));
+        try {
+          if (matcher.group(2) != null && shardCompanyCode == null) {
+            throw new IllegalArgumentException("No company code " + matcher.group(2));
+          }
+          shard = new Shard(file, ExchangeCode.valueOf(matcher.group(1)), shardCompanyCode);
+        } catch (IllegalArgumentException e) {
+          System.err.println("WARN - ignoring unrecognised shard \"" + file + "\"");
+          System.err.flush();
+          continue;
+        }
+        if (!shardedByCompany.getOrDefault(shard.exchangeCode, shard.companyCode != null)
+            .equals(shard.companyCode != null)) {
+          throw new IllegalStateException(
+              String.format("Corrupt journal! Exchange %s of \"%s\" is sharded both by company and not",
+                  shard.exchangeCode, directory)
+          );
+        }
+        shardedByCompany.put(shard.exchangeCode, shard.companyCode != null);
+        if ((exchangeCode == null || exchangeCode == shard.exchangeCode)
+            && (companyCode == null || shard.companyCode == null || companyCode == shard.companyCode)) {
+          result.add(shard);
+        }
+      }
+    }
+    result.sort(Comparator.comparing((Shard shard) -> shard.file.getName()));
+    return result;
+  }
+}
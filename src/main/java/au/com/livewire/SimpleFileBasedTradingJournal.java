@@ -8,9 +8,22 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -26,10 +39,31 @@ public class SimpleFileBasedTradingJournal implements TradingJournal {
   @Named("journalFile")
   public File file;
 
+  /**
+   * The companies which trades may be in.
+   */
+  private final InstrumentRegistry instruments;
+
   public SimpleFileBasedTradingJournal(
       @Named("journalFile") File file
+  ) {
+    this(file, InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param instruments the companies which trades may be in.
+   */
+  public SimpleFileBasedTradingJournal(
+      final File file,
+      final InstrumentRegistry instruments
   ) {
     this.file = file;
+    this.instruments = instruments;
+  }
+
+  @Override
+  public InstrumentRegistry instruments() {
+    return instruments;
   }
 
   @Override
@@ -47,6 +81,26 @@ public class SimpleFileBasedTradingJournal implements TradingJournal {
     writer.close();
   }
 
+  /**
+   * Renders every trade before writing any, then appends them all together.
+   * @param trades the trades to be added to the journal.
+   */
+  @Override
+  public synchronized void addAll(final List<Trade> trades) throws IOException {
+    if (file == null) {
+      throw new IllegalStateException("Unable to add to journal without file reference");
+    }
+    final StringBuilder entries = new StringBuilder();
+    for (Trade trade : trades) {
+      entries.append(trade.toCsv()).append("\n");
+    }
+    FileWriter writer;
+    writer = new FileWriter(file, true);
+    writer.append(entries);
+    writer.flush();
+    writer.close();
+  }
+
   @Override
   public synchronized List<Trade> list() throws IOException {
     final List<Trade> result;
@@ -64,14 +118,14 @@ public class SimpleFileBasedTradingJournal implements TradingJournal {
       FileReader reader;
       reader = new FileReader(file);
       br = new BufferedReader(reader);
+      final TradeCsvParser parser = new TradeCsvParser(instruments);
+      final MutableTrade holder = new MutableTrade();
       String line;
       int count = 0;
       while ((line = br.readLine()) != null) {
         count++;
-        final Trade entry;
         try {
-          entry = Trade.fromCsv(line);
-          result.add(entry);
+          result.add(parser.parse(line, holder).toTrade());
         } catch (IllegalArgumentException e) {
           final String msg = String.format("%s - at line %d", e.getMessage(), count);
           System.err.println(msg);
@@ -89,6 +143,167 @@ public class SimpleFileBasedTradingJournal implements TradingJournal {
     return result;
   }
 
+  /**
+   * Reads the journal file as the stream is consumed, only creating trades
+   * for those lines which are for the exchange and company of interest.
+   */
+  @Override
+  public Stream<Trade> stream(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) throws IOException {
+    // if no journal file yet exists ... there is nothing to stream.
+    if (!file.exists() || !file.canRead()) {
+      System.err.println("WARN - journal file \"" + file.getCanonicalPath() + "\" does not yet exist");
+      System.err.flush();
+      return Stream.empty();
+    }
+    final BufferedReader br = new BufferedReader(new FileReader(file));
+    final Spliterator<Trade> spliterator = new Spliterators.AbstractSpliterator<Trade>(
+        Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+      final TradeCsvParser parser = new TradeCsvParser(instruments);
+      final MutableTrade holder = new MutableTrade();
+      int count = 0;
+
+      @Override
+      public boolean tryAdvance(final Consumer<? super Trade> action) {
+        String line;
+        try {
+          while ((line = br.readLine()) != null) {
+            count++;
+            try {
+              parser.parse(line, holder);
+            } catch (IllegalArgumentException e) {
+              final String msg = String.format("%s - at line %d", e.getMessage(), count);
+              System.err.println(msg);
+              System.err.flush();
+              throw new IllegalArgumentException(msg, e);
+            }
+            if ((exchangeCode == null || exchangeCode == holder.getExchangeCode())
+                && (companyCode == null || companyCode == holder.getCompanyCode())) {
+              action.accept(holder.toTrade());
+              return true;
+            }
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return false;
+      }
+    };
+    return StreamSupport.stream(spliterator, false).onClose(() -> {
+      try {
+        br.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Scans the journal file via a memory mapping, rather than reading it line by line.
+   * @param handler receives the fields of each trade.
+   */
+  @Override
+  public synchronized void replay(TradeRecordHandler handler) throws IOException {
+    // if no journal file yet exists ... there is nothing to replay.
+    if (!file.exists() || !file.canRead()) {
+      System.err.println("WARN - journal file \"" + file.getCanonicalPath() + "\" does not yet exist");
+      System.err.flush();
+      return;
+    }
+    new MappedJournalScanner(instruments).scan(file, handler);
+  }
+
+  /**
+   * Tallies the journal file in chunks upon the common fork-join pool, see {@link ChunkedJournalReplay}.
+   * @param exchangeCode exchange of interest, although the book reflects every exchange.
+   */
+  @Override
+  public synchronized PositionBook positions(
+      final ExchangeCode exchangeCode
+  ) throws IOException, IllegalStateException {
+    if (!file.exists() || !file.canRead()) {
+      System.err.println("WARN - journal file \"" + file.getCanonicalPath() + "\" does not yet exist");
+      System.err.flush();
+      return new PositionBook(instruments);
+    }
+    return new ChunkedJournalReplay(ForkJoinPool.commonPool(), instruments).positions(file);
+  }
+
+  /**
+   * @return length of the journal file, zero if there isn't one yet.
+   */
+  @Override
+  public synchronized long position() throws IOException {
+    return file.exists() ? file.length() : 0L;
+  }
+
+  /**
+   * The journal file's key (its inode, say) along with a checksum of the
+   * line just before the position.
+   */
+  @Override
+  public synchronized String identity(final long position) throws IOException {
+    long from = position;
+    if (!file.exists() || position <= 0L) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final ByteBuffer previous = ByteBuffer.allocate(1);
+      // back to the start of the line ending at the position, however long.
+      do {
+        from--;
+        previous.clear();
+      } while (from > 0L && channel.read(previous, from - 1) == 1 && previous.get(0) != '\n');
+    }
+    return identity(file, from, position);
+  }
+
+  /**
+   * @return the file's key along with a checksum of the bytes between two positions.
+   */
+  static String identity(
+      final File file,
+      final long from,
+      final long to
+  ) throws IOException {
+    final Object fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    final CRC32 checksum = new CRC32();
+    final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(to - from, 64L * 1024L));
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long position = from;
+      while (position < to) {
+        final int read;
+        buffer.clear().limit((int) Math.min(buffer.capacity(), to - position));
+        if ((read = channel.read(buffer, position)) <= 0) {
+          throw new IOException(String.format("Journal \"%s\" ends before position %d", file, to));
+        }
+        buffer.flip();
+        checksum.update(buffer.array(), 0, read);
+        position += read;
+      }
+    }
+    return String.format("%s:%d-%d:%08x", fileKey == null ? "" : fileKey, from, to, checksum.getValue());
+  }
+
+  /**
+   * Scans the journal file via a memory mapping, from the start of a line onwards.
+   * @param fromPosition byte offset of the line to start from.
+   * @param handler receives the fields of each trade.
+   */
+  @Override
+  public synchronized void replay(
+      final long fromPosition,
+      final TradeRecordHandler handler
+  ) throws IOException, IllegalArgumentException {
+    if (fromPosition == 0L) {
+      replay(handler);
+      return;
+    }
+    new MappedJournalScanner(instruments).scan(file, fromPosition, handler);
+  }
+
   public synchronized void lock(
       final long timeoutMs
   ) throws JournalLockedException, IOException {
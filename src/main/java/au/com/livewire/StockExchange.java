@@ -2,6 +2,8 @@ package au.com.livewire;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -34,4 +36,28 @@ public interface StockExchange {
    * @return the total brokerage charged for all transactions.
    */
   BigDecimal getTradingCosts() throws IOException;
+
+  /**
+   * Carry out several orders, in order, reporting what became of each rather
+   * than throwing upon the first to be refused. Unless overridden, each order
+   * is carried out in turn, just as if it had been made by itself.
+   * @param orders the orders to be carried out.
+   * @return what became of each order, in the same order.
+   */
+  default List<OrderResult> submitBatch(final List<Order> orders) {
+    final List<OrderResult> result = new ArrayList<>(orders.size());
+    for (Order order : orders) {
+      try {
+        if (order.getTransactionType() == Trade.TransactionType.BUY) {
+          buy(order.getCode(), order.getUnits());
+        } else {
+          sell(order.getCode(), order.getUnits());
+        }
+        result.add(OrderResult.accepted(order));
+      } catch (IOException | RuntimeException e) {
+        result.add(OrderResult.rejected(order, e));
+      }
+    }
+    return result;
+  }
 }
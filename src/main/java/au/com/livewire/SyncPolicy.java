@@ -0,0 +1,21 @@
+package au.com.livewire;
+
+/**
+ * How eagerly a journal forces appended trades onto the storage device.
+ */
+public enum SyncPolicy {
+  /**
+   * Leave it to the operating system to write out trades as it sees fit.
+   */
+  NEVER,
+
+  /**
+   * Force trades onto the device once every so many trades have been appended.
+   */
+  EVERY_N_TRADES,
+
+  /**
+   * Force each and every trade onto the device before the append completes.
+   */
+  EVERY_TRADE
+}
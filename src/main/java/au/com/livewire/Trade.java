@@ -128,15 +128,30 @@ public class Trade {
     return result;
   }
 
+  /**
+   * Ugly manual parsing of a line of csv to extract a trade entry, in one of
+   * the companies we have always traded.
+   * @param candidate the (hopefully comma separated) text to be interrogated
+   * @return a trade representing the data specified in the CSV file.
+   * @throws IllegalArgumentException when things go awry.
+   */
+  public static Trade fromCsv(
+      final String candidate
+  ) throws IllegalArgumentException {
+    return fromCsv(candidate, InstrumentRegistry.DEFAULT);
+  }
+
   /**
    * Ugly manual parsing of a line of csv to extract a trade entry. Far more
    * elegant solutions possible with more time available.
    * @param candidate the (hopefully comma separated) text to be interrogated
+   * @param instruments the companies which may be traded.
    * @return a trade representing the data specified in the CSV file.
    * @throws IllegalArgumentException when things go awry.
    */
   public static Trade fromCsv(
-      final String candidate
+      final String candidate,
+      final InstrumentRegistry instruments
   ) throws IllegalArgumentException {
     Trade result = null; // our resultant trade
     final String[] bits; // the textual elements of the csv entry being interrogated.
@@ -208,9 +223,8 @@ public class Trade {
 
     // the fourth field must represent a valid company code...
     bit = bits[cursor++];
-    try {
-      code = CompanyCode.valueOf(bit.trim().toUpperCase());
-    } catch (IllegalArgumentException e) {
+    code = instruments.lookup(bit);
+    if (code == null) {
       throw new IllegalArgumentException(
           String.format(
               "Column %d \"%s\" from line \"%s\" does not represent a valid company code",
@@ -0,0 +1,356 @@
+package au.com.livewire;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Parses a line of csv into a re-usable {@link MutableTrade}, without
+ * splitting the line into strings, upper-casing it, nor creating a date.
+ * Exchanges and transaction types are looked up in tables of their names
+ * prepared up front, companies via an {@link InstrumentRegistry}. The line
+ * is interpreted exactly as {@link Trade#fromCsv(String)} would, including
+ * the messages of the exceptions thrown when the line is unacceptable. Only
+ * upon such a failure is any garbage created.
+ * <p>
+ * Holds scratch space, so each thread should have its own parser.
+ */
+public class TradeCsvParser {
+  private final static int FIELD_COUNT = 6;
+
+  private static final ExchangeCode[] EXCHANGE_CODES = ExchangeCode.values();
+  private static final Trade.TransactionType[] TRANSACTION_TYPES = Trade.TransactionType.values();
+
+  private static final char[][] EXCHANGE_NAMES = namesOf(EXCHANGE_CODES);
+  private static final char[][] TRANSACTION_TYPE_NAMES = namesOf(TRANSACTION_TYPES);
+
+  /**
+   * The companies which may be traded.
+   */
+  private final InstrumentRegistry instruments;
+
+  /**
+   * Offsets at which each field starts and ends (exclusive).
+   */
+  private final int[] starts = new int[FIELD_COUNT];
+  private final int[] ends = new int[FIELD_COUNT];
+
+  /**
+   * Re-used to present a range of bytes as characters.
+   */
+  private final ByteSequence byteSequence = new ByteSequence();
+
+  public TradeCsvParser() {
+    this(InstrumentRegistry.DEFAULT);
+  }
+
+  /**
+   * @param instruments the companies which may be traded.
+   */
+  public TradeCsvParser(final InstrumentRegistry instruments) {
+    this.instruments = instruments;
+  }
+
+  /**
+   * Parse a line of csv.
+   * @param candidate the (hopefully comma separated) text to be interrogated.
+   * @param target holder to fill in with the fields of the trade.
+   * @return the target, holding the fields of the trade.
+   * @throws IllegalArgumentException when things go awry, with the same message as
+   *     {@link Trade#fromCsv(String)} would give.
+   */
+  public MutableTrade parse(
+      final CharSequence candidate,
+      final MutableTrade target
+  ) throws IllegalArgumentException {
+    final int length = candidate == null ? 0 : candidate.length();
+    if (isBlank(candidate, 0, length)) {
+      throw new IllegalArgumentException("Must provide non-null, non-blank candidate");
+    }
+
+    // find the fields, disregarding trailing empty ones (as String.split() would).
+    int fieldCount = 0;
+    int lastNonEmpty = -1;
+    int start = 0;
+    for (int i = 0; i <= length; i++) {
+      if (i == length || candidate.charAt(i) == ',') {
+        if (fieldCount < FIELD_COUNT) {
+          starts[fieldCount] = start;
+          ends[fieldCount] = i;
+        }
+        if (i > start) {
+          lastNonEmpty = fieldCount;
+        }
+        fieldCount++;
+        start = i + 1;
+      }
+    }
+    if (lastNonEmpty + 1 != FIELD_COUNT) {
+      throw new IllegalArgumentException(
+          String.format("provided string \"%s\" does not contain date, symbol and quantity", candidate)
+      );
+    }
+
+    // all fields must be non-null and non-blank
+    for (int field = 0; field < FIELD_COUNT; field++) {
+      if (isBlank(candidate, starts[field], ends[field])) {
+        throw new IllegalArgumentException(
+            String.format(
+                "exchange code, transaction-type, timestamp, company code, "
+                    + "amount and brokerage fields must all be present "
+                    + "... invalid entry \"%s\"", candidate)
+        );
+      }
+    }
+
+    final int exchangeOrdinal = lookup(candidate, starts[0], ends[0], EXCHANGE_NAMES);
+    if (exchangeOrdinal < 0) {
+      throw new IllegalArgumentException(
+          String.format("Field \"%d\" from line \"%s\" does not represent a valid exchange",
+              1, field(candidate, 0))
+      );
+    }
+
+    final int typeOrdinal = lookup(candidate, starts[1], ends[1], TRANSACTION_TYPE_NAMES);
+    if (typeOrdinal < 0) {
+      throw new IllegalArgumentException(
+          String.format("Field \"%d\" from line \"%s\" does not represent a valid transaction type",
+              2, field(candidate, 1))
+      );
+    }
+
+    if (!isNumeric(candidate, starts[2], ends[2])) {
+      throw new IllegalArgumentException(
+          String.format("Field %d \"%s\" from line \"%s\" does not represent a valid timestamp",
+              3, field(candidate, 2), candidate)
+      );
+    }
+    final long when = toLong(candidate, 2, Long.MAX_VALUE);
+
+    final CompanyCode companyCode = lookupCompany(candidate, starts[3], ends[3]);
+    if (companyCode == null) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Column %d \"%s\" from line \"%s\" does not represent a valid company code",
+              4, field(candidate, 3), candidate)
+      );
+    }
+
+    if (!isNumeric(candidate, starts[4], ends[4])) {
+      throw new IllegalArgumentException(
+          String.format("Field %d \"%s\" from line \"%s\" does not represent a valid quantity",
+              5, field(candidate, 4), candidate)
+      );
+    }
+    final int quantity = (int) toLong(candidate, 4, Integer.MAX_VALUE);
+
+    if (!isNumeric(candidate, starts[5], ends[5])) {
+      throw new IllegalArgumentException(
+          String.format("Field %d \"%s\" from line \"%s\" does not represent a valid brokerage",
+              6, field(candidate, 5), candidate)
+      );
+    }
+    final int brokerage = (int) toLong(candidate, 5, Integer.MAX_VALUE);
+
+    return target.set(
+        EXCHANGE_CODES[exchangeOrdinal],
+        TRANSACTION_TYPES[typeOrdinal],
+        when,
+        companyCode,
+        quantity,
+        brokerage
+    );
+  }
+
+  /**
+   * Parse a line of csv held within a range of bytes, such as a line of a
+   * memory mapped journal. Should the bytes not be acceptable, they are
+   * decoded in the platform's charset (as a reader would) and parsed again,
+   * so that the outcome is exactly as if the line had been read as text.
+   * @param buffer holds the line, which is not disturbed.
+   * @param start offset of the first byte of the line.
+   * @param end offset just beyond the last byte of the line (excluding any newline).
+   * @param target holder to fill in with the fields of the trade.
+   * @return the target, holding the fields of the trade.
+   * @throws IllegalArgumentException when things go awry.
+   */
+  public MutableTrade parse(
+      final ByteBuffer buffer,
+      final int start,
+      final int end,
+      final MutableTrade target
+  ) throws IllegalArgumentException {
+    try {
+      return parse(byteSequence.reset(buffer, start, end), target);
+    } catch (IllegalArgumentException e) {
+      final byte[] bytes = new byte[end - start];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = buffer.get(start + i);
+      }
+      return parse(new String(bytes, Charset.defaultCharset()), target);
+    }
+  }
+
+  private String field(final CharSequence candidate, final int field) {
+    return candidate.subSequence(starts[field], ends[field]).toString();
+  }
+
+  /**
+   * Value of the (numeric) field, failing as {@link Long#parseLong(String)} would were it too large.
+   */
+  private long toLong(
+      final CharSequence candidate,
+      final int field,
+      final long maxValue
+  ) throws NumberFormatException {
+    long result = 0L;
+    for (int i = starts[field]; i < ends[field]; i++) {
+      final int digit = Character.digit(candidate.charAt(i), 10);
+      if (result > (maxValue - digit) / 10L) {
+        throw new NumberFormatException("For input string: \"" + field(candidate, field) + "\"");
+      }
+      result = result * 10L + digit;
+    }
+    return result;
+  }
+
+  /**
+   * Which of the names matches the (trimmed, upper-cased) characters between two offsets?
+   * @return index of the matching name, or -1 if there is none.
+   */
+  private static int lookup(
+      final CharSequence candidate,
+      final int fieldStart,
+      final int fieldEnd,
+      final char[][] names
+  ) {
+    int start = fieldStart;
+    int end = fieldEnd;
+    while (start < end && candidate.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && candidate.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    for (int ordinal = 0; ordinal < names.length; ordinal++) {
+      final char[] name = names[ordinal];
+      if (name.length != end - start) {
+        continue;
+      }
+      int i = 0;
+      while (i < name.length && name[i] == Character.toUpperCase(candidate.charAt(start + i))) {
+        i++;
+      }
+      if (i == name.length) {
+        return ordinal;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Which company has the (trimmed, case insensitive) symbol between two offsets?
+   * @return the company's code, or null if there is none.
+   */
+  private CompanyCode lookupCompany(
+      final CharSequence candidate,
+      final int fieldStart,
+      final int fieldEnd
+  ) {
+    int start = fieldStart;
+    int end = fieldEnd;
+    while (start < end && candidate.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && candidate.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return instruments.lookup(candidate, start, end);
+  }
+
+  /**
+   * As per {@link org.apache.commons.lang3.StringUtils#isBlank(CharSequence)}, for a range of characters.
+   */
+  private static boolean isBlank(
+      final CharSequence candidate,
+      final int start,
+      final int end
+  ) {
+    for (int i = start; i < end; i++) {
+      if (!Character.isWhitespace(candidate.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * As per {@link org.apache.commons.lang3.StringUtils#isNumeric(CharSequence)}, for a range of characters.
+   */
+  private static boolean isNumeric(
+      final CharSequence candidate,
+      final int start,
+      final int end
+  ) {
+    if (end <= start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (!Character.isDigit(candidate.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static char[][] namesOf(final Enum<?>[] values) {
+    final char[][] result = new char[values.length][];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = values[i].name().toCharArray();
+    }
+    return result;
+  }
+
+  /**
+   * Presents a range of single byte characters as a character sequence.
+   */
+  private static class ByteSequence implements CharSequence {
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+
+    ByteSequence reset(
+        final ByteBuffer buffer,
+        final int start,
+        final int end
+    ) {
+      this.buffer = buffer;
+      this.start = start;
+      this.end = end;
+      return this;
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    @Override
+    public char charAt(final int index) {
+      return (char) (buffer.get(start + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(final int from, final int to) {
+      return new ByteSequence().reset(buffer, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder bob = new StringBuilder(length());
+      for (int i = 0; i < length(); i++) {
+        bob.append(charAt(i));
+      }
+      return bob.toString();
+    }
+  }
+}
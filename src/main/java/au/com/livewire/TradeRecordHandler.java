@@ -0,0 +1,26 @@
+package au.com.livewire;
+
+/**
+ * Receives the fields of each trade as a journal is replayed, without the
+ * journal having to build a {@link Trade} for each one.
+ */
+@FunctionalInterface
+public interface TradeRecordHandler {
+  /**
+   * Called once for each trade, in the order they appear within the journal.
+   * @param exchangeCode the exchange used to conduct the trade.
+   * @param transactionType whether the trade was a buy or a sell.
+   * @param when milliseconds since epoch that the trade took place.
+   * @param companyCode the company the trade took place for.
+   * @param quantity how many units were bought or sold.
+   * @param brokerage cost of the trade in cents, zero if not known.
+   */
+  void onTrade(
+      ExchangeCode exchangeCode,
+      Trade.TransactionType transactionType,
+      long when,
+      CompanyCode companyCode,
+      int quantity,
+      int brokerage
+  );
+}
@@ -1,7 +1,11 @@
 package au.com.livewire;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Journal of all trades made so far..
@@ -20,7 +24,174 @@ public interface TradingJournal {
   List<Trade> list() throws IOException;
 
   /**
-   * Causes the journal to be locked (upto a max time period),
+   * Lazily stream the trades within the journal, in order, optionally
+   * restricted to a particular exchange and/or company. Implementations are
+   * encouraged to read the journal as the stream is consumed, and to apply
+   * the restrictions whilst reading. The stream holds the journal open, so
+   * must be closed once finished with.
+   * @param exchangeCode only stream trades upon this exchange, or null for any exchange.
+   * @param companyCode only stream trades for this company, or null for any company.
+   * @return stream of trades, which may throw {@link UncheckedIOException} as it is consumed.
+   */
+  default Stream<Trade> stream(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) throws IOException {
+    return list().stream().filter(trade -> matches(trade, exchangeCode, companyCode));
+  }
+
+  /**
+   * Pass each trade within the journal, in order, to a consumer without
+   * holding them all in memory at once.
+   * @param exchangeCode only visit trades upon this exchange, or null for any exchange.
+   * @param companyCode only visit trades for this company, or null for any company.
+   * @param consumer receives each trade.
+   */
+  default void forEach(
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode,
+      final Consumer<Trade> consumer
+  ) throws IOException {
+    try (Stream<Trade> trades = stream(exchangeCode, companyCode)) {
+      trades.forEachOrdered(consumer);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Feed each trade within the journal, in order, to a handler. Implementations
+   * are encouraged to do so without creating a trade for each entry.
+   * @param handler receives the fields of each trade.
+   */
+  default void replay(TradeRecordHandler handler) throws IOException {
+    forEach(null, null, trade ->
+      handler.onTrade(
+          trade.getExchangeCode(),
+          trade.getTransactionType(),
+          trade.getTimestamp().getTime(),
+          trade.getCompanyCode(),
+          trade.getQuantity(),
+          trade.getBrokerage() == null ? 0 : trade.getBrokerage()
+      )
+    );
+  }
+
+  /**
+   * Where the journal currently ends, as a position from which a later
+   * {@link #replay(long, TradeRecordHandler)} may resume. Unless overridden,
+   * the journal cannot be resumed part way through and reports -1.
+   * @return position just beyond the last trade, or -1 if not supported.
+   */
+  default long position() throws IOException {
+    return -1L;
+  }
+
+  /**
+   * Identifies the journal along with the trade just before a position, so
+   * that whoever resumes from the position later on can tell should the
+   * journal have been replaced (or restored from a backup) since, by one
+   * which merely happens to reach beyond it. Unless overridden, there is
+   * nothing to go by.
+   * @param position as reported by {@link #position()}.
+   * @return identity of the journal upto the position, or null if there is none.
+   */
+  default String identity(final long position) throws IOException {
+    return null;
+  }
+
+  /**
+   * Feed each trade beyond a position within the journal, in order, to a handler.
+   * Unless overridden, only replaying from the very start is supported.
+   * @param fromPosition as reported earlier by {@link #position()}, zero for the very start.
+   * @param handler receives the fields of each trade.
+   * @throws IllegalArgumentException if the journal cannot resume from that position.
+   */
+  default void replay(
+      final long fromPosition,
+      final TradeRecordHandler handler
+  ) throws IOException, IllegalArgumentException {
+    if (fromPosition != 0L) {
+      throw new IllegalArgumentException(
+          String.format("Unable to replay journal from position %d", fromPosition)
+      );
+    }
+    replay(handler);
+  }
+
+  /**
+   * The companies which the trades of this journal may be in, and which
+   * exchanges (and position books) built upon it may trade. Unless
+   * overridden, only the companies we have always traded.
+   * @return registry of companies, which never changes.
+   */
+  default InstrumentRegistry instruments() {
+    return InstrumentRegistry.DEFAULT;
+  }
+
+  /**
+   * Tally the units available and brokerage charged upon an exchange.
+   * Unless overridden, the whole journal is replayed, so the book may also
+   * reflect the trades of other exchanges. Journals which keep the trades
+   * of each exchange apart should override this to read only those needed.
+   * @param exchangeCode exchange of interest, or null for every exchange.
+   * @return position book reflecting at least the exchange's trades.
+   * @throws IllegalStateException if the trades would cause a negative quantity of stock.
+   */
+  default PositionBook positions(
+      final ExchangeCode exchangeCode
+  ) throws IOException, IllegalStateException {
+    return PositionBook.fromJournal(this);
+  }
+
+  /**
+   * Whether a trade satisfies the restrictions placed upon a stream.
+   * @param trade trade of interest.
+   * @param exchangeCode required exchange, or null for any exchange.
+   * @param companyCode required company, or null for any company.
+   * @return true if the trade should be part of the stream.
+   */
+  static boolean matches(
+      final Trade trade,
+      final ExchangeCode exchangeCode,
+      final CompanyCode companyCode
+  ) {
+    return (exchangeCode == null || exchangeCode == trade.getExchangeCode())
+        && (companyCode == null || companyCode == trade.getCompanyCode());
+  }
+
+  /**
+   * Add several trades to the journal, in order. Journals which can should
+   * override this to write them all at once. Unless overridden, each trade
+   * is added in turn, so a failure may leave the earlier ones in the journal.
+   * @param trades the trades to be added to the journal.
+   */
+  default void addAll(final List<Trade> trades) throws IOException {
+    for (Trade trade : trades) {
+      add(trade);
+    }
+  }
+
+  /**
+   * Add a trade to the journal without necessarily waiting for it to be
+   * written. Unless overridden, the trade is written before returning.
+   * @param trade the trade to be added to the journal.
+   * @return completes once the trade has been written, or exceptionally
+   *     with whatever {@link #add(Trade)} would have thrown.
+   */
+  default CompletableFuture<Void> addAsync(final Trade trade) {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    try {
+      add(trade);
+      result.complete(null);
+    } catch (IOException | RuntimeException e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  /**
+   * Causes the journal to be locked exclusively (upto a max time period),
    * so that nobody else may list nor add entries until then.
    */
   void lock(long timeoutMs) throws JournalLockedException, IOException;
@@ -28,4 +199,33 @@ public interface TradingJournal {
   boolean isLocked();
 
   void releaseLock();
+
+  /**
+   * Causes the journal to be locked for reading (upto a max time period),
+   * so that no other process may add entries until then, although others
+   * may also read. Threads of this process holding the journal locked for
+   * appending (see {@link #lockForAppend(long)}) may still add entries.
+   * Unless overridden, the journal is locked exclusively.
+   */
+  default void lockShared(long timeoutMs) throws JournalLockedException, IOException {
+    lock(timeoutMs);
+  }
+
+  default void releaseSharedLock() {
+    releaseLock();
+  }
+
+  /**
+   * Causes the journal to be locked for appending (upto a max time period),
+   * alongside other threads of this process appending (add() being
+   * thread-safe), whereas no other process may read nor add entries until
+   * then. Unless overridden, the journal is locked exclusively.
+   */
+  default void lockForAppend(long timeoutMs) throws JournalLockedException, IOException {
+    lock(timeoutMs);
+  }
+
+  default void releaseAppendLock() {
+    releaseLock();
+  }
 }
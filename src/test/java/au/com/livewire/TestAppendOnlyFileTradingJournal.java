@@ -0,0 +1,87 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestAppendOnlyFileTradingJournal {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  AppendOnlyFileTradingJournal tradingJournal;
+  File journalFile;
+
+  @Before
+  public void setup() throws IOException {
+    journalFile = new File(folder.getRoot(), "journal.csv");
+    tradingJournal = new AppendOnlyFileTradingJournal(
+        journalFile, new File(folder.getRoot(), "journal.lock"), SyncPolicy.EVERY_N_TRADES, 2);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    tradingJournal.close();
+  }
+
+  @Test
+  public void testAppendingThenListing() throws IOException {
+    long when = 1023439393000L;
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when), CompanyCode.NAB, 58, 5));
+    tradingJournal.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.SELL, new Date(when + 2), CompanyCode.CBA, 43, 7));
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(when + 4), CompanyCode.NAB, 27, 5));
+
+    List<String> lines = Files.readAllLines(journalFile.toPath());
+    assertEquals(3, lines.size());
+    assertEquals("ASX,SELL,1023439393000,NAB,58,5", lines.get(0));
+    assertEquals("ASX,BUY,1023439393004,NAB,27,5", lines.get(2));
+
+    List<Trade> result = tradingJournal.list();
+    assertEquals(3, result.size());
+    assertEquals(CompanyCode.CBA, result.get(1).getCompanyCode());
+    assertEquals(43, result.get(1).getQuantity().intValue());
+  }
+
+  @Test
+  public void testReopeningAfterClose() throws IOException {
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.QAN, 10, 5));
+    tradingJournal.close();
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.QAN, 11, 5));
+    assertEquals(2, tradingJournal.list().size());
+  }
+
+  @Test
+  public void testEncodingLinesLongerThanTheBuffer() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+    buffer = AppendOnlyFileTradingJournal.encode("ABC", buffer);
+    buffer = AppendOnlyFileTradingJournal.encode("DEFGH", buffer);
+    buffer.flip();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertEquals("ABC\nDEFGH\n", new String(bytes));
+  }
+
+  @Test
+  public void testAppendingSeveralTogether() throws IOException {
+    long when = 1023439393000L;
+    List<Trade> trades = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      trades.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when + i), CompanyCode.QAN, i + 1, 5));
+    }
+    tradingJournal.addAll(trades);
+    List<String> lines = Files.readAllLines(journalFile.toPath());
+    assertEquals(1000, lines.size());
+    assertEquals("ASX,SELL,1023439393999,QAN,1000,5", lines.get(999));
+  }
+}
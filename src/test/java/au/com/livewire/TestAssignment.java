@@ -0,0 +1,86 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestAssignment {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  InMemoryTradingJournal tradingJournal;
+  JournalBackedStockExchange stockExchange;
+
+  @Before
+  public void setup() {
+    tradingJournal = new InMemoryTradingJournal();
+    stockExchange = new JournalBackedStockExchange(ExchangeCode.ASX, tradingJournal, 3);
+  }
+
+  @Test
+  public void testConcurrentClients() throws Exception {
+    final Assignment instance = new Assignment(ExchangeCode.ASX, stockExchange, tradingJournal, 3, 8);
+    instance.trade(200);
+    int bought = 0;
+    int sold = 0;
+    for (Trade trade : tradingJournal.list()) {
+      if (trade.getTransactionType() == Trade.TransactionType.BUY) {
+        bought += trade.getQuantity();
+      } else {
+        sold += trade.getQuantity();
+      }
+    }
+    int volume = 0;
+    for (Map.Entry<String, Integer> entry : stockExchange.getOrderBookTotalVolume().entrySet()) {
+      assertTrue(entry.getValue() >= 0);
+      volume += entry.getValue();
+    }
+    assertEquals(sold - bought, volume);
+  }
+
+  @Test
+  public void testClosingSyncsJournal() throws IOException {
+    final boolean[] synced = new boolean[1];
+    final AppendOnlyFileTradingJournal journal = new AppendOnlyFileTradingJournal(
+        new File(folder.getRoot(), "journal.csv"),
+        new File(folder.getRoot(), "journal.lock"),
+        SyncPolicy.EVERY_N_TRADES,
+        1000
+    ) {
+      @Override
+      public synchronized void sync() throws IOException {
+        synced[0] = true;
+        super.sync();
+      }
+    };
+    final JournalBackedStockExchange exchange = new JournalBackedStockExchange(ExchangeCode.ASX, journal, 3);
+    final Assignment instance = new Assignment(ExchangeCode.ASX, exchange, journal, 3, 1);
+    exchange.sell("QAN", 10);
+    exchange.buy("QAN", 4);
+    assertFalse(synced[0]);
+    instance.close();
+    assertTrue(synced[0]);
+    assertEquals(2, journal.list().size());
+  }
+
+  @Test
+  public void testClientExecutor() throws Exception {
+    final ExecutorService executor = ClientExecutors.newClientExecutor(0);
+    try {
+      Future<Boolean> daemon = executor.submit(() -> Thread.currentThread().isDaemon());
+      assertTrue(daemon.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
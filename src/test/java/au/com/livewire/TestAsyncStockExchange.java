@@ -0,0 +1,86 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestAsyncStockExchange {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  GroupCommitTradingJournal tradingJournal;
+  AsyncStockExchange instance;
+
+  @Before
+  public void setup() {
+    tradingJournal = new GroupCommitTradingJournal(
+        new File(folder.getRoot(), "journal.csv"), new File(folder.getRoot(), "journal.lock"), SyncPolicy.NEVER, 1);
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, tradingJournal, 3);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    tradingJournal.close();
+  }
+
+  @Test
+  public void testManyOrdersInFlight() throws Exception {
+    instance.sellAsync("QAN", 1000).get();
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < 600; i++) {
+      futures.add(instance.buyAsync("QAN", 2));
+    }
+    int accepted = 0;
+    for (CompletableFuture<Void> future : futures) {
+      try {
+        future.get();
+        accepted++;
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof InsufficentUnitsException);
+      }
+    }
+    assertEquals(500, accepted);
+
+    Map<String, Integer> result = instance.getOrderBookTotalVolumeAsync().get();
+    assertEquals(0, result.get("QAN").intValue());
+    assertEquals(501, tradingJournal.list().size());
+    assertEquals(15.03D, instance.getTradingCosts().doubleValue(), 0.001D);
+  }
+
+  @Test
+  public void testInvalidOrderFailsItsFuture() throws Exception {
+    try {
+      instance.buyAsync("DBA", 1).get();
+      fail("Should not have bought an unknown company");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof InvalidCodeException);
+    }
+  }
+
+  @Test
+  public void testFailedAppendHandsBackUnits() throws Exception {
+    instance.sellAsync("CBA", 10).get();
+    tradingJournal.close();
+    try {
+      instance.buyAsync("CBA", 4).get();
+      fail("Should not have bought once the journal was closed");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertEquals(10, instance.getOrderBookTotalVolume().get("CBA").intValue());
+  }
+}
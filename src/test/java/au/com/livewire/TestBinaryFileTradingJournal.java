@@ -0,0 +1,219 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TestBinaryFileTradingJournal {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  BinaryFileTradingJournal tradingJournal;
+  File journalFile;
+
+  @Before
+  public void setup() {
+    journalFile = new File(folder.getRoot(), "journal.bin");
+    tradingJournal = new BinaryFileTradingJournal(journalFile, new File(folder.getRoot(), "journal.lock"));
+  }
+
+  @After
+  public void teardown() throws IOException {
+    tradingJournal.close();
+  }
+
+  @Test
+  public void testAppendingThenListing() throws IOException {
+    long when = 1023439393000L;
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when), CompanyCode.NAB, 58, 5));
+    tradingJournal.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.BUY, new Date(when + 2), CompanyCode.QAN, 43, null));
+
+    assertEquals(BinaryFileTradingJournal.HEADER_SIZE + 2 * BinaryFileTradingJournal.RECORD_SIZE, journalFile.length());
+
+    List<Trade> result = tradingJournal.list();
+    assertEquals(2, result.size());
+    assertEquals(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when), CompanyCode.NAB, 58, 5), result.get(0));
+    assertEquals(ExchangeCode.CXA, result.get(1).getExchangeCode());
+    assertEquals(Trade.TransactionType.BUY, result.get(1).getTransactionType());
+    assertEquals(CompanyCode.QAN, result.get(1).getCompanyCode());
+    assertEquals(43, result.get(1).getQuantity().intValue());
+    assertNull(result.get(1).getBrokerage());
+
+    final List<Trade> replayed = new ArrayList<>();
+    tradingJournal.replay((exchangeCode, transactionType, timestamp, companyCode, quantity, brokerage) ->
+        replayed.add(new Trade(exchangeCode, transactionType, new Date(timestamp), companyCode, quantity, brokerage)));
+    assertEquals(result.get(0), replayed.get(0));
+    assertEquals(0, replayed.get(1).getBrokerage().intValue());
+  }
+
+  @Test
+  public void testStreamingOneCompany() throws IOException {
+    long when = 1023439393000L;
+    for (int i = 0; i < 5000; i++) {
+      CompanyCode companyCode = i % 2 == 0 ? CompanyCode.CBA : CompanyCode.QAN;
+      tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when + i), companyCode, i, 5));
+    }
+    final long[] units = new long[2];
+    tradingJournal.forEach(ExchangeCode.ASX, CompanyCode.QAN, trade -> {
+      units[0]++;
+      units[1] += trade.getQuantity();
+    });
+    assertEquals(2500L, units[0]);
+    assertEquals(2500L * 2500L, units[1]);
+    try (Stream<Trade> trades = tradingJournal.stream(ExchangeCode.CXA, null)) {
+      assertEquals(0L, trades.count());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testListingTruncatedJournal() throws IOException {
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.NAB, 58, 5));
+    tradingJournal.close();
+    try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+    tradingJournal.list();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testListingCsvJournal() throws IOException {
+    try (FileWriter writer = new FileWriter(journalFile)) {
+      writer.append("ASX,BUY,1023439393000,NAB,23,7\n");
+    }
+    tradingJournal.list();
+  }
+
+  @Test
+  public void testAppendingAfterTornRecord() throws IOException {
+    long when = 1023439393000L;
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when), CompanyCode.NAB, 58, 5));
+    tradingJournal.close();
+    try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+      raf.setLength(raf.length() + 7);
+    }
+    final Trade trade = new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(when + 1), CompanyCode.NAB, 8, 5);
+    tradingJournal.add(trade);
+
+    assertEquals(BinaryFileTradingJournal.HEADER_SIZE + 2 * BinaryFileTradingJournal.RECORD_SIZE, journalFile.length());
+    List<Trade> result = tradingJournal.list();
+    assertEquals(2, result.size());
+    assertEquals(trade, result.get(1));
+  }
+
+  @Test
+  public void testRefusingToAppendToCsvJournal() throws IOException {
+    try (FileWriter writer = new FileWriter(journalFile)) {
+      writer.append("ASX,BUY,1023439393000,NAB,23,7\n");
+    }
+    final long length = journalFile.length();
+    try {
+      tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.NAB, 58, 5));
+      fail("Appended binary record to csv journal");
+    } catch (IllegalArgumentException expected) {
+      // as it should be.
+    }
+    assertEquals(length, journalFile.length());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRefusingToAppendToOtherVersion() throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+      raf.writeInt(BinaryFileTradingJournal.MAGIC);
+      raf.writeShort(BinaryFileTradingJournal.FORMAT_VERSION + 1);
+      raf.writeShort(BinaryFileTradingJournal.RECORD_SIZE + 4);
+    }
+    tradingJournal.addAll(Collections.singletonList(
+        new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.NAB, 58, 5)));
+  }
+
+  @Test
+  public void testConvertingCsvToBinaryAndBack() throws IOException {
+    File csvFile = new File(folder.getRoot(), "journal.csv");
+    try (FileWriter writer = new FileWriter(csvFile)) {
+      writer.append("ASX,SELL,1023439393000,NAB,23,7\n");
+      writer.append("CXA,SELL,1023439393001,CBA,11,5\n");
+      writer.append("ASX,BUY,1023439393002,NAB,3,7\n");
+    }
+    assertEquals(3, JournalConverter.convert(new SimpleFileBasedTradingJournal(csvFile), tradingJournal));
+
+    File roundTripFile = new File(folder.getRoot(), "round-trip.csv");
+    AppendOnlyFileTradingJournal roundTrip = new AppendOnlyFileTradingJournal(
+        roundTripFile, new File(folder.getRoot(), "round-trip.lock"), SyncPolicy.NEVER, 0);
+    assertEquals(3, JournalConverter.convert(tradingJournal, roundTrip));
+    roundTrip.close();
+
+    assertEquals(
+        new String(Files.readAllBytes(csvFile.toPath())),
+        new String(Files.readAllBytes(roundTripFile.toPath())));
+  }
+
+  @Test
+  public void testListingCompaniesById() throws IOException {
+    tradingJournal.close();
+    final InstrumentRegistry instruments = new InstrumentRegistry(Arrays.asList("BHP"));
+    tradingJournal = new BinaryFileTradingJournal(
+        journalFile, new File(folder.getRoot(), "journal.lock"), LockMode.FILE, instruments);
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), instruments.lookup("BHP"), 8, 5));
+    assertEquals(
+        Arrays.asList("QAN", "CBA", "NAB", "BHP"),
+        BinaryFileTradingJournal.listedInstruments(journalFile));
+    tradingJournal.close();
+
+    // appending a company keeps the ids of the others.
+    final InstrumentRegistry appended = new InstrumentRegistry(Arrays.asList("BHP", "WBC"));
+    tradingJournal = new BinaryFileTradingJournal(
+        journalFile, new File(folder.getRoot(), "journal.lock"), LockMode.FILE, appended);
+    assertSame(appended.lookup("BHP"), tradingJournal.list().get(0).getCompanyCode());
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(), appended.lookup("WBC"), 3, 5));
+    assertEquals(
+        Arrays.asList("QAN", "CBA", "NAB", "BHP", "WBC"),
+        BinaryFileTradingJournal.listedInstruments(journalFile));
+    assertEquals(2, tradingJournal.list().size());
+  }
+
+  @Test
+  public void testRefusingReorderedCompanies() throws IOException {
+    tradingJournal.close();
+    final InstrumentRegistry instruments = new InstrumentRegistry(Arrays.asList("BHP"));
+    tradingJournal = new BinaryFileTradingJournal(
+        journalFile, new File(folder.getRoot(), "journal.lock"), LockMode.FILE, instruments);
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), instruments.lookup("BHP"), 8, 5));
+    tradingJournal.close();
+
+    final InstrumentRegistry reordered = new InstrumentRegistry(Arrays.asList("WBC", "BHP"));
+    tradingJournal = new BinaryFileTradingJournal(
+        journalFile, new File(folder.getRoot(), "journal.lock"), LockMode.FILE, reordered);
+    try {
+      tradingJournal.list();
+      fail("Listed BHP trades as WBC");
+    } catch (IllegalStateException expected) {
+      // as it should be.
+    }
+    try {
+      tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(), reordered.lookup("WBC"), 3, 5));
+      fail("Journaled WBC trade as BHP");
+    } catch (IllegalStateException expected) {
+      // as it should be.
+    }
+    assertEquals(BinaryFileTradingJournal.HEADER_SIZE + BinaryFileTradingJournal.RECORD_SIZE, journalFile.length());
+  }
+}
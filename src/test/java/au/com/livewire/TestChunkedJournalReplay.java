@@ -0,0 +1,106 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestChunkedJournalReplay {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void teardown() {
+    pool.shutdown();
+  }
+
+  private File writeJournal(List<String> lines) throws IOException {
+    File result = folder.newFile();
+    try (FileWriter writer = new FileWriter(result)) {
+      for (String line : lines) {
+        writer.append(line);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testChunksMatchReplay() throws IOException {
+    final Random random = new Random(42L);
+    final int[][] held = new int[ExchangeCode.values().length][CompanyCode.values().length];
+    final List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      final ExchangeCode exchangeCode = ExchangeCode.values()[random.nextInt(ExchangeCode.values().length)];
+      final CompanyCode companyCode = CompanyCode.values()[random.nextInt(CompanyCode.values().length)];
+      final int units = held[exchangeCode.ordinal()][companyCode.ordinal()];
+      final boolean buy = units > 0 && random.nextBoolean();
+      final int quantity = buy ? 1 + random.nextInt(units) : 1 + random.nextInt(50);
+      held[exchangeCode.ordinal()][companyCode.ordinal()] += buy ? -quantity : quantity;
+      lines.add(String.format("%s,%s,%d,%s,%d,%d\n",
+          exchangeCode, buy ? "BUY" : "SELL", 1023439393000L + i, companyCode, quantity, 5 + i % 3));
+    }
+    final File file = writeJournal(lines);
+
+    final PositionBook expected = PositionBook.fromJournal(new SimpleFileBasedTradingJournal(file));
+    // small chunks, so there are as many as the pool has threads.
+    final PositionBook result = new ChunkedJournalReplay(pool, 64L).positions(file);
+    for (ExchangeCode exchangeCode : ExchangeCode.values()) {
+      assertEquals(expected.getVolumes(exchangeCode), result.getVolumes(exchangeCode));
+      assertEquals(expected.getBrokerageCents(exchangeCode), result.getBrokerageCents(exchangeCode));
+    }
+  }
+
+  @Test
+  public void testReportingNegativeLine() throws IOException {
+    final List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      lines.add(String.format("ASX,SELL,%d,QAN,1,5\n", 1023439393000L + i));
+    }
+    // negative only in light of the chunks before it.
+    lines.add("ASX,BUY,1023439394000,QAN,101,5\n");
+    lines.add("ASX,SELL,1023439394001,QAN,50,5\n");
+    try {
+      new ChunkedJournalReplay(pool, 64L).positions(writeJournal(lines));
+      fail("expected negative quantity to be reported");
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().startsWith("Corrupt journal! At line 101,"));
+    }
+  }
+
+  @Test
+  public void testReportingLineOfInvalidEntry() throws IOException {
+    final List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      lines.add(String.format("CXA,SELL,%d,NAB,2,5\n", 1023439393000L + i));
+    }
+    lines.set(73, "CXA,SELL,1023439393073,QFY,2,5\n");
+    try {
+      new ChunkedJournalReplay(pool, 64L).positions(writeJournal(lines));
+      fail("expected invalid company code to be reported");
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().endsWith("at line 74"));
+    }
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void testVolumeTooLargeForPositionBook() throws IOException {
+    final List<String> lines = new ArrayList<>();
+    lines.add(String.format("ASX,SELL,1023439393000,QAN,%d,5\n", Integer.MAX_VALUE));
+    lines.add("ASX,SELL,1023439393001,QAN,1,5\n");
+    new ChunkedJournalReplay(pool, 64L).positions(writeJournal(lines));
+  }
+}
@@ -0,0 +1,497 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestFileBasedTradingJournal {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  FileBasedTradingJournal tradingJournal;
+  File lockFile;
+
+  @Before
+  public void setup() {
+    lockFile = new File(folder.getRoot(), "journal.lock");
+    tradingJournal = new FileBasedTradingJournal(new File(folder.getRoot(), "journal.csv"), lockFile);
+  }
+
+  @Test
+  public void testLockingIsReentrant() throws Exception {
+    tradingJournal.lock(1000L);
+    assertTrue(lockFile.exists());
+    tradingJournal.lock(1000L);
+    tradingJournal.releaseLock();
+    assertTrue(tradingJournal.isLocked());
+    assertTrue(lockFile.exists());
+    tradingJournal.releaseLock();
+    assertFalse(tradingJournal.isLocked());
+    assertFalse(lockFile.exists());
+  }
+
+  @Test
+  public void testOtherThreadsWaitWithoutPolling() throws Exception {
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    final long[] elapsed = new long[1];
+    tradingJournal.lock(5000L);
+    Thread other = new Thread(() -> {
+      long then = System.currentTimeMillis();
+      try {
+        tradingJournal.lock(200L);
+      } catch (Exception e) {
+        failure.set(e);
+      }
+      elapsed[0] = System.currentTimeMillis() - then;
+    });
+    other.start();
+    other.join();
+    // gave up after its own timeout, rather than in 500ms steps.
+    assertTrue(elapsed[0] < 500L);
+    assertTrue(failure.get() instanceof JournalLockedException);
+    assertTrue(failure.get().getMessage().contains(Thread.currentThread().getName()));
+    tradingJournal.releaseLock();
+  }
+
+  @Test
+  public void testLockIsHandedOverWithinTheProcess() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final FileBasedTradingJournal sameLockFile;
+    sameLockFile = new FileBasedTradingJournal(new File(folder.getRoot(), "other.csv"), lockFile);
+    tradingJournal.lock(5000L);
+    Thread other = new Thread(() -> {
+      try {
+        sameLockFile.lock(5000L);
+        // still holding the lock file our predecessor took.
+        assertTrue(lockFile.exists());
+        sameLockFile.releaseLock();
+      } catch (Exception | AssertionError e) {
+        failure.set(e);
+      }
+    });
+    other.start();
+    while (!other.getState().equals(Thread.State.TIMED_WAITING)) {
+      Thread.sleep(1L);
+    }
+    tradingJournal.releaseLock();
+    other.join();
+    assertEquals(null, failure.get());
+    assertFalse(lockFile.exists());
+  }
+
+  @Test
+  public void testCrossProcessLockOnlyTakenWhenNotHandedOver() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final int[] acquired = new int[1];
+    final boolean[] held = new boolean[1];
+    final InProcessJournalLock journalLock = new InProcessJournalLock(new CrossProcessLock() {
+      @Override
+      public void acquire(long leaseMs) {
+        acquired[0]++;
+        held[0] = true;
+      }
+
+      @Override
+      public void renew(long leaseMs) {
+      }
+
+      @Override
+      public void release() {
+        held[0] = false;
+      }
+
+      @Override
+      public boolean isLocked() {
+        return held[0];
+      }
+    });
+    journalLock.lock(5000L);
+    Thread queued = new Thread(() -> {
+      try {
+        journalLock.lock(5000L);
+        journalLock.unlock();
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    queued.start();
+    while (!queued.getState().equals(Thread.State.TIMED_WAITING)) {
+      Thread.sleep(1L);
+    }
+    journalLock.unlock();
+    queued.join();
+    assertEquals(null, failure.get());
+    // handed over whilst queued, then given up by the last of them.
+    assertEquals(1, acquired[0]);
+    assertFalse(held[0]);
+
+    // nobody queued, so a late comer takes it afresh.
+    journalLock.lock(5000L);
+    assertEquals(2, acquired[0]);
+    journalLock.unlock();
+    assertFalse(journalLock.isLocked());
+  }
+
+  @Test(expected = IllegalMonitorStateException.class)
+  public void testReleasingAnotherThreadsLock() throws Exception {
+    final AtomicReference<Exception> failure = new AtomicReference<>();
+    tradingJournal.lock(5000L);
+    Thread other = new Thread(() -> {
+      try {
+        tradingJournal.releaseLock();
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    other.start();
+    other.join();
+    assertTrue(lockFile.exists());
+    tradingJournal.releaseLock();
+    throw failure.get();
+  }
+
+  @Test
+  public void testWaitingForAnotherProcess() throws Exception {
+    FileWriter lockWriter = new FileWriter(lockFile, false);
+    lockWriter.append(String.format("%d", System.currentTimeMillis() + 60000L)).append("\n");
+    lockWriter.close();
+    assertNotNull(tradingJournal.getLockExpiry());
+    try {
+      tradingJournal.lock(1000L);
+      fail("Should not have acquired a journal locked by another process");
+    } catch (JournalLockedException expected) {
+      // lock file belongs to somebody else, so must be left alone.
+      assertTrue(lockFile.exists());
+    }
+    assertTrue(lockFile.delete());
+    assertFalse(tradingJournal.isLocked());
+  }
+
+  @Test
+  public void testLeaseIsOnlyRemovedByItsHolder() throws Exception {
+    final LeaseFileLock lease = new LeaseFileLock(lockFile);
+    lease.acquire(1000L);
+    // our lease lapses and somebody else takes the lock.
+    FileWriter lockWriter = new FileWriter(lockFile, false);
+    lockWriter.append(String.format("%d", System.currentTimeMillis() + 60000L)).append("\n");
+    lockWriter.close();
+    lease.release();
+    assertTrue(lockFile.exists());
+  }
+
+  @Test
+  public void testExpiredLeaseIsOnlyTakenOverOnce() throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger acquired = new AtomicInteger();
+    final List<Thread> threads = new ArrayList<>();
+    FileWriter lockWriter = new FileWriter(lockFile, false);
+    lockWriter.append(String.format("%d", System.currentTimeMillis() - 1000L)).append("\n");
+    lockWriter.close();
+    for (int i = 0; i < 4; i++) {
+      // a lease of its own each, as though in a process of its own.
+      final LeaseFileLock lease = new LeaseFileLock(lockFile);
+      threads.add(new Thread(() -> {
+        try {
+          start.await();
+          lease.acquire(5000L);
+          acquired.incrementAndGet();
+        } catch (Exception expected) {
+          // somebody else took it over.
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, acquired.get());
+    assertTrue(lockFile.exists());
+  }
+
+  @Test
+  public void testChannelLocking() throws Exception {
+    final File channelLockFile = new File(folder.getRoot(), "channel.lock");
+    final FileBasedTradingJournal channelLocked;
+    channelLocked = new FileBasedTradingJournal(
+        new File(folder.getRoot(), "journal.csv"), channelLockFile, LockMode.CHANNEL);
+    assertFalse(channelLocked.isLocked());
+    channelLocked.lock(1000L);
+    assertTrue(channelLocked.isLocked());
+    channelLocked.lock(1000L);
+    channelLocked.releaseLock();
+    channelLocked.releaseLock();
+    assertFalse(channelLocked.isLocked());
+    // the lock file is left in place, as others may have it open.
+    assertTrue(channelLockFile.exists());
+    channelLocked.lock(1000L);
+    assertTrue(channelLocked.isLocked());
+    channelLocked.releaseLock();
+  }
+
+  @Test
+  public void testReadersShareTheJournal() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    tradingJournal.lockShared(5000L);
+    Thread reader = new Thread(() -> {
+      try {
+        tradingJournal.lockShared(200L);
+        tradingJournal.releaseSharedLock();
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    reader.start();
+    reader.join();
+    assertEquals(null, failure.get());
+    assertTrue(lockFile.exists());
+
+    Thread writer = new Thread(() -> {
+      try {
+        tradingJournal.lock(200L);
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    writer.start();
+    writer.join();
+    assertTrue(failure.get() instanceof JournalLockedException);
+    tradingJournal.releaseSharedLock();
+    assertFalse(tradingJournal.isLocked());
+    assertFalse(lockFile.exists());
+  }
+
+  @Test
+  public void testAppendersExcludeOtherProcesses() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final List<String> calls = new ArrayList<>();
+    final InProcessJournalLock journalLock = new InProcessJournalLock(new CrossProcessLock() {
+      @Override
+      public void acquire(long leaseMs) {
+        calls.add("acquire");
+      }
+
+      @Override
+      public void acquireShared(long leaseMs) {
+        calls.add("acquireShared");
+      }
+
+      @Override
+      public void renew(long leaseMs) {
+      }
+
+      @Override
+      public void release() {
+        calls.add("release");
+      }
+
+      @Override
+      public boolean isLocked() {
+        return false;
+      }
+    });
+    journalLock.lockForAppend(5000L);
+    Thread appender = new Thread(() -> {
+      try {
+        // other threads of ours append alongside.
+        journalLock.lockForAppend(200L);
+        journalLock.unlockForAppend();
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    appender.start();
+    appender.join();
+    journalLock.unlockForAppend();
+    assertEquals(null, failure.get());
+    // whereas other processes are kept out altogether.
+    assertEquals("[acquire, release]", calls.toString());
+  }
+
+  @Test
+  public void testAppenderFollowsReaders() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final File channelLockFile = new File(folder.getRoot(), "upgrade.lock");
+    final FileBasedTradingJournal channelLocked;
+    channelLocked = new FileBasedTradingJournal(
+        new File(folder.getRoot(), "journal.csv"), channelLockFile, LockMode.CHANNEL);
+    channelLocked.lockShared(5000L);
+    Thread appender = new Thread(() -> {
+      try {
+        channelLocked.lockForAppend(5000L);
+        channelLocked.releaseAppendLock();
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    appender.start();
+    while (!appender.getState().equals(Thread.State.TIMED_WAITING)) {
+      Thread.sleep(1L);
+    }
+    // the cross process lock is only taken exclusively once the reader is done.
+    channelLocked.releaseSharedLock();
+    appender.join();
+    assertEquals(null, failure.get());
+    assertFalse(channelLocked.isLocked());
+  }
+
+  @Test
+  public void testWriterFollowsReaders() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final File channelLockFile = new File(folder.getRoot(), "upgrade.lock");
+    final FileBasedTradingJournal channelLocked;
+    channelLocked = new FileBasedTradingJournal(
+        new File(folder.getRoot(), "journal.csv"), channelLockFile, LockMode.CHANNEL);
+    channelLocked.lockShared(5000L);
+    Thread writer = new Thread(() -> {
+      try {
+        channelLocked.lock(5000L);
+        assertTrue(channelLocked.isLocked());
+        channelLocked.releaseLock();
+      } catch (Exception | AssertionError e) {
+        failure.set(e);
+      }
+    });
+    writer.start();
+    while (!writer.getState().equals(Thread.State.TIMED_WAITING)) {
+      Thread.sleep(1L);
+    }
+    channelLocked.releaseSharedLock();
+    writer.join();
+    assertEquals(null, failure.get());
+    assertFalse(channelLocked.isLocked());
+  }
+
+  @Test
+  public void testUpgradingLockIsRefused() throws Exception {
+    tradingJournal.lockShared(5000L);
+    final long then = System.currentTimeMillis();
+    try {
+      tradingJournal.lockForAppend(1000L);
+      fail("Appending whilst reading should be refused");
+    } catch (IllegalStateException expected) {
+      // rather than waiting upon ourselves.
+    }
+    try {
+      tradingJournal.lock(1000L);
+      fail("Locking exclusively whilst reading should be refused");
+    } catch (IllegalStateException expected) {
+      // nor can the lock be upgraded.
+    }
+    assertTrue(System.currentTimeMillis() - then < 1000L);
+    tradingJournal.releaseSharedLock();
+
+    tradingJournal.lockForAppend(1000L);
+    // appenders may read, and append again, but not lock exclusively.
+    tradingJournal.lockShared(1000L);
+    tradingJournal.lockForAppend(1000L);
+    try {
+      tradingJournal.lock(1000L);
+      fail("Locking exclusively whilst appending should be refused");
+    } catch (IllegalStateException expected) {
+      // as it should be.
+    }
+    tradingJournal.releaseAppendLock();
+    tradingJournal.releaseSharedLock();
+    tradingJournal.releaseAppendLock();
+    assertFalse(tradingJournal.isLocked());
+    assertFalse(lockFile.exists());
+  }
+
+  @Test
+  public void testSlowCrossProcessLockDoesNotHoldUpReleases() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final CountDownLatch renewing = new CountDownLatch(1);
+    final CountDownLatch renewed = new CountDownLatch(1);
+    final boolean[] held = new boolean[1];
+    final InProcessJournalLock journalLock = new InProcessJournalLock(new CrossProcessLock() {
+      @Override
+      public void acquire(long leaseMs) {
+        held[0] = true;
+      }
+
+      @Override
+      public void renew(long leaseMs) {
+        // as slow as a lease held up by the filesystem.
+        renewing.countDown();
+        try {
+          renewed.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public void release() {
+        held[0] = false;
+      }
+
+      @Override
+      public boolean isLocked() {
+        return held[0];
+      }
+    });
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final boolean[] released = new boolean[1];
+    Thread releaser = new Thread(() -> {
+      try {
+        journalLock.lockForAppend(5000L);
+        locked.countDown();
+        release.await();
+        journalLock.unlockForAppend();
+        released[0] = true;
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    releaser.start();
+    locked.await();
+    Thread appender = new Thread(() -> {
+      try {
+        journalLock.lockForAppend(5000L);
+        journalLock.unlockForAppend();
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    appender.start();
+    renewing.await();
+    release.countDown();
+    releaser.join(1000L);
+    // released whilst the other appender is still renewing.
+    assertTrue(released[0]);
+    assertTrue(held[0]);
+    renewed.countDown();
+    appender.join();
+    assertEquals(null, failure.get());
+    assertFalse(held[0]);
+    assertFalse(journalLock.isLocked());
+  }
+
+  @Test(expected = IllegalMonitorStateException.class)
+  public void testReleasingSharedLockNotHeld() {
+    tradingJournal.releaseSharedLock();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExcessiveTimeout() throws IOException, JournalLockedException {
+    tradingJournal.lock(60000L);
+  }
+}
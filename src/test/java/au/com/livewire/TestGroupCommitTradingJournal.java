@@ -0,0 +1,83 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestGroupCommitTradingJournal {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  GroupCommitTradingJournal tradingJournal;
+
+  @Before
+  public void setup() {
+    tradingJournal = new GroupCommitTradingJournal(
+        new File(folder.getRoot(), "journal.csv"), new File(folder.getRoot(), "journal.lock"), SyncPolicy.EVERY_TRADE, 1);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    tradingJournal.close();
+  }
+
+  @Test
+  public void testConcurrentAppends() throws Exception {
+    final int threadCount = 8;
+    final int tradesPerThread = 250;
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < tradesPerThread; i++) {
+          tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 1, 5));
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    List<Trade> result = tradingJournal.list();
+    assertEquals(threadCount * tradesPerThread, result.size());
+    assertEquals(threadCount * tradesPerThread,
+        PositionBook.fromTrades(result).getAvailable(ExchangeCode.ASX, CompanyCode.CBA));
+  }
+
+  @Test
+  public void testClosingWhilstWriting() throws Exception {
+    final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      futures.add(tradingJournal.addAsync(
+          new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 1, 5)));
+    }
+    tradingJournal.close();
+    // everything queued before closing is written, rather than lost with the channel.
+    for (CompletableFuture<Void> future : futures) {
+      future.get();
+    }
+    assertEquals(futures.size(), new SimpleFileBasedTradingJournal(new File(folder.getRoot(), "journal.csv")).list().size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testAppendingAfterClose() throws IOException {
+    tradingJournal.close();
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 1, 5));
+  }
+}
@@ -0,0 +1,64 @@
+package au.com.livewire;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestInstrumentRegistry {
+
+  @Test
+  public void testRegisteringNewCompany() {
+    final InstrumentRegistry instruments = new InstrumentRegistry(Arrays.asList("bhp", " BHP "));
+    final CompanyCode bhp = instruments.lookup("BHP");
+    assertEquals(3, bhp.ordinal());
+    assertEquals(4, instruments.size());
+    assertEquals("BHP", bhp.name());
+    assertSame(bhp, instruments.get(bhp.ordinal()));
+    assertSame(bhp, CompanyCode.valueOf("BHP", instruments));
+    assertSame(CompanyCode.QAN, instruments.get(0));
+    // nobody else sees it.
+    assertNull(InstrumentRegistry.DEFAULT.lookup("BHP"));
+    assertEquals(3, CompanyCode.values().length);
+  }
+
+  @Test
+  public void testLookingUpFromLine() {
+    final String line = "ASX,BUY,1023439393000,nab,4,5";
+    assertSame(CompanyCode.NAB, InstrumentRegistry.DEFAULT.lookup(line, 22, 25));
+    assertNull(InstrumentRegistry.DEFAULT.lookup(line, 22, 24));
+    assertNull(InstrumentRegistry.DEFAULT.lookup("QFY"));
+    assertNull(InstrumentRegistry.DEFAULT.lookup(line, 4, 4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectingSymbol() {
+    new InstrumentRegistry(Arrays.asList("BH-P"));
+  }
+
+  @Test
+  public void testTradingManyCompanies() {
+    final List<String> symbols = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      symbols.add("T" + i);
+    }
+    final InstrumentRegistry instruments = new InstrumentRegistry(symbols);
+    final PositionBook book = new PositionBook(instruments);
+    final CompanyCode last = instruments.lookup("T99");
+    final Trade trade = Trade.fromCsv(String.format("CXA,SELL,1023439393000,%s,9,5", last.name()), instruments);
+    assertSame(last, trade.getCompanyCode());
+    // beyond the first page of the book.
+    assertTrue(last.ordinal() >= 64);
+    book.apply(trade);
+    book.apply(new Trade(ExchangeCode.CXA, Trade.TransactionType.BUY, new Date(), last, 4, 5));
+    assertEquals(5, book.getAvailable(ExchangeCode.CXA, last));
+    assertEquals(0, book.getAvailable(ExchangeCode.ASX, last));
+    assertEquals(5, book.getVolumes(ExchangeCode.CXA).get(last.name()).intValue());
+  }
+}
@@ -1,16 +1,32 @@
 package au.com.livewire;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestJournalBackedStockExchange {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   TradingJournal tradingJournal;
   JournalBackedStockExchange instance;
 
@@ -50,6 +66,20 @@ public class TestJournalBackedStockExchange {
     instance.buy("CBA", 101);
   }
 
+  @Test
+  public void testRefusedBuyLeavesVolumesAlone() throws IOException {
+    instance.sell("CBA", 100);
+    try {
+      instance.buy("NAB", 1);
+      fail("Should not have bought a company never sold");
+    } catch (InsufficentUnitsException expected) {
+      // nothing to buy.
+    }
+    Map<String, Integer> result = instance.getOrderBookTotalVolume();
+    assertEquals(1, result.size());
+    assertEquals(100, result.get("CBA").intValue());
+  }
+
   @Test(expected = InvalidCodeException.class)
   public void testBuyingWithInvalidCompanyCode() throws IOException {
     instance.sell("CBA", 100);
@@ -62,4 +92,301 @@ public class TestJournalBackedStockExchange {
     assertNotNull(result);
     assertEquals(0.00D, result.doubleValue(), 0.000001D);
   }
+
+  @Test
+  public void testAccumulatingTradingCosts() throws IOException {
+    instance.sell("CBA", 100);
+    assertEquals(new BigDecimal("0.03"), instance.getTradingCosts());
+    instance.buy("CBA", 40);
+    instance.sell("QAN", 10);
+    instance.buy("CBA", 60);
+    assertEquals(new BigDecimal("0.12"), instance.getTradingCosts());
+
+    // the brokerage charged changes part way through trading.
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, tradingJournal, 250);
+    instance.buy("QAN", 10);
+    assertEquals(new BigDecimal("2.62"), instance.getTradingCosts());
+    // nor does another exchange share them.
+    final JournalBackedStockExchange other = new JournalBackedStockExchange(ExchangeCode.CXA, tradingJournal, 3);
+    assertEquals(new BigDecimal("0.00"), other.getTradingCosts());
+  }
+
+  @Test
+  public void testTradingCostsAfterRestart() throws IOException {
+    final File journalFile = new File(folder.getRoot(), "journal.csv");
+    final File lockFile = new File(folder.getRoot(), "journal.lock");
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, new FileBasedTradingJournal(journalFile, lockFile), 7);
+    instance.sell("NAB", 20);
+    instance.buy("NAB", 5);
+    final JournalBackedStockExchange other;
+    other = new JournalBackedStockExchange(ExchangeCode.CXA, new FileBasedTradingJournal(journalFile, lockFile), 11);
+    other.sell("NAB", 1);
+    instance.buy("NAB", 15);
+    final BigDecimal before = instance.getTradingCosts();
+    assertEquals(new BigDecimal("0.21"), before);
+
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, new FileBasedTradingJournal(journalFile, lockFile), 9);
+    assertEquals(before, instance.getTradingCosts());
+    long cents = 0;
+    for (Trade trade : new FileBasedTradingJournal(journalFile, lockFile).list()) {
+      if (trade.getExchangeCode() == ExchangeCode.ASX) {
+        cents += trade.getBrokerage();
+      }
+    }
+    assertEquals(BigDecimal.valueOf(cents, 2), instance.getTradingCosts());
+    instance.sell("NAB", 1);
+    assertEquals(new BigDecimal("0.30"), instance.getTradingCosts());
+  }
+
+  @Test
+  public void testReportsShareTheJournalWhilstBuysWait() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final CountDownLatch holding = new CountDownLatch(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final File journalFile = new File(folder.getRoot(), "journal.csv");
+    final FileBasedTradingJournal journal = new FileBasedTradingJournal(
+        journalFile, new File(folder.getRoot(), "journal.lock")) {
+      @Override
+      public void lockShared(final long timeoutMs) throws JournalLockedException, IOException {
+        super.lockShared(timeoutMs);
+        if (!Thread.currentThread().getName().startsWith("report")) {
+          return;
+        }
+        holding.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, journal, 3);
+    instance.sell("CBA", 10);
+    final List<Thread> reports = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      reports.add(new Thread(() -> {
+        try {
+          assertNotNull(instance.getOrderBookTotalVolume().get("CBA"));
+        } catch (Exception | AssertionError e) {
+          failure.set(e);
+        }
+      }, "report-" + i));
+    }
+    reports.forEach(Thread::start);
+    // both reports hold the journal at once.
+    assertTrue(holding.await(5L, TimeUnit.SECONDS));
+
+    final boolean[] bought = new boolean[1];
+    final Thread buyer = new Thread(() -> {
+      try {
+        instance.buy("CBA", 4);
+        bought[0] = true;
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    });
+    buyer.start();
+    buyer.join(200L);
+    assertFalse(bought[0]);
+    assertEquals(1, journal.list().size());
+
+    release.countDown();
+    for (Thread report : reports) {
+      report.join();
+    }
+    buyer.join();
+    assertEquals(null, failure.get());
+    assertTrue(bought[0]);
+    assertEquals(6, instance.getOrderBookTotalVolume().get("CBA").intValue());
+  }
+
+  @Test
+  public void testConcurrentBuysNeverOversell() throws Exception {
+    final CompanyCode[] companies = CompanyCode.values();
+    final AtomicIntegerArray bought = new AtomicIntegerArray(companies.length);
+    final List<Thread> threads = new ArrayList<>();
+    for (CompanyCode companyCode : companies) {
+      instance.sell(companyCode.name(), 500);
+    }
+    for (int t = 0; t < 8; t++) {
+      final int offset = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 300; i++) {
+          final int company = (offset + i) % companies.length;
+          try {
+            instance.buy(companies[company].name(), 2);
+            bought.addAndGet(company, 2);
+          } catch (InsufficentUnitsException expected) {
+            // sold out.
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Map<String, Integer> result = instance.getOrderBookTotalVolume();
+    for (int company = 0; company < companies.length; company++) {
+      assertEquals(500, bought.get(company));
+      assertEquals(0, result.get(companies[company].name()).intValue());
+    }
+    // the journal itself never goes negative either.
+    assertNotNull(PositionBook.fromJournal(tradingJournal));
+  }
+
+  @Test
+  public void testBuyReservesUnitsBeforeLocking() throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final CountDownLatch append = new CountDownLatch(1);
+    final FileBasedTradingJournal journal = new FileBasedTradingJournal(
+        new File(folder.getRoot(), "journal.csv"), new File(folder.getRoot(), "journal.lock")) {
+      @Override
+      public void lockForAppend(final long timeoutMs) throws JournalLockedException, IOException {
+        if ("buyer".equals(Thread.currentThread().getName())) {
+          try {
+            append.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        super.lockForAppend(timeoutMs);
+      }
+    };
+    final PositionCheckpoint checkpoint;
+    checkpoint = new PositionCheckpoint(new File(folder.getRoot(), "journal.checkpoint"), 1000);
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, journal, 3, null, checkpoint);
+    instance.sell("CBA", 10);
+    final Thread buyer = new Thread(() -> {
+      try {
+        instance.buy("CBA", 8);
+      } catch (Exception e) {
+        failure.set(e);
+      }
+    }, "buyer");
+    buyer.start();
+    while (instance.getOrderBookVolume(CompanyCode.CBA) > 2L) {
+      Thread.sleep(1L);
+    }
+    // the units are already set aside, so a rival buy is refused without waiting.
+    try {
+      instance.buy("CBA", 5);
+      fail("Bought units set aside for another buy");
+    } catch (InsufficentUnitsException expected) {
+      // only 2 left.
+    }
+    // nor may a checkpoint record units set aside for a buy which may yet fail.
+    assertFalse(instance.checkpoint());
+
+    append.countDown();
+    buyer.join();
+    assertEquals(null, failure.get());
+    assertEquals(2L, instance.getOrderBookVolume(CompanyCode.CBA));
+    assertEquals(2, journal.list().size());
+    assertTrue(instance.checkpoint());
+  }
+
+  @Test
+  public void testFailedAppendHandsBackUnits() throws IOException {
+    tradingJournal = new InMemoryTradingJournal() {
+      @Override
+      public synchronized void add(Trade trade) throws IOException {
+        if (trade.getTransactionType() == Trade.TransactionType.BUY) {
+          throw new IOException("disk full");
+        }
+        super.add(trade);
+      }
+    };
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, tradingJournal, 3);
+    instance.sell("QAN", 10);
+    try {
+      instance.buy("QAN", 4);
+      fail("Purchase should not succeed without making it into the journal");
+    } catch (IOException expected) {
+      assertEquals("disk full", expected.getMessage());
+    }
+    assertEquals(10, instance.getOrderBookTotalVolume().get("QAN").intValue());
+    assertEquals(0.03D, instance.getTradingCosts().doubleValue(), 0.001D);
+  }
+
+  @Test
+  public void testSubmittingBatch() throws IOException {
+    instance.sell("QAN", 5);
+    List<OrderResult> result = instance.submitBatch(Arrays.asList(
+        Order.sell("CBA", 10),
+        Order.buy("CBA", 4),
+        Order.buy("DBA", 1),
+        Order.buy("QAN", 6),
+        Order.buy("QAN", 2),
+        Order.sell("NAB", 0),
+        Order.buy("cba", 6)
+    ));
+    assertEquals(7, result.size());
+    assertEquals(OrderResult.Outcome.ACCEPTED, result.get(0).getOutcome());
+    assertEquals(OrderResult.Outcome.ACCEPTED, result.get(1).getOutcome());
+    assertEquals(OrderResult.Outcome.INVALID_CODE, result.get(2).getOutcome());
+    assertEquals(OrderResult.Outcome.INSUFFICIENT_UNITS, result.get(3).getOutcome());
+    assertEquals(OrderResult.Outcome.ACCEPTED, result.get(4).getOutcome());
+    assertEquals(OrderResult.Outcome.INVALID_UNITS, result.get(5).getOutcome());
+    assertEquals(OrderResult.Outcome.ACCEPTED, result.get(6).getOutcome());
+
+    Map<String, Integer> volumes = instance.getOrderBookTotalVolume();
+    assertEquals(0, volumes.get("CBA").intValue());
+    assertEquals(3, volumes.get("QAN").intValue());
+    assertEquals(5, tradingJournal.list().size());
+    assertEquals(0.15D, instance.getTradingCosts().doubleValue(), 0.001D);
+  }
+
+  @Test
+  public void testFailedBatchIsBackedOut() throws IOException {
+    tradingJournal = new InMemoryTradingJournal() {
+      @Override
+      public synchronized void addAll(List<Trade> trades) throws IOException {
+        throw new IOException("disk full");
+      }
+    };
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, tradingJournal, 3);
+    instance.sell("QAN", 5);
+    List<OrderResult> result = instance.submitBatch(Arrays.asList(
+        Order.sell("CBA", 10),
+        Order.buy("QAN", 5),
+        Order.buy("QAN", 1)
+    ));
+    assertEquals(OrderResult.Outcome.FAILED, result.get(0).getOutcome());
+    assertEquals("disk full", result.get(1).getMessage());
+    assertEquals(OrderResult.Outcome.INSUFFICIENT_UNITS, result.get(2).getOutcome());
+    Map<String, Integer> volumes = instance.getOrderBookTotalVolume();
+    assertEquals(5, volumes.get("QAN").intValue());
+    assertEquals(null, volumes.get("CBA"));
+  }
+
+  @Test
+  public void testBatchStandsOnceAppended() throws IOException {
+    final File checkpointFile = new File(folder.getRoot(), "journal.checkpoint");
+    final PositionCheckpoint checkpoint = new PositionCheckpoint(checkpointFile, 1000) {
+      @Override
+      public boolean recorded(final int tradeCount) {
+        if (tradeCount > 1) {
+          throw new IllegalStateException("checkpoint unavailable");
+        }
+        return super.recorded(tradeCount);
+      }
+    };
+    instance = new JournalBackedStockExchange(ExchangeCode.ASX, tradingJournal, 3, null, checkpoint);
+    instance.sell("QAN", 5);
+    List<OrderResult> result = instance.submitBatch(Arrays.asList(
+        Order.buy("QAN", 5),
+        Order.sell("CBA", 2)
+    ));
+    assertEquals(OrderResult.Outcome.ACCEPTED, result.get(0).getOutcome());
+    assertEquals(OrderResult.Outcome.ACCEPTED, result.get(1).getOutcome());
+    assertEquals(3, tradingJournal.list().size());
+    // the units bought are not handed back.
+    Map<String, Integer> volumes = instance.getOrderBookTotalVolume();
+    assertEquals(0, volumes.get("QAN").intValue());
+    assertEquals(2, volumes.get("CBA").intValue());
+  }
 }
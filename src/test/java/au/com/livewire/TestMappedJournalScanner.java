@@ -0,0 +1,91 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestMappedJournalScanner {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File writeJournal(String...lines) throws IOException {
+    File result = folder.newFile();
+    try (FileWriter writer = new FileWriter(result)) {
+      for (String line : lines) {
+        writer.append(line);
+      }
+    }
+    return result;
+  }
+
+  private static List<Trade> collect(MappedJournalScanner scanner, File file) throws IOException {
+    final List<Trade> result = new ArrayList<>();
+    scanner.scan(file, (exchangeCode, transactionType, when, companyCode, quantity, brokerage) ->
+        result.add(new Trade(exchangeCode, transactionType, new Date(when), companyCode, quantity, brokerage)));
+    return result;
+  }
+
+  @Test
+  public void testScanningMatchesListing() throws IOException {
+    File file = writeJournal(
+        "ASX,SELL,1023439393000,NAB,58,5\n",
+        "cxa,sell,1023439393001,cba,43,7\n",
+        "ASX,BUY,1023439393002,NAB,8,5"
+    );
+    List<Trade> result = collect(new MappedJournalScanner(), file);
+    assertEquals(new SimpleFileBasedTradingJournal(file).list(), result);
+    assertEquals(3, result.size());
+    assertEquals(CompanyCode.CBA, result.get(1).getCompanyCode());
+  }
+
+  @Test
+  public void testScanningCrlfJournal() throws IOException {
+    File file = writeJournal(
+        "ASX,SELL,1023439393000,NAB,58,5\r\n",
+        "CXA,SELL,1023439393001,CBA,43,7\r\n",
+        "ASX,BUY,1023439393002,NAB,8,5\r\n"
+    );
+    List<Trade> result = collect(new MappedJournalScanner(), file);
+    assertEquals(new SimpleFileBasedTradingJournal(file).list(), result);
+    assertEquals(3, result.size());
+    assertEquals(7, result.get(1).getBrokerage().intValue());
+  }
+
+  @Test
+  public void testScanningAcrossWindows() throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      lines.add(String.format("ASX,SELL,%d,QAN,%d,5\n", 1023439393000L + i, i));
+    }
+    File file = writeJournal(lines.toArray(new String[0]));
+    List<Trade> result = collect(new MappedJournalScanner(64), file);
+    assertEquals(100, result.size());
+    assertEquals(99, result.get(99).getQuantity().intValue());
+    assertEquals(new SimpleFileBasedTradingJournal(file).list(), result);
+  }
+
+  @Test
+  public void testReportingLineOfInvalidEntry() throws IOException {
+    File file = writeJournal(
+        "ASX,SELL,1023439393000,NAB,58,5\n",
+        "ASX,SELL,1023439393001,QFY,43,7\n"
+    );
+    try {
+      collect(new MappedJournalScanner(), file);
+      fail("expected invalid company code to be reported");
+    } catch (IllegalArgumentException expected) {
+      assertTrue(expected.getMessage().endsWith("at line 2"));
+    }
+  }
+}
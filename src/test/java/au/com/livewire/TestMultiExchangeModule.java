@@ -0,0 +1,126 @@
+package au.com.livewire;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import java.io.File;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestMultiExchangeModule {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  Injector injector;
+
+  @Before
+  public void setup() {
+    final Properties props = new Properties();
+    props.setProperty("asx.journal", new File(folder.getRoot(), "asx-journal.csv").getPath());
+    props.setProperty("asx.journal.lock", new File(folder.getRoot(), "asx-journal.lock").getPath());
+    props.setProperty("cxa.journal", new File(folder.getRoot(), "cxa-journal.csv").getPath());
+    props.setProperty("cxa.journal.lock", new File(folder.getRoot(), "cxa-journal.lock").getPath());
+    props.setProperty("journal.checkpoint.interval", "0");
+    injector = Guice.createInjector(new MultiExchangeModule(props));
+  }
+
+  @Test
+  public void testEveryExchangeIsBound() throws Exception {
+    final Map<ExchangeCode, StockExchange> exchanges;
+    exchanges = injector.getInstance(Key.get(new TypeLiteral<Map<ExchangeCode, StockExchange>>() { }));
+    assertEquals(ExchangeCode.values().length, exchanges.size());
+    assertNotSame(exchanges.get(ExchangeCode.ASX), exchanges.get(ExchangeCode.CXA));
+    // singletons within each exchange.
+    assertSame(exchanges.get(ExchangeCode.ASX),
+        injector.getInstance(Key.get(new TypeLiteral<Map<ExchangeCode, StockExchange>>() { })).get(ExchangeCode.ASX));
+
+    exchanges.get(ExchangeCode.ASX).sell("CBA", 10);
+    exchanges.get(ExchangeCode.CXA).sell("NAB", 4);
+    assertEquals(10, exchanges.get(ExchangeCode.ASX).getOrderBookTotalVolume().get("CBA").intValue());
+    assertNull(exchanges.get(ExchangeCode.CXA).getOrderBookTotalVolume().get("CBA"));
+    assertEquals(0.05D, exchanges.get(ExchangeCode.ASX).getTradingCosts().doubleValue(), 0.001D);
+    assertEquals(0.05D, exchanges.get(ExchangeCode.CXA).getTradingCosts().doubleValue(), 0.001D);
+    assertTrue(new File(folder.getRoot(), "asx-journal.csv").exists());
+    assertTrue(new File(folder.getRoot(), "cxa-journal.csv").exists());
+  }
+
+  @Test
+  public void testConfiguredInstruments() throws Exception {
+    final Properties props = new Properties();
+    final Map<ExchangeCode, StockExchange> exchanges;
+    props.setProperty("asx.journal", new File(folder.getRoot(), "asx-listed.csv").getPath());
+    props.setProperty("asx.journal.lock", new File(folder.getRoot(), "asx-listed.lock").getPath());
+    props.setProperty("cxa.journal", new File(folder.getRoot(), "cxa-listed.csv").getPath());
+    props.setProperty("cxa.journal.lock", new File(folder.getRoot(), "cxa-listed.lock").getPath());
+    props.setProperty("journal.checkpoint.interval", "0");
+    props.setProperty("instruments", "BHP");
+    exchanges = Guice.createInjector(new MultiExchangeModule(props))
+        .getInstance(Key.get(new TypeLiteral<Map<ExchangeCode, StockExchange>>() { }));
+    exchanges.get(ExchangeCode.ASX).sell("BHP", 7);
+    assertEquals(7, exchanges.get(ExchangeCode.ASX).getOrderBookTotalVolume().get("BHP").intValue());
+
+    // only the injector configured with it knows of the company.
+    assertNull(InstrumentRegistry.DEFAULT.lookup("BHP"));
+    try {
+      injector.getInstance(Key.get(new TypeLiteral<Map<ExchangeCode, StockExchange>>() { }))
+          .get(ExchangeCode.ASX).sell("BHP", 7);
+      fail("BHP is not listed");
+    } catch (InvalidCodeException expected) {
+      // as BHP was never configured.
+    }
+  }
+
+  @Test
+  public void testTradingEveryExchangeAtOnce() throws Exception {
+    final Map<ExchangeCode, Assignment> assignments;
+    assignments = injector.getInstance(Key.get(new TypeLiteral<Map<ExchangeCode, Assignment>>() { }));
+    assertEquals(ExchangeCode.values().length, assignments.size());
+    assertNotSame(assignments.get(ExchangeCode.ASX), assignments.get(ExchangeCode.CXA));
+  }
+
+  @Test
+  public void testLegacyJournalIsCopiedIntoEachNewJournal() throws Exception {
+    final File legacyFile = new File(folder.getRoot(), "journal.csv");
+    final TradingJournal legacy = new SimpleFileBasedTradingJournal(legacyFile);
+    final Properties props = new Properties();
+    final Map<ExchangeCode, StockExchange> exchanges;
+    final long when = System.currentTimeMillis();
+    legacy.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when), CompanyCode.CBA, 10, 5));
+    legacy.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.SELL, new Date(when + 1), CompanyCode.NAB, 4, 5));
+    legacy.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(when + 2), CompanyCode.CBA, 3, 5));
+    props.setProperty("legacy.journal", legacyFile.getPath());
+    props.setProperty("asx.journal", new File(folder.getRoot(), "asx-journal.csv").getPath());
+    props.setProperty("asx.journal.lock", new File(folder.getRoot(), "asx-journal.lock").getPath());
+    props.setProperty("cxa.journal", new File(folder.getRoot(), "cxa-journal.csv").getPath());
+    props.setProperty("cxa.journal.lock", new File(folder.getRoot(), "cxa-journal.lock").getPath());
+    props.setProperty("journal.checkpoint.interval", "0");
+
+    exchanges = Guice.createInjector(new MultiExchangeModule(props))
+        .getInstance(Key.get(new TypeLiteral<Map<ExchangeCode, StockExchange>>() { }));
+    assertEquals(7, exchanges.get(ExchangeCode.ASX).getOrderBookTotalVolume().get("CBA").intValue());
+    assertEquals(4, exchanges.get(ExchangeCode.CXA).getOrderBookTotalVolume().get("NAB").intValue());
+    assertEquals(0.10D, exchanges.get(ExchangeCode.ASX).getTradingCosts().doubleValue(), 0.001D);
+    assertEquals(0.05D, exchanges.get(ExchangeCode.CXA).getTradingCosts().doubleValue(), 0.001D);
+
+    // once copied, the legacy journal is left alone.
+    legacy.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when + 3), CompanyCode.CBA, 50, 5));
+    assertEquals(7, Guice.createInjector(new MultiExchangeModule(props))
+        .getInstance(Key.get(new TypeLiteral<Map<ExchangeCode, StockExchange>>() { }))
+        .get(ExchangeCode.ASX).getOrderBookTotalVolume().get("CBA").intValue());
+    assertTrue(legacyFile.exists());
+  }
+}
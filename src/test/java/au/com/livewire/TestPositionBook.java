@@ -0,0 +1,91 @@
+package au.com.livewire;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class TestPositionBook {
+
+  @Test
+  public void testReplayingTradesAcrossExchanges() {
+    long when = 1023439393000L;
+    List<Trade> tradeList = new ArrayList<>();
+    tradeList.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(when), CompanyCode.NAB, 58, 5));
+    tradeList.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.SELL, new Date(when + 1), CompanyCode.NAB, 12, 7));
+    tradeList.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(when + 2), CompanyCode.NAB, 8, 5));
+
+    PositionBook book = PositionBook.fromTrades(tradeList);
+    assertEquals(50, book.getAvailable(ExchangeCode.ASX, CompanyCode.NAB));
+    assertEquals(12, book.getAvailable(ExchangeCode.CXA, CompanyCode.NAB));
+    assertEquals(0, book.getAvailable(ExchangeCode.ASX, CompanyCode.QAN));
+
+    Map<String, Integer> result = book.getVolumes(ExchangeCode.ASX);
+    assertNotNull(result);
+    assertEquals(1, result.size());
+    assertEquals(50, result.get("NAB").intValue());
+  }
+
+  @Test
+  public void testApplyingTradeToEmptyBook() {
+    PositionBook book = PositionBook.fromTrades(null);
+    assertEquals(0, book.getVolumes(ExchangeCode.CXA).size());
+    assertEquals(43, book.apply(new Trade(ExchangeCode.CXA, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 43, 7)));
+    assertEquals(43, book.getAvailable(ExchangeCode.CXA, CompanyCode.CBA));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReplayingCorruptJournal() {
+    List<Trade> tradeList = new ArrayList<>();
+    tradeList.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.QAN, 10, 5));
+    tradeList.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(), CompanyCode.QAN, 11, 5));
+    PositionBook.fromTrades(tradeList);
+  }
+
+  @Test
+  public void testReservingUnits() {
+    PositionBook book = new PositionBook();
+    book.apply(ExchangeCode.ASX, Trade.TransactionType.SELL, CompanyCode.QAN, 10, 5);
+    assertEquals(10, book.reserve(ExchangeCode.ASX, CompanyCode.QAN, 7));
+    assertEquals(3, book.getAvailable(ExchangeCode.ASX, CompanyCode.QAN));
+    // would go negative, so nothing is reserved.
+    assertEquals(3, book.reserve(ExchangeCode.ASX, CompanyCode.QAN, 4));
+    assertEquals(3, book.getAvailable(ExchangeCode.ASX, CompanyCode.QAN));
+    book.unreserve(ExchangeCode.ASX, CompanyCode.QAN, 7);
+    assertEquals(10, book.getAvailable(ExchangeCode.ASX, CompanyCode.QAN));
+    assertEquals(5L, book.getBrokerageCents(ExchangeCode.ASX));
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void testVolumeTooLargeForMap() {
+    PositionBook book = new PositionBook();
+    book.apply(ExchangeCode.ASX, Trade.TransactionType.SELL, CompanyCode.QAN, Integer.MAX_VALUE, 5);
+    book.apply(ExchangeCode.ASX, Trade.TransactionType.SELL, CompanyCode.QAN, 1, 5);
+    book.getVolumes(ExchangeCode.ASX);
+  }
+
+  @Test
+  public void testVisitingVolumesInCompanyOrder() {
+    PositionBook book = new PositionBook();
+    book.apply(ExchangeCode.CXA, Trade.TransactionType.SELL, CompanyCode.NAB, 4, 7);
+    book.apply(ExchangeCode.CXA, Trade.TransactionType.SELL, CompanyCode.QAN, 9, 7);
+    book.apply(ExchangeCode.CXA, Trade.TransactionType.BUY, CompanyCode.QAN, 9, 7);
+    book.apply(ExchangeCode.ASX, Trade.TransactionType.SELL, CompanyCode.CBA, 1, 5);
+
+    StringBuilder visited = new StringBuilder();
+    book.forEachVolume(ExchangeCode.CXA, (companyCode, units) -> visited.append(companyCode).append('=').append(units).append(' '));
+    // a company traded down to nothing is still reported.
+    assertEquals("QAN=0 NAB=4 ", visited.toString());
+
+    PositionBook other = new PositionBook();
+    other.apply(ExchangeCode.CXA, Trade.TransactionType.SELL, CompanyCode.CBA, 2, 7);
+    book.merge(other);
+    assertEquals(3, book.getVolumes(ExchangeCode.CXA).size());
+    assertEquals(2, book.getAvailable(ExchangeCode.CXA, CompanyCode.CBA));
+    assertEquals(28L, book.getBrokerageCents(ExchangeCode.CXA));
+  }
+}
@@ -0,0 +1,150 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPositionCheckpoint {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  File journalFile;
+  File lockFile;
+  File checkpointFile;
+
+  @Before
+  public void setup() {
+    journalFile = new File(folder.getRoot(), "journal.csv");
+    lockFile = new File(folder.getRoot(), "journal.lock");
+    checkpointFile = new File(folder.getRoot(), "journal.csv.asx.checkpoint");
+  }
+
+  @Test
+  public void testRecoveringFromCheckpoint() throws Exception {
+    JournalBackedStockExchange instance = newExchange(new FileBasedTradingJournal(journalFile, lockFile));
+    instance.sell("CBA", 10);
+    instance.buy("CBA", 3);
+    assertTrue(instance.checkpoint());
+    assertTrue(checkpointFile.exists());
+    instance.sell("CBA", 5);
+    instance.sell("QAN", 1);
+
+    // garble the first trade, which only a replay of the whole journal would notice.
+    try (RandomAccessFile journal = new RandomAccessFile(journalFile, "rw")) {
+      journal.seek(0);
+      journal.write('X');
+    }
+    instance = newExchange(new FileBasedTradingJournal(journalFile, lockFile));
+    Map<String, Integer> volumes = instance.getOrderBookTotalVolume();
+    assertEquals(12, volumes.get("CBA").intValue());
+    assertEquals(1, volumes.get("QAN").intValue());
+    assertEquals(0.12D, instance.getTradingCosts().doubleValue(), 0.001D);
+  }
+
+  @Test
+  public void testCheckpointBeyondJournalIsIgnored() throws Exception {
+    JournalBackedStockExchange instance = newExchange(new FileBasedTradingJournal(journalFile, lockFile));
+    instance.sell("CBA", 10);
+    instance.sell("CBA", 10);
+    assertTrue(instance.checkpoint());
+
+    assertTrue(journalFile.delete());
+    instance = newExchange(new FileBasedTradingJournal(journalFile, lockFile));
+    instance.sell("NAB", 2);
+    instance = newExchange(new FileBasedTradingJournal(journalFile, lockFile));
+    Map<String, Integer> volumes = instance.getOrderBookTotalVolume();
+    assertEquals(null, volumes.get("CBA"));
+    assertEquals(2, volumes.get("NAB").intValue());
+  }
+
+  @Test
+  public void testCheckpointOfReplacedJournalIsIgnored() throws Exception {
+    JournalBackedStockExchange instance = newExchange(new FileBasedTradingJournal(journalFile, lockFile));
+    instance.sell("CBA", 10);
+    instance.sell("CBA", 10);
+    assertTrue(instance.checkpoint());
+
+    // replaced by a journal which has since grown beyond the checkpoint.
+    assertTrue(journalFile.delete());
+    instance = newExchange(new FileBasedTradingJournal(journalFile, lockFile));
+    // trades just as long as those before, so the checkpoint falls upon a line of the replacement.
+    instance.sell("NAB", 10);
+    instance.sell("NAB", 10);
+    instance.sell("NAB", 10);
+    assertTrue(journalFile.length() > Long.parseLong(readCheckpoint().getProperty("journal.position")));
+    instance = newExchange(new FileBasedTradingJournal(journalFile, lockFile));
+    Map<String, Integer> volumes = instance.getOrderBookTotalVolume();
+    assertEquals(null, volumes.get("CBA"));
+    assertEquals(30, volumes.get("NAB").intValue());
+    assertEquals(0.09D, instance.getTradingCosts().doubleValue(), 0.001D);
+  }
+
+  @Test
+  public void testRecoveringFromBinaryJournal() throws Exception {
+    final File binaryFile = new File(folder.getRoot(), "journal.bin");
+    BinaryFileTradingJournal journal = new BinaryFileTradingJournal(binaryFile, lockFile);
+    JournalBackedStockExchange instance = newExchange(journal);
+    instance.sell("NAB", 7);
+    assertTrue(instance.checkpoint());
+    instance.buy("NAB", 2);
+    journal.close();
+
+    journal = new BinaryFileTradingJournal(binaryFile, lockFile);
+    instance = newExchange(journal);
+    assertEquals(5, instance.getOrderBookTotalVolume().get("NAB").intValue());
+    assertEquals(0.06D, instance.getTradingCosts().doubleValue(), 0.001D);
+    journal.close();
+  }
+
+  @Test
+  public void testCheckpointingPeriodically() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final JournalBackedStockExchange instance = new JournalBackedStockExchange(
+        ExchangeCode.ASX,
+        new FileBasedTradingJournal(journalFile, lockFile),
+        3,
+        executor,
+        new PositionCheckpoint(checkpointFile, 2)
+    );
+    instance.sell("CBA", 1);
+    instance.sell("CBA", 1);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5L, TimeUnit.SECONDS));
+    assertTrue(checkpointFile.exists());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReplayingFromMiddleOfLine() throws IOException {
+    final FileBasedTradingJournal journal = new FileBasedTradingJournal(journalFile, lockFile);
+    newExchange(journal).sell("CBA", 1);
+    journal.replay(3L, (exchangeCode, transactionType, when, companyCode, quantity, brokerage) -> { });
+  }
+
+  private Properties readCheckpoint() throws IOException {
+    final Properties result = new Properties();
+    try (InputStream in = new FileInputStream(checkpointFile)) {
+      result.load(in);
+    }
+    return result;
+  }
+
+  private JournalBackedStockExchange newExchange(final TradingJournal journal) {
+    return new JournalBackedStockExchange(
+        ExchangeCode.ASX, journal, 3, null, new PositionCheckpoint(checkpointFile, 0));
+  }
+}
@@ -0,0 +1,153 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSegmentedTradingJournal {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  SegmentedTradingJournal tradingJournal;
+  File directory;
+  File lockFile;
+
+  @Before
+  public void setup() {
+    directory = new File(folder.getRoot(), "journal");
+    lockFile = new File(folder.getRoot(), "journal.lock");
+    // room for two trades per segment.
+    tradingJournal = new SegmentedTradingJournal(directory, lockFile, 64L, 0L);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    tradingJournal.close();
+  }
+
+  @Test
+  public void testRollingSegments() throws IOException {
+    for (int i = 1; i <= 5; i++) {
+      tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, i, 3));
+    }
+    File[] segments = directory.listFiles((dir, name) -> name.startsWith("segment-"));
+    assertEquals(3, segments.length);
+    int sealed = 0;
+    for (File segment : segments) {
+      sealed += Files.getPosixFilePermissions(segment.toPath()).contains(PosixFilePermission.OWNER_WRITE) ? 0 : 1;
+    }
+    assertEquals(2, sealed);
+    List<Trade> trades = tradingJournal.list();
+    assertEquals(5, trades.size());
+    assertEquals(5, trades.get(4).getQuantity().intValue());
+  }
+
+  @Test
+  public void testRollingByAge() throws Exception {
+    tradingJournal = new SegmentedTradingJournal(directory, lockFile, 1024L * 1024L, 1L);
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 1, 3));
+    Thread.sleep(5L);
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 1, 3));
+    assertEquals(2, directory.listFiles((dir, name) -> name.startsWith("segment-")).length);
+  }
+
+  @Test
+  public void testCompacting() throws Exception {
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 10, 3));
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(), CompanyCode.CBA, 4, 3));
+    tradingJournal.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.SELL, new Date(), CompanyCode.NAB, 3, 3));
+    tradingJournal.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.BUY, new Date(), CompanyCode.NAB, 3, 3));
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.QAN, 1, 3));
+    assertEquals(2, tradingJournal.compact());
+    assertEquals(0, tradingJournal.compact());
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.QAN, 2, 3));
+
+    // summary of the first four trades, then the segment still being written to.
+    List<Trade> trades = tradingJournal.list();
+    assertEquals(4, trades.size());
+    PositionBook positions = PositionBook.fromJournal(tradingJournal);
+    assertEquals(6, positions.getAvailable(ExchangeCode.ASX, CompanyCode.CBA));
+    assertEquals(3, positions.getAvailable(ExchangeCode.ASX, CompanyCode.QAN));
+    assertEquals(0, positions.getAvailable(ExchangeCode.CXA, CompanyCode.NAB));
+    assertEquals(12L, positions.getBrokerageCents(ExchangeCode.ASX));
+    assertEquals(6L, positions.getBrokerageCents(ExchangeCode.CXA));
+    assertTrue(new File(directory, "archive").isDirectory());
+
+    // every trade is still there to be audited.
+    try (Stream<Trade> auditTrail = tradingJournal.auditTrail(null, null)) {
+      assertEquals(6, auditTrail.count());
+    }
+    try (Stream<Trade> auditTrail = tradingJournal.auditTrail(ExchangeCode.CXA, null)) {
+      assertEquals(
+          "3,3",
+          auditTrail.map(trade -> trade.getQuantity().toString()).collect(Collectors.joining(","))
+      );
+    }
+  }
+
+  @Test
+  public void testCompactingWhilstTrading() throws Exception {
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 10, 3));
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 1, 3));
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 2, 3));
+    final CountDownLatch trading = new CountDownLatch(1);
+    final CountDownLatch compacted = new CountDownLatch(1);
+    final Thread trader = new Thread(() -> {
+      try {
+        tradingJournal.lockForAppend(5000L);
+        try {
+          trading.countDown();
+          compacted.await();
+          tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(), CompanyCode.CBA, 5, 3));
+        } finally {
+          tradingJournal.releaseAppendLock();
+        }
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    trader.start();
+    try {
+      assertTrue(trading.await(5L, TimeUnit.SECONDS));
+      // the trader holds the journal for appending throughout.
+      assertEquals(1, tradingJournal.compact());
+    } finally {
+      compacted.countDown();
+      trader.join();
+    }
+    assertEquals(8, PositionBook.fromJournal(tradingJournal).getAvailable(ExchangeCode.ASX, CompanyCode.CBA));
+  }
+
+  @Test
+  public void testReopening() throws Exception {
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 10, 3));
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 1, 3));
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 2, 3));
+    tradingJournal.compact();
+    tradingJournal.close();
+
+    tradingJournal = new SegmentedTradingJournal(directory, lockFile, 64L, 0L);
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(), CompanyCode.CBA, 5, 3));
+    Map<String, Integer> volumes = PositionBook.fromJournal(tradingJournal).getVolumes(ExchangeCode.ASX);
+    assertEquals(8, volumes.get("CBA").intValue());
+    assertFalse(tradingJournal.position() >= 0);
+  }
+}
@@ -0,0 +1,152 @@
+package au.com.livewire;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestSequencedStockExchange {
+
+  InMemoryTradingJournal tradingJournal;
+  SequencedStockExchange instance;
+
+  @Before
+  public void setup() {
+    tradingJournal = new InMemoryTradingJournal();
+    // a small ring, so that publishers have to wait for it to wrap around.
+    instance = new SequencedStockExchange(ExchangeCode.ASX, tradingJournal, 3, 8);
+  }
+
+  @After
+  public void teardown() {
+    instance.close();
+  }
+
+  @Test
+  public void testTradingInOrder() throws IOException {
+    instance.sell("CBA", 100);
+    instance.buy("CBA", 47);
+    instance.sell("NAB", 5);
+    Map<String, Integer> result = instance.getOrderBookTotalVolume();
+    assertEquals(53, result.get("CBA").intValue());
+    assertEquals(5, result.get("NAB").intValue());
+    assertEquals(0.09D, instance.getTradingCosts().doubleValue(), 0.001D);
+    assertEquals(3, tradingJournal.entries.size());
+    assertEquals(Trade.TransactionType.BUY, tradingJournal.entries.get(1).getTransactionType());
+  }
+
+  @Test(expected = InsufficentUnitsException.class)
+  public void testBuyingWhereInsufficentVolumeAvailable() throws IOException {
+    instance.sell("CBA", 100);
+    instance.buy("CBA", 101);
+  }
+
+  @Test(expected = InvalidCodeException.class)
+  public void testBuyingWithInvalidCompanyCode() throws IOException {
+    instance.buy("DBA", 1);
+  }
+
+  @Test
+  public void testConcurrentPublishers() throws Exception {
+    final ExecutorService publishers = Executors.newFixedThreadPool(8);
+    final List<Future<Integer>> futures = new ArrayList<>();
+    int bought = 0;
+    instance.sell("QAN", 1000);
+    for (int t = 0; t < 8; t++) {
+      futures.add(publishers.submit(() -> {
+        final List<CompletableFuture<Void>> buys = new ArrayList<>();
+        int result = 0;
+        for (int i = 0; i < 100; i++) {
+          buys.add(instance.buyAsync("QAN", 2));
+        }
+        for (CompletableFuture<Void> buy : buys) {
+          try {
+            buy.get();
+            result += 2;
+          } catch (ExecutionException e) {
+            // sold out, anything else fails the test via get() below.
+            if (!(e.getCause() instanceof InsufficentUnitsException)) {
+              throw e;
+            }
+          }
+        }
+        return result;
+      }));
+    }
+    for (Future<Integer> future : futures) {
+      bought += future.get();
+    }
+    publishers.shutdown();
+
+    // 1600 units were asked for, so every unit sold was bought, but no more.
+    final int volume = instance.getOrderBookTotalVolume().get("QAN");
+    assertEquals(1000, bought);
+    assertEquals(1000 - bought, volume);
+    assertEquals(1 + bought / 2, tradingJournal.entries.size());
+    // every buy made it into the journal after the units it bought, so the journal agrees with the book.
+    final PositionBook replayed = PositionBook.fromJournal(tradingJournal);
+    assertEquals(volume, replayed.getAvailable(ExchangeCode.ASX, CompanyCode.QAN));
+    assertEquals(
+        instance.getTradingCosts().movePointRight(2).longValue(),
+        replayed.getBrokerageCents(ExchangeCode.ASX)
+    );
+  }
+
+  @Test
+  public void testFailedWriteIsBackedOut() throws IOException {
+    instance.close();
+    tradingJournal = new InMemoryTradingJournal() {
+      @Override
+      public synchronized void addAll(List<Trade> trades) throws IOException {
+        if (trades.stream().anyMatch(trade -> trade.getCompanyCode() == CompanyCode.NAB)) {
+          throw new IOException("disk full");
+        }
+        super.addAll(trades);
+      }
+    };
+    instance = new SequencedStockExchange(ExchangeCode.ASX, tradingJournal, 3, 8);
+    instance.sell("QAN", 10);
+    try {
+      instance.sell("NAB", 10);
+      fail("Sale should not succeed without making it into the journal");
+    } catch (IllegalStateException expected) {
+      assertEquals("disk full", expected.getCause().getMessage());
+    }
+    Map<String, Integer> result = instance.getOrderBookTotalVolume();
+    assertEquals(10, result.get("QAN").intValue());
+    assertEquals(0, result.getOrDefault("NAB", 0).intValue());
+    assertEquals(0.03D, instance.getTradingCosts().doubleValue(), 0.001D);
+  }
+
+  @Test
+  public void testSubmittingBatch() throws IOException {
+    List<OrderResult> result = instance.submitBatch(Arrays.asList(
+        Order.sell("CBA", 10),
+        Order.buy("CBA", 11),
+        Order.buy("CBA", 10)
+    ));
+    assertEquals(OrderResult.Outcome.ACCEPTED, result.get(0).getOutcome());
+    assertEquals(OrderResult.Outcome.INSUFFICIENT_UNITS, result.get(1).getOutcome());
+    assertTrue(result.get(2).isAccepted());
+    assertEquals(2, tradingJournal.entries.size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTradingAfterClose() throws IOException {
+    instance.close();
+    instance.sell("CBA", 1);
+  }
+}
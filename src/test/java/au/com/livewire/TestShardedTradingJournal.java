@@ -0,0 +1,111 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestShardedTradingJournal {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  ShardedTradingJournal tradingJournal;
+  File directory;
+  File lockFile;
+
+  @Before
+  public void setup() {
+    directory = new File(folder.getRoot(), "journal");
+    lockFile = new File(folder.getRoot(), "journal.lock");
+    tradingJournal = new ShardedTradingJournal(directory, lockFile, false);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    tradingJournal.close();
+  }
+
+  @Test
+  public void testShardingByExchange() throws IOException {
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.SELL, new Date(), CompanyCode.CBA, 10, 3));
+    tradingJournal.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.SELL, new Date(), CompanyCode.NAB, 3, 3));
+    tradingJournal.add(new Trade(ExchangeCode.ASX, Trade.TransactionType.BUY, new Date(), CompanyCode.CBA, 4, 3));
+    assertTrue(new File(directory, "ASX.csv").exists());
+    assertTrue(new File(directory, "CXA.csv").exists());
+
+    List<Trade> trades = tradingJournal.list();
+    assertEquals(3, trades.size());
+    try (Stream<Trade> asxTrades = tradingJournal.stream(ExchangeCode.ASX, null)) {
+      assertEquals(
+          "10,4",
+          asxTrades.map(trade -> trade.getQuantity().toString()).collect(Collectors.joining(","))
+      );
+    }
+
+    PositionBook positions = tradingJournal.positions(ExchangeCode.ASX);
+    assertEquals(6, positions.getAvailable(ExchangeCode.ASX, CompanyCode.CBA));
+    assertEquals(6L, positions.getBrokerageCents(ExchangeCode.ASX));
+    // only the shard of the exchange asked for is read.
+    assertEquals(0, positions.getAvailable(ExchangeCode.CXA, CompanyCode.NAB));
+  }
+
+  @Test
+  public void testShardingByCompany() throws Exception {
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    tradingJournal = new ShardedTradingJournal(directory, lockFile, true, pool, LockMode.FILE);
+    for (CompanyCode companyCode : CompanyCode.values()) {
+      for (ExchangeCode exchangeCode : ExchangeCode.values()) {
+        tradingJournal.add(new Trade(exchangeCode, Trade.TransactionType.SELL, new Date(), companyCode, 5, 3));
+        tradingJournal.add(new Trade(exchangeCode, Trade.TransactionType.BUY, new Date(), companyCode, 2, 3));
+      }
+    }
+    assertEquals(CompanyCode.values().length * ExchangeCode.values().length, directory.listFiles().length);
+    assertTrue(new File(directory, "CXA-QAN.csv").exists());
+
+    PositionBook positions = tradingJournal.positions(null);
+    for (CompanyCode companyCode : CompanyCode.values()) {
+      for (ExchangeCode exchangeCode : ExchangeCode.values()) {
+        assertEquals(3, positions.getAvailable(exchangeCode, companyCode));
+      }
+    }
+    assertEquals(18L, positions.getBrokerageCents(ExchangeCode.CXA));
+    try (Stream<Trade> trades = tradingJournal.stream(ExchangeCode.CXA, CompanyCode.NAB)) {
+      assertEquals(2L, trades.count());
+    }
+    pool.shutdown();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNegativeShard() throws IOException {
+    tradingJournal.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.SELL, new Date(), CompanyCode.NAB, 3, 3));
+    tradingJournal.add(new Trade(ExchangeCode.CXA, Trade.TransactionType.BUY, new Date(), CompanyCode.NAB, 4, 3));
+    tradingJournal.positions(ExchangeCode.CXA);
+  }
+
+  @Test
+  public void testTradingUponShards() throws Exception {
+    final JournalBackedStockExchange asx = new JournalBackedStockExchange(ExchangeCode.ASX, tradingJournal, 5);
+    final JournalBackedStockExchange cxa = new JournalBackedStockExchange(ExchangeCode.CXA, tradingJournal, 7);
+    asx.sell("QAN", 8);
+    cxa.sell("QAN", 1);
+    asx.buy("QAN", 6);
+    tradingJournal.close();
+
+    tradingJournal = new ShardedTradingJournal(directory, lockFile, false);
+    final JournalBackedStockExchange reopened = new JournalBackedStockExchange(ExchangeCode.ASX, tradingJournal, 5);
+    assertEquals(2, reopened.getOrderBookTotalVolume().get("QAN").intValue());
+    assertEquals(0.10D, reopened.getTradingCosts().doubleValue(), 0.001D);
+  }
+}
@@ -0,0 +1,67 @@
+package au.com.livewire;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSimpleFileBasedTradingJournal {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  TradingJournal tradingJournal;
+
+  @Before
+  public void setup() throws IOException {
+    File journalFile = folder.newFile("journal.csv");
+    try (FileWriter writer = new FileWriter(journalFile)) {
+      writer.append("ASX,SELL,1023439393000,NAB,58,5\n");
+      writer.append("CXA,SELL,1023439393001,NAB,12,7\n");
+      writer.append("asx,sell,1023439393002,cba,43,5\n");
+      writer.append("ASX,BUY,1023439393003,NAB,8,5\n");
+    }
+    tradingJournal = new SimpleFileBasedTradingJournal(journalFile);
+  }
+
+  @Test
+  public void testStreamingEverything() throws IOException {
+    try (Stream<Trade> trades = tradingJournal.stream(null, null)) {
+      assertEquals(tradingJournal.list(), trades.collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void testStreamingOneExchange() throws IOException {
+    List<Trade> result;
+    try (Stream<Trade> trades = tradingJournal.stream(ExchangeCode.ASX, null)) {
+      result = trades.collect(Collectors.toList());
+    }
+    assertEquals(3, result.size());
+    assertTrue(result.stream().allMatch(trade -> ExchangeCode.ASX == trade.getExchangeCode()));
+  }
+
+  @Test
+  public void testVisitingOneCompanyUponOneExchange() throws IOException {
+    final int[] units = new int[1];
+    tradingJournal.forEach(ExchangeCode.ASX, CompanyCode.NAB, trade ->
+        units[0] += Trade.TransactionType.SELL == trade.getTransactionType() ? trade.getQuantity() : -trade.getQuantity());
+    assertEquals(50, units[0]);
+  }
+
+  @Test
+  public void testStreamingLazily() throws IOException {
+    try (Stream<Trade> trades = tradingJournal.stream(ExchangeCode.CXA, CompanyCode.NAB)) {
+      assertEquals(12, trades.findFirst().get().getQuantity().intValue());
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package au.com.livewire;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TestTradeCsvParser {
+
+  private final TradeCsvParser parser = new TradeCsvParser();
+  private final MutableTrade holder = new MutableTrade();
+
+  /**
+   * The parser must come to the same conclusion as {@link Trade#fromCsv(String)} does.
+   */
+  private void assertParsedAsFromCsv(final String candidate) {
+    Trade expected = null;
+    String expectedMessage = null;
+    try {
+      expected = Trade.fromCsv(candidate);
+    } catch (IllegalArgumentException e) {
+      expectedMessage = e.getMessage();
+    }
+
+    try {
+      Trade result = parser.parse(candidate, holder).toTrade();
+      assertEquals(candidate, expected, result);
+    } catch (IllegalArgumentException e) {
+      assertEquals(candidate, expectedMessage, e.getMessage());
+    }
+
+    if (candidate != null) {
+      byte[] bytes = candidate.getBytes(StandardCharsets.UTF_8);
+      ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 5);
+      buffer.put("xx".getBytes(StandardCharsets.UTF_8)).put(bytes).put("\nyy".getBytes(StandardCharsets.UTF_8));
+      try {
+        Trade result = parser.parse(buffer, 2, 2 + bytes.length, holder).toTrade();
+        assertEquals(candidate, expected, result);
+      } catch (IllegalArgumentException e) {
+        assertEquals(candidate, expectedMessage, e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testParsingLegitEntries() {
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,NAB,23,7");
+    assertParsedAsFromCsv("CXA,SELL,1023439393000,CBA,23,5");
+    assertParsedAsFromCsv(" cxa , Sell ,1023439393000, qan ,0,5");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,NAB,23,7,,");
+  }
+
+  @Test
+  public void testParsingInvalidEntries() {
+    assertParsedAsFromCsv(null);
+    assertParsedAsFromCsv("");
+    assertParsedAsFromCsv("   ");
+    assertParsedAsFromCsv(",,,,,");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,23,5");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,NAB,23,7,8");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,NAB,23,7, ");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000, ,23,7");
+    assertParsedAsFromCsv("NYSE,BUY,1023439393000,NAB,23,7");
+    assertParsedAsFromCsv("ASX,BYE,1023439393000,NAB,23,7");
+    assertParsedAsFromCsv("ASX,BUY,102343939300O,NAB,23,7");
+    assertParsedAsFromCsv("ASX,BUY, 1023439393000,NAB,23,7");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,QFY,23,5");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,NAB,0.23,5");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,NAB,-23,5");
+    assertParsedAsFromCsv("ASX,BUY,1023439393000,NAB,23,5\r");
+  }
+
+  @Test
+  public void testParsingOversizedNumbers() {
+    try {
+      parser.parse("ASX,BUY,1023439393000,NAB,2147483648,5", holder);
+      fail("quantity beyond an int should be refused");
+    } catch (NumberFormatException expected) {
+      assertEquals("For input string: \"2147483648\"", expected.getMessage());
+    }
+    assertEquals(Integer.MAX_VALUE, parser.parse("ASX,BUY,1023439393000,NAB,2147483647,5", holder).getQuantity());
+  }
+
+  @Test
+  public void testReusingHolder() {
+    assertSame(holder, parser.parse("ASX,BUY,1023439393000,NAB,23,7", holder));
+    parser.parse("CXA,SELL,1023439393001,QAN,11,5", holder);
+    assertEquals(ExchangeCode.CXA, holder.getExchangeCode());
+    assertEquals(Trade.TransactionType.SELL, holder.getTransactionType());
+    assertEquals(1023439393001L, holder.getWhen());
+    assertEquals(CompanyCode.QAN, holder.getCompanyCode());
+    assertEquals(11, holder.getQuantity());
+    assertEquals(5, holder.getBrokerage());
+  }
+}